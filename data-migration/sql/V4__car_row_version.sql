@@ -0,0 +1,3 @@
+-- Row version used for optimistic locking and as the basis of the HTTP ETags served for cars.
+-- Any statement that modifies a car outside of JPA must increment row_version.
+ALTER TABLE demoapp.cars ADD COLUMN IF NOT EXISTS row_version BIGINT NOT NULL DEFAULT 0;
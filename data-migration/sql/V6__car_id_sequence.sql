@@ -0,0 +1,7 @@
+-- Id sequence for cars created by the application. It is incremented by 50 so that Hibernate's
+-- pooled-lo optimizer can hand out 50 ids per nextval() call; the allocationSize of Car.id must
+-- stay in sync with the increment. Rows inserted without an id, e.g. by COPY, use the default.
+CREATE SEQUENCE IF NOT EXISTS demoapp.cars_id_seq INCREMENT BY 50 OWNED BY demoapp.cars.id;
+SELECT setval('demoapp.cars_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM demoapp.cars), false);
+ALTER TABLE demoapp.cars ALTER COLUMN id SET DEFAULT nextval('demoapp.cars_id_seq');
+GRANT USAGE, SELECT ON SEQUENCE demoapp.cars_id_seq TO ${appuser_username};
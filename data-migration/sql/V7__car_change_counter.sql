@@ -0,0 +1,30 @@
+-- Change counter of demoapp.cars, read by the application as the fingerprint of the /cars listing
+-- and polled to refresh its in-memory search index. A statement level trigger increments it on
+-- every statement that writes cars, so reading it is a sum over a few rows instead of an aggregate
+-- over the table.
+--
+-- The counter is split into 16 stripes and a transaction increments the stripe of its transaction
+-- id, so concurrent writers of cars rarely wait for each other's row lock; one stripe would make
+-- every writer wait from its write of the counter until the other commits. A transaction always
+-- writes the same stripe, so two writers cannot deadlock on them. A sequence would not block at
+-- all, but nextval is not transactional: a poll between the nextval of a writer and its commit
+-- would see the new value, rebuild from the old rows and then miss the change. Every committed
+-- write raises the sum, and only once it is committed.
+CREATE TABLE IF NOT EXISTS demoapp.cars_changes (
+    stripe  SMALLINT PRIMARY KEY CHECK (stripe BETWEEN 0 AND 15),
+    changes BIGINT NOT NULL
+);
+INSERT INTO demoapp.cars_changes (stripe, changes)
+    SELECT stripe, 0 FROM generate_series(0, 15) AS stripe
+    ON CONFLICT DO NOTHING;
+
+CREATE OR REPLACE FUNCTION demoapp.count_cars_changes() RETURNS trigger AS $$
+BEGIN
+    UPDATE demoapp.cars_changes SET changes = changes + 1 WHERE stripe = txid_current() % 16;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS cars_changes ON demoapp.cars;
+CREATE TRIGGER cars_changes AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON demoapp.cars
+    FOR EACH STATEMENT EXECUTE FUNCTION demoapp.count_cars_changes();
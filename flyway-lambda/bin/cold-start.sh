@@ -0,0 +1,64 @@
+#!/usr/bin/env bash
+#
+# Compares cold starts of the JVM and the native build of the function. Every run starts a fresh
+# container from the AWS base image of the runtime, which includes the Lambda runtime interface
+# emulator, and sends it the migration-create test event. Reports the wall time of the first
+# invocation and the Init Duration and Duration the emulator logs for it.
+#
+#   ./gradlew -PexperimentalNative buildZip buildNativeZip && bin/cold-start.sh
+#
+# Without AWS services the invocation ends where the handler looks up the master secret, after
+# the runtime, Jackson, Powertools and the SDK clients are initialized. To run the migration
+# itself, point AWS_ENDPOINT_URL at LocalStack with the secret and the asset of the event.
+set -euo pipefail
+
+EVENT=${EVENT:-src/test/resources/tests/migration-create.json}
+RUNS=${RUNS:-5}
+PORT=${PORT:-9000}
+OUT=${OUT:-build/cold-start}
+HANDLER=com.damnhandy.functions.dbmigrator.DBMigratorHandler::handleRequest
+
+ENV_ARGS=(-e AWS_REGION="${AWS_REGION:-us-east-1}"
+  -e AWS_ACCESS_KEY_ID="${AWS_ACCESS_KEY_ID:-test}"
+  -e AWS_SECRET_ACCESS_KEY="${AWS_SECRET_ACCESS_KEY:-test}"
+  -e POWERTOOLS_SERVICE_NAME=DBMigrator
+  -e LOG_LEVEL="${LOG_LEVEL:-INFO}")
+if [ -n "${AWS_ENDPOINT_URL:-}" ]; then
+  ENV_ARGS+=(-e AWS_ENDPOINT_URL="${AWS_ENDPOINT_URL}")
+fi
+
+rm -rf "${OUT}"
+mkdir -p "${OUT}/jvm" "${OUT}/native"
+unzip -q build/distributions/flyway-lambda.zip -d "${OUT}/jvm"
+unzip -q build/distributions/flyway-lambda-native.zip -d "${OUT}/native"
+
+now_ms() {
+  echo $(( $(date +%s%N) / 1000000 ))
+}
+
+run_mode() {
+  local mode=$1; shift
+  for i in $(seq "${RUNS}"); do
+    local name="flyway-lambda-${mode}-${i}"
+    local start
+    start=$(now_ms)
+    docker run -d --rm --name "${name}" -p "${PORT}:8080" "${ENV_ARGS[@]}" "$@" "${HANDLER}" > /dev/null
+    trap "docker stop ${name} > /dev/null 2>&1 || true" EXIT
+    # the emulator starts the runtime for the first invocation, retry until it listens
+    until curl --silent --output "${OUT}/${mode}-${i}.json" --data-binary "@${EVENT}" \
+        "http://localhost:${PORT}/2015-03-31/functions/function/invocations"; do
+      sleep 0.01
+    done
+    local wall=$(( $(now_ms) - start ))
+    docker logs "${name}" > "${OUT}/${mode}-${i}.log" 2>&1
+    docker stop "${name}" > /dev/null
+    trap - EXIT
+    printf "%-6s run %-2s first invocation %6s ms  init %12s  duration %12s\n" "${mode}" "${i}" "${wall}" \
+      "$(grep -o 'Init Duration: [0-9.]* ms' "${OUT}/${mode}-${i}.log" | head -1 | cut -d' ' -f3-)" \
+      "$(grep -o '[^t] Duration: [0-9.]* ms' "${OUT}/${mode}-${i}.log" | head -1 | cut -d' ' -f3-)"
+  done
+}
+
+run_mode jvm -v "$(pwd)/${OUT}/jvm:/var/task:ro" public.ecr.aws/lambda/java:17
+run_mode native -v "$(pwd)/${OUT}/native:/var/task:ro" \
+  -v "$(pwd)/${OUT}/native/bootstrap:/var/runtime/bootstrap:ro" public.ecr.aws/lambda/provided:al2023
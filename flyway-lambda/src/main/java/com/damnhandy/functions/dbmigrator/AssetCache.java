@@ -0,0 +1,181 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.services.s3.S3Uri;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps downloaded migration assets in /tmp for the warm invocations of the same execution environment.
+ * An asset is stored as {@code <hash of bucket and key>-<ETag>.zip}. A cached asset is revalidated with a
+ * conditional GET, which S3 answers with 304 Not Modified and no body while the object is unchanged.
+ * <p>
+ * A download is written to a temporary file and only moved to its cache name, atomically, once it is
+ * complete, so an interrupted download is never taken for a cached asset. Older versions of an asset are
+ * removed when a new one is published, and the least recently used assets are removed while the cache is
+ * larger than its limit, so the cache stays within the ephemeral storage of the function.
+ */
+public class AssetCache {
+    private static final Logger logger = LogManager.getLogger(AssetCache.class);
+
+    /**
+     * Environment variable with the size in bytes the cache may take up in /tmp.
+     */
+    public static final String MAX_BYTES_ENV = "ASSET_CACHE_MAX_BYTES";
+
+    static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    static final Path DEFAULT_DIRECTORY = Paths.get("/tmp", "dbmigrator-assets");
+
+    private static final String SUFFIX = ".zip";
+
+    private static final String DOWNLOAD_PREFIX = ".download-";
+
+    private final Path directory;
+
+    private final long maxBytes;
+
+    private final S3AssetDownloader downloader;
+
+    /**
+     * @param directory the cache directory, created if missing
+     * @param maxBytes the size the cached assets may take up; the most recent asset is kept even if it is
+     *                 larger
+     * @param downloader downloads the assets
+     */
+    public AssetCache(Path directory, long maxBytes, S3AssetDownloader downloader) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        this.downloader = downloader;
+        // left behind by an invocation that timed out while downloading
+        for (Path file : list(DOWNLOAD_PREFIX)) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Creates a cache in {@code /tmp/dbmigrator-assets} limited to {@value #MAX_BYTES_ENV} bytes.
+     */
+    public static AssetCache fromEnvironment(S3AssetDownloader downloader) {
+        long maxBytes = S3AssetDownloader.setting(System.getenv(), MAX_BYTES_ENV, DEFAULT_MAX_BYTES);
+        try {
+            return new AssetCache(DEFAULT_DIRECTORY, maxBytes, downloader);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create the asset cache in " + DEFAULT_DIRECTORY, e);
+        }
+    }
+
+    /**
+     * Returns the local copy of an asset, downloading it if it is not cached or has changed.
+     * @param s3Uri the location of the asset
+     * @return the cached archive; it stays in place until a later call publishes a newer version or evicts it
+     * @throws IOException if the asset could not be downloaded
+     */
+    public Path get(S3Uri s3Uri) throws IOException {
+        String key = key(s3Uri);
+        Optional<Path> cached = list(key + "-").stream()
+                .max(Comparator.comparing(AssetCache::lastModified));
+        String cachedETag = cached.map(path -> eTag(key, path)).orElse(null);
+
+        Path download = Files.createTempFile(directory, DOWNLOAD_PREFIX, SUFFIX);
+        try {
+            Optional<String> eTag = downloader.download(s3Uri, download, cachedETag);
+            if (eTag.isEmpty()) {
+                logger.info("Using cached {} with ETag {}", s3Uri.uri(), cachedETag);
+                Files.setLastModifiedTime(cached.get(), FileTime.fromMillis(System.currentTimeMillis()));
+                return cached.get();
+            }
+            Path published = directory.resolve(key + "-" + fileName(eTag.get()) + SUFFIX);
+            Files.move(download, published, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Cached {} with ETag {} as {}", s3Uri.uri(), eTag.get(), published);
+            for (Path stale : list(key + "-")) {
+                if (!stale.equals(published)) {
+                    Files.deleteIfExists(stale);
+                }
+            }
+            evict(published);
+            return published;
+        } finally {
+            Files.deleteIfExists(download);
+        }
+    }
+
+    /**
+     * Removes the least recently used assets, other than the one just published, while the cache is too big.
+     */
+    private void evict(Path keep) throws IOException {
+        List<Path> assets = new ArrayList<>(list(""));
+        assets.sort(Comparator.comparing(AssetCache::lastModified));
+        long size = 0;
+        for (Path asset : assets) {
+            size += Files.size(asset);
+        }
+        for (Path asset : assets) {
+            if (size <= maxBytes) {
+                break;
+            }
+            if (!asset.equals(keep)) {
+                size -= Files.size(asset);
+                Files.deleteIfExists(asset);
+                logger.info("Evicted {} from the asset cache", asset);
+            }
+        }
+    }
+
+    private List<Path> list(String prefix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, prefix + "*" + SUFFIX)) {
+            for (Path entry : entries) {
+                if (prefix.startsWith(DOWNLOAD_PREFIX) || !entry.getFileName().toString().startsWith(DOWNLOAD_PREFIX)) {
+                    files.add(entry);
+                }
+            }
+        }
+        return files;
+    }
+
+    static String key(S3Uri s3Uri) {
+        String location = s3Uri.bucket().orElseThrow() + "/" + s3Uri.key().orElseThrow();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(location.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the ETag without its quotes, with anything that does not belong in a file name replaced
+     */
+    static String fileName(String eTag) {
+        return eTag.replace("\"", "").replaceAll("[^A-Za-z0-9-]", "_");
+    }
+
+    private static String eTag(String key, Path asset) {
+        String name = asset.getFileName().toString();
+        return "\"" + name.substring(key.length() + 1, name.length() - SUFFIX.length()) + "\"";
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.flywaydb.core.api.CoreMigrationType;
+import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.ResourceProvider;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.executor.Context;
+import org.flywaydb.core.api.executor.MigrationExecutor;
+import org.flywaydb.core.api.resolver.MigrationResolver;
+import org.flywaydb.core.api.resolver.ResolvedMigration;
+import org.flywaydb.core.api.resource.LoadableResource;
+import org.flywaydb.core.extensibility.MigrationType;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Resolves the versioned scripts with runs of single-row INSERTs as migrations that execute the INSERTs as
+ * multi-row batches, see {@link BatchedInsertScript}. Flyway's own resolver gets
+ * {@link #remainingScripts()}, the asset without these scripts, and resolves everything else as usual.
+ * <p>
+ * A batched migration is recorded exactly as Flyway would record the script: as an SQL migration with the
+ * same version, description and checksum, so validation of the schema history does not change whether a
+ * script was batched or not. Its statements run in the transaction Flyway opens for the migration.
+ */
+public class BatchedInsertResolver implements MigrationResolver {
+    private static final Logger logger = LogManager.getLogger(BatchedInsertResolver.class);
+
+    private final ResourceProvider scripts;
+
+    private final Map<String, ResolvedMigration> migrations = new LinkedHashMap<>();
+
+    /**
+     * Reads every versioned script once to find the ones that can be batched.
+     * @param scripts the scripts of the asset
+     * @param configuration the Flyway configuration with the naming conventions of the scripts
+     * @throws IOException if a script cannot be read
+     */
+    public BatchedInsertResolver(ResourceProvider scripts, Configuration configuration) throws IOException {
+        this.scripts = scripts;
+        String placeholderPrefix = configuration.isPlaceholderReplacement()
+                ? configuration.getPlaceholderPrefix() : null;
+        for (LoadableResource script : scripts.getResources(configuration.getSqlMigrationPrefix(),
+                configuration.getSqlMigrationSuffixes())) {
+            var name = MigrationManifest.ScriptName.parse(script.getFilename(), configuration);
+            if (name == null) {
+                continue;
+            }
+            BatchedInsertScript.Summary summary = BatchedInsertScript.scan(script.read(), placeholderPrefix);
+            if (summary != null && summary.batched()) {
+                logger.info("{} runs {} statements as {}", script.getFilename(), summary.statementsBefore(),
+                        summary.statements());
+                migrations.put(script.getRelativePath(), new BatchedMigration(name, script,
+                        MigrationManifest.checksum(script), placeholderPrefix));
+            }
+        }
+    }
+
+    /**
+     * @return the number of scripts that are batched
+     */
+    public int size() {
+        return migrations.size();
+    }
+
+    /**
+     * @return the scripts of the asset without the ones this resolver resolves, for Flyway's own resolver
+     */
+    public ResourceProvider remainingScripts() {
+        return new ResourceProvider() {
+            @Override
+            public LoadableResource getResource(String name) {
+                return migrations.containsKey(name) ? null : scripts.getResource(name);
+            }
+
+            @Override
+            public Collection<LoadableResource> getResources(String prefix, String[] suffixes) {
+                List<LoadableResource> remaining = new ArrayList<>();
+                for (LoadableResource resource : scripts.getResources(prefix, suffixes)) {
+                    if (!migrations.containsKey(resource.getRelativePath())) {
+                        remaining.add(resource);
+                    }
+                }
+                return Collections.unmodifiableList(remaining);
+            }
+        };
+    }
+
+    @Override
+    public Collection<ResolvedMigration> resolveMigrations(org.flywaydb.core.api.resolver.Context context) {
+        return Collections.unmodifiableCollection(migrations.values());
+    }
+
+    private static class BatchedMigration implements ResolvedMigration, MigrationExecutor {
+        private final MigrationManifest.ScriptName name;
+
+        private final LoadableResource script;
+
+        private final int checksum;
+
+        private final String placeholderPrefix;
+
+        private BatchedMigration(MigrationManifest.ScriptName name, LoadableResource script, int checksum,
+                                 String placeholderPrefix) {
+            this.name = name;
+            this.script = script;
+            this.checksum = checksum;
+            this.placeholderPrefix = placeholderPrefix;
+        }
+
+        @Override
+        public MigrationVersion getVersion() {
+            return name.version();
+        }
+
+        @Override
+        public String getDescription() {
+            return name.description();
+        }
+
+        @Override
+        public String getScript() {
+            return script.getRelativePath();
+        }
+
+        @Override
+        public Integer getChecksum() {
+            return checksum;
+        }
+
+        @Override
+        public MigrationType getType() {
+            return CoreMigrationType.SQL;
+        }
+
+        @Override
+        public String getPhysicalLocation() {
+            return script.getAbsolutePathOnDisk();
+        }
+
+        @Override
+        public MigrationExecutor getExecutor() {
+            return this;
+        }
+
+        @Override
+        public boolean checksumMatches(Integer checksum) {
+            return Objects.equals(this.checksum, checksum);
+        }
+
+        @Override
+        public boolean checksumMatchesWithoutBeingIdentical(Integer checksum) {
+            return false;
+        }
+
+        @Override
+        public void execute(Context context) throws SQLException {
+            long start = System.nanoTime();
+            try (Statement statement = context.getConnection().createStatement()) {
+                var summary = BatchedInsertScript.execute(script.read(), placeholderPrefix, statement::execute);
+                logger.info("Executed {} rows of {} in {} statements in {} ms", summary.rows(),
+                        script.getFilename(), summary.statements(), (System.nanoTime() - start) / 1_000_000);
+            } catch (IOException e) {
+                throw new FlywayException("Unable to read " + script.getAbsolutePathOnDisk(), e);
+            }
+        }
+
+        @Override
+        public boolean canExecuteInTransaction() {
+            return true;
+        }
+
+        @Override
+        public boolean shouldExecute() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.flywaydb.core.api.FlywayException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a SQL script into statements and folds each run of consecutive single-row INSERTs into the same
+ * table and columns into multi-row INSERTs of up to {@link #MAX_ROWS} rows. A seed script of a thousand
+ * INSERTs is then executed as one statement instead of a thousand parses and round trips.
+ * <p>
+ * The splitter only understands what a plain PostgreSQL script needs: quoted strings and identifiers, line
+ * comments and nested block comments. Scripts it cannot split safely are left to Flyway. These are scripts
+ * with dollar quoting, escape strings, placeholders, COPY with inline data, statements that cannot run in a
+ * transaction, and statements with semicolons of their own: SQL-standard function bodies in
+ * {@code BEGIN ATOMIC ... END} and rules with several actions in {@code DO (...; ...)}.
+ */
+final class BatchedInsertScript {
+    private static final Logger logger = LogManager.getLogger(BatchedInsertScript.class);
+
+    /**
+     * The most rows folded into one INSERT.
+     */
+    static final int MAX_ROWS = 1000;
+
+    /**
+     * The most characters folded into one INSERT.
+     */
+    static final int MAX_CHARS = 4 * 1024 * 1024;
+
+    private static final Pattern SINGLE_ROW_INSERT = Pattern.compile(
+            "INSERT\\s+INTO\\s+([\\w.\"]+)\\s*\\(([^()']*)\\)\\s*VALUES\\s*", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern NON_TRANSACTIONAL = Pattern.compile(
+            "^(VACUUM|BEGIN|START\\s+TRANSACTION|COMMIT|ROLLBACK|END|ABORT|COPY|ALTER\\s+SYSTEM"
+                    + "|(CREATE|DROP)\\s+(DATABASE|TABLESPACE)|REINDEX\\s+(SYSTEM|DATABASE))\\b"
+                    + "|\\bCONCURRENTLY\\b|^ALTER\\s+TYPE\\b.*\\bADD\\s+VALUE\\b",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern ATOMIC_BODY = Pattern.compile("\\bBEGIN\\s+ATOMIC\\b", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Receives the statements to execute.
+     */
+    interface StatementSink {
+        void accept(String sql) throws SQLException;
+    }
+
+    /**
+     * What batching does to a script.
+     * @param statementsBefore the number of statements in the script
+     * @param statements the number of statements after folding the INSERTs
+     * @param rows the number of single-row INSERTs in the script
+     */
+    record Summary(int statementsBefore, int statements, int rows) {
+
+        /**
+         * @return true if at least two INSERTs were folded into one
+         */
+        boolean batched() {
+            return statements < statementsBefore;
+        }
+    }
+
+    private static final class UnsupportedScriptException extends RuntimeException {
+        private UnsupportedScriptException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private BatchedInsertScript() {
+    }
+
+    /**
+     * Reads a script to find out whether it can be batched.
+     * @param script the script, which is closed
+     * @param placeholderPrefix the placeholder prefix if placeholders are replaced, or null
+     * @return what batching does to the script, or null if it cannot be split safely
+     * @throws IOException if the script cannot be read
+     */
+    static Summary scan(Reader script, String placeholderPrefix) throws IOException {
+        try {
+            return process(script, placeholderPrefix, sql -> { });
+        } catch (UnsupportedScriptException e) {
+            logger.debug("Not batching a script with {}", e.getMessage());
+            return null;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Passes the statements of a script to the sink, with the single-row INSERTs folded.
+     * @param script the script, which is closed
+     * @param placeholderPrefix the placeholder prefix if placeholders are replaced, or null
+     * @param sink the statements to execute
+     * @return what batching did to the script
+     * @throws IOException if the script cannot be read
+     * @throws SQLException if the sink fails
+     * @throws FlywayException if the script cannot be split safely
+     */
+    static Summary execute(Reader script, String placeholderPrefix, StatementSink sink)
+            throws IOException, SQLException {
+        try {
+            return process(script, placeholderPrefix, sink);
+        } catch (UnsupportedScriptException e) {
+            throw new FlywayException("Unable to batch the script: " + e.getMessage());
+        }
+    }
+
+    private static Summary process(Reader script, String placeholderPrefix, StatementSink sink)
+            throws IOException, SQLException {
+        Batcher batcher = new Batcher(placeholderPrefix, sink);
+        StringBuilder statement = new StringBuilder();
+        int depth = 0;
+        try (BufferedReader in = new BufferedReader(script)) {
+            if (peek(in) == '\uFEFF') {
+                in.read();
+            }
+            for (int c = in.read(); c != -1; c = in.read()) {
+                switch (c) {
+                    case '\'' -> {
+                        if (isEscapeStringPrefix(statement)) {
+                            throw new UnsupportedScriptException("escape string");
+                        }
+                        copyQuoted(in, statement, '\'');
+                    }
+                    case '"' -> copyQuoted(in, statement, '"');
+                    case '$' -> throw new UnsupportedScriptException("dollar quote or parameter");
+                    case '(' -> {
+                        depth++;
+                        statement.append('(');
+                    }
+                    case ')' -> {
+                        depth--;
+                        statement.append(')');
+                    }
+                    case ';' -> {
+                        if (depth > 0) {
+                            throw new UnsupportedScriptException("semicolon inside parentheses");
+                        }
+                        batcher.statement(statement.toString().trim());
+                        statement.setLength(0);
+                    }
+                    case '-' -> {
+                        if (peek(in) == '-') {
+                            skipLineComment(in);
+                            statement.append('\n');
+                        } else {
+                            statement.append('-');
+                        }
+                    }
+                    case '/' -> {
+                        if (peek(in) == '*') {
+                            in.read();
+                            skipBlockComment(in);
+                            statement.append(' ');
+                        } else {
+                            statement.append('/');
+                        }
+                    }
+                    default -> statement.append((char) c);
+                }
+            }
+        }
+        batcher.statement(statement.toString().trim());
+        return batcher.finish();
+    }
+
+    private static int peek(BufferedReader in) throws IOException {
+        in.mark(1);
+        int c = in.read();
+        in.reset();
+        return c;
+    }
+
+    private static boolean isEscapeStringPrefix(StringBuilder statement) {
+        int length = statement.length();
+        if (length == 0 || Character.toUpperCase(statement.charAt(length - 1)) != 'E') {
+            return false;
+        }
+        return length == 1 || !isIdentifierPart(statement.charAt(length - 2));
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static void copyQuoted(BufferedReader in, StringBuilder statement, char quote) throws IOException {
+        statement.append(quote);
+        for (int c = in.read(); c != -1; c = in.read()) {
+            statement.append((char) c);
+            if (c == quote) {
+                if (peek(in) != quote) {
+                    return;
+                }
+                statement.append((char) in.read());
+            }
+        }
+        throw new UnsupportedScriptException("unterminated quote");
+    }
+
+    private static void skipLineComment(BufferedReader in) throws IOException {
+        for (int c = in.read(); c != -1 && c != '\n'; c = in.read()) {
+            // skip
+        }
+    }
+
+    private static void skipBlockComment(BufferedReader in) throws IOException {
+        int depth = 1;
+        for (int c = in.read(); c != -1; c = in.read()) {
+            if (c == '*' && peek(in) == '/') {
+                in.read();
+                if (--depth == 0) {
+                    return;
+                }
+            } else if (c == '/' && peek(in) == '*') {
+                in.read();
+                depth++;
+            }
+        }
+        throw new UnsupportedScriptException("unterminated comment");
+    }
+
+    /**
+     * @param values the text after {@code VALUES}
+     * @return true if the text is exactly one parenthesized row
+     */
+    static boolean isSingleRow(String values) {
+        if (values.isEmpty() || values.charAt(0) != '(') {
+            return false;
+        }
+        int depth = 0;
+        char quote = 0;
+        for (int i = 0; i < values.length(); i++) {
+            char c = values.charAt(i);
+            if (quote != 0) {
+                // a doubled quote closes and reopens the literal
+                quote = c == quote ? 0 : quote;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i == values.length() - 1;
+            }
+        }
+        return false;
+    }
+
+    private static final class Batcher {
+        private final String placeholderPrefix;
+
+        private final StatementSink sink;
+
+        private final StringBuilder batch = new StringBuilder();
+
+        private String batchShape;
+
+        private int batchRows;
+
+        private int statementsBefore;
+
+        private int statements;
+
+        private int rows;
+
+        private Batcher(String placeholderPrefix, StatementSink sink) {
+            this.placeholderPrefix = placeholderPrefix;
+            this.sink = sink;
+        }
+
+        private void statement(String sql) throws SQLException {
+            if (sql.isEmpty()) {
+                return;
+            }
+            if (ATOMIC_BODY.matcher(sql).find()) {
+                // the body was split at its first semicolon
+                throw new UnsupportedScriptException("BEGIN ATOMIC");
+            }
+            if (placeholderPrefix != null && sql.contains(placeholderPrefix)) {
+                throw new UnsupportedScriptException("placeholder");
+            }
+            statementsBefore++;
+            Matcher insert = SINGLE_ROW_INSERT.matcher(sql);
+            if (insert.lookingAt() && isSingleRow(sql.substring(insert.end()))) {
+                String shape = insert.group(1) + "(" + insert.group(2).replaceAll("\\s+", "") + ")";
+                add(shape, insert.group(), sql.substring(insert.end()));
+                return;
+            }
+            if (NON_TRANSACTIONAL.matcher(sql).find()) {
+                throw new UnsupportedScriptException(sql.substring(0, Math.min(sql.length(), 40))
+                        .toUpperCase(Locale.ROOT));
+            }
+            flush();
+            sink.accept(sql);
+            statements++;
+        }
+
+        private void add(String shape, String prefix, String row) throws SQLException {
+            if (batchRows > 0 && (!shape.equals(batchShape) || batchRows >= MAX_ROWS
+                    || batch.length() + row.length() > MAX_CHARS)) {
+                flush();
+            }
+            if (batchRows == 0) {
+                batch.append(prefix).append(row);
+                batchShape = shape;
+            } else {
+                batch.append(",\n").append(row);
+            }
+            batchRows++;
+            rows++;
+        }
+
+        private void flush() throws SQLException {
+            if (batchRows > 0) {
+                sink.accept(batch.toString());
+                statements++;
+                batch.setLength(0);
+                batchRows = 0;
+            }
+        }
+
+        private Summary finish() throws SQLException {
+            flush();
+            return new Summary(statementsBefore, statements, rows);
+        }
+    }
+}
@@ -9,28 +9,26 @@ import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.flywaydb.core.Flyway;
-import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.configuration.Configuration;
 import org.flywaydb.core.api.output.MigrateResult;
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Uri;
 import software.amazon.awssdk.services.s3.S3Utilities;
-import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.lambda.powertools.cloudformation.AbstractCustomResourceHandler;
 import software.amazon.lambda.powertools.cloudformation.Response;
 import software.amazon.lambda.powertools.logging.LoggingUtils;
 import software.amazon.lambda.powertools.parameters.ParamManager;
 import software.amazon.lambda.powertools.parameters.SecretsProvider;
-import software.amazon.lambda.powertools.parameters.transform.JsonTransformer;
 
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.DirectoryStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static software.amazon.lambda.powertools.utilities.EventDeserializer.extractDataFrom;
 
@@ -53,38 +51,48 @@ public class DBMigratorHandler extends AbstractCustomResourceHandler {
         LoggingUtils.defaultObjectMapper(objectMapper);
     }
 
-    private SecretsProvider secretsProvider;
+    private SecretResolver secretResolver;
 
+    private S3AssetDownloader assetDownloader;
 
-    private S3Client s3Client;
+    private AssetCache assetCache;
+
+    /**
+     * The manifests of the assets in the cache, by the path of the cached file, which changes with the ETag.
+     */
+    private final Map<Path, MigrationManifest> manifests = new ConcurrentHashMap<>();
 
     public DBMigratorHandler() {
-        super();
-        this.secretsProvider = ParamManager.getSecretsProvider();
-        this.s3Client = S3Client.builder()
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+        this(ParamManager.getSecretsProvider(), S3AssetDownloader.fromEnvironment());
     }
 
     /**
      * Constructor mainly used for unit testing so that we can provide Mock implementations.
      * @param secretsProvider
-     * @param s3Client
+     * @param assetDownloader
      */
     public DBMigratorHandler(SecretsProvider secretsProvider,
-                             S3Client s3Client) {
+                             S3AssetDownloader assetDownloader) {
         super();
-        this.secretsProvider = secretsProvider;
-        this.s3Client = s3Client;
+        this.secretResolver = SecretResolver.fromEnvironment(secretsProvider::get);
+        this.assetDownloader = assetDownloader;
+        this.assetCache = AssetCache.fromEnvironment(assetDownloader);
     }
 
-    private DBSecret getSecret(CloudFormationCustomResourceEvent event) {
+    /**
+     * Resolves the master secret and the secrets of the placeholders, concurrently, see {@link SecretResolver}.
+     * @param event the CloudFormationCustomResourceEvent with the name of the master secret
+     * @param configuration the resource configuration with the names of the placeholder secrets
+     * @return the secrets by name
+     */
+    private Map<String, DBSecret> getSecrets(CloudFormationCustomResourceEvent event,
+                                             ResourceConfiguration configuration) {
         var secretName = (String) event.getResourceProperties().get("masterSecret");
-        logger.debug(String.format("Getting secret %s",secretName));
-        DBSecret dbSecret = this.secretsProvider
-                .withTransformation(JsonTransformer.class)
-                .get(secretName,DBSecret.class);
-        return dbSecret;
+        Set<String> secretNames = new LinkedHashSet<>();
+        secretNames.add(secretName);
+        secretNames.addAll(configuration.secretNames());
+        logger.debug(String.format("Getting secrets %s",secretNames));
+        return this.secretResolver.resolve(secretNames);
     }
 
     @Override
@@ -110,36 +118,40 @@ public class DBMigratorHandler extends AbstractCustomResourceHandler {
      */
     protected Response execute(CloudFormationCustomResourceEvent event, Context context, String physicalResourceId) {
         ResourceConfiguration configuration = extractDataFrom(event).as(ResourceConfiguration.class);
-        DBSecret dbSecret = getSecret(event);
+        Map<String, DBSecret> secrets = getSecrets(event, configuration);
+        DBSecret dbSecret = secrets.get((String) event.getResourceProperties().get("masterSecret"));
         logger.debug(String.format("configuring flyway with username %s ...",dbSecret.getUsername()));
-        Path sqlLocation;
+        Path assetPath;
+        ZipResourceProvider sqlAsset;
         try {
-            S3Utilities s3Utilities = s3Client.utilities();
+            S3Utilities s3Utilities = assetDownloader.utilities();
             S3Uri s3Uri = s3Utilities.parseUri(URI.create(configuration.getLocations()));
-            sqlLocation = copySqlFilesFromS3(s3Uri);
+            assetPath = getSqlAsset(s3Uri);
+            sqlAsset = openSqlAsset(assetPath);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        try {
-
+        try (sqlAsset) {
+            Configuration flywayConfig = configuration.buildConfig(dbSecret,sqlAsset,secrets);
+            manifests.keySet().removeIf(path -> !Files.exists(path));
+            MigrationManifest manifest = manifests.computeIfAbsent(assetPath,
+                    path -> MigrationManifest.of(sqlAsset, flywayConfig));
+            if (manifest.isAppliedTo(flywayConfig)) {
+                logger.info("All {} migrations of the asset are applied, nothing to migrate",
+                        manifest.migrations().size());
+                return success(new DBDeploymentResponse(true,0,flywayVersion()), physicalResourceId);
+            }
+            // migrate validates the applied migrations against the asset before it applies the pending ones
+            var batchedInserts = new BatchedInsertResolver(sqlAsset, flywayConfig);
             var flyway = Flyway.configure()
-                    .configuration(configuration.buildConfig(dbSecret,sqlLocation,this.secretsProvider))
+                    .configuration(flywayConfig)
+                    .resourceProvider(batchedInserts.remainingScripts())
+                    .resolvers(batchedInserts)
                     .load();
-            logger.info("Checking Flyway info....");
-            var info = flyway.info();
-            logger.info("Flyway Info: {}",info.getInfoResult().toString());
-            logger.info("validating SQL....");
-            flyway.validate();
-            logger.info("Validation successful");
             MigrateResult result = flyway.migrate();
             var response = new DBDeploymentResponse(result.success,result.migrationsExecuted,result.flywayVersion);
             logger.info("Migration result: {}", result.success);
-            return Response.builder()
-                    .value(response)
-                    .status(Response.Status.SUCCESS)
-                    .physicalResourceId(physicalResourceId)
-                    .objectMapper(objectMapper)
-                    .build();
+            return success(response, physicalResourceId);
         }
         catch (Exception e) {
             logger.fatal(e);
@@ -152,75 +164,61 @@ public class DBMigratorHandler extends AbstractCustomResourceHandler {
         }
     }
 
+    /**
+     * The version of Flyway when no migration runs, and so there is no {@link MigrateResult#flywayVersion}. Read
+     * from the manifest of the Flyway jar rather than from Flyway's internal classes.
+     * @return the version, or null if the manifest of the jar does not carry one
+     */
+    private static String flywayVersion() {
+        return Flyway.class.getPackage().getImplementationVersion();
+    }
+
+    private Response success(DBDeploymentResponse response, String physicalResourceId) {
+        return Response.builder()
+                .value(response)
+                .status(Response.Status.SUCCESS)
+                .physicalResourceId(physicalResourceId)
+                .objectMapper(objectMapper)
+                .build();
+    }
+
     @Override
     protected Response delete(CloudFormationCustomResourceEvent event, Context context) {
         return Response.success(event.getPhysicalResourceId());
     }
 
     /**
-     * Copies the SQL files defined in the S3 asset into the lambdas tmp directory.
-     * @param s3Uri the S3 URI of the CDK Asset that contains the ZIP archive of the migration files
-     * @return the path where the SQL files have been unzipped to.
+     * Opens the downloaded CDK asset with the SQL files for Flyway. The scripts are read from the archive as
+     * Flyway needs them, without extracting it.
+     * @param downloadLocation the local copy of the ZIP archive of the migration files
+     * @return the scripts of the archive
      * @throws IOException
      */
-    private Path copySqlFilesFromS3(S3Uri s3Uri) throws IOException {
-        // Download the CDK aseet to ephemeral lambda storage in /tmp
-        var filename = s3Uri.key().orElseThrow();
-        Path downloadLocation = getSqlAsset(s3Uri);
-        var dirname = filename.substring(0,filename.length() - 4);
-        // Unzip the CDK asset containing the SQL files to ephemeral lambda storage in /tmp
-        Path sqlOutput = Files.createTempDirectory(dirname);
-        UnzipUtil.unzip(downloadLocation.toAbsolutePath(), sqlOutput.toAbsolutePath());
-        logger.info("SQL package extracted to {}", sqlOutput.toAbsolutePath());
-        if(isDirEmpty(sqlOutput)) {
-            throw new RuntimeException("SQL Output Dir is empty");
+    private ZipResourceProvider openSqlAsset(Path downloadLocation) throws IOException {
+        var sqlAsset = new ZipResourceProvider(downloadLocation.toAbsolutePath(), StandardCharsets.UTF_8);
+        logger.info("SQL package {} has {} files", downloadLocation.toAbsolutePath(), sqlAsset.size());
+        if (sqlAsset.size() == 0) {
+            sqlAsset.close();
+            throw new RuntimeException("SQL package is empty");
         }
-        return sqlOutput;
+        return sqlAsset;
     }
 
     /**
-     * Downloads the CDK asset containing the Flyway migration scripts to /tmp
+     * Downloads the CDK asset containing the Flyway migration scripts to /tmp. On a warm container the copy of
+     * an earlier invocation is reused while the asset is unchanged, see {@link AssetCache}.
      * @param s3Uri the location of the S3 asset
      * @return the Path of the local copy of the ZIP archive
      * @throws IOException
      */
     private Path getSqlAsset(S3Uri s3Uri) throws IOException {
-        var filename = s3Uri.key().orElseThrow();
-        var downloadLocation = Files.createFile(Paths.get("/tmp",filename));
-        var objectRequest = GetObjectRequest
-                .builder()
-                .key(s3Uri.key().orElseThrow())
-                .bucket(s3Uri.bucket().orElseThrow())
-                .build();
-
         try {
-            var objectBytes = s3Client.getObjectAsBytes(objectRequest);
-            byte[] data = objectBytes.asByteArray();
-            try(var os = Files.newOutputStream(downloadLocation)) {
-                os.write(data);
-            };
-        } catch (Exception e) {
+            return assetCache.get(s3Uri);
+        } catch (IOException e) {
             logger.fatal("Could not get S3 Asset", e);
-            throw new IOException(e);
+            throw e;
         }
-        return downloadLocation;
     }
-
-    /**
-     * Check that a directory contains files or not
-     * @param path the path of the directory
-     * @return true if the directory contains files.
-     * @throws IOException
-     */
-    public boolean isDirEmpty(Path path) throws IOException {
-        if (Files.isDirectory(path)) {
-            try (DirectoryStream<Path> directory = Files.newDirectoryStream(path)) {
-                return !directory.iterator().hasNext();
-            }
-        }
-        return false;
-    }
-
 }
 
 
@@ -0,0 +1,197 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.ResourceProvider;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.resource.LoadableResource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * The versioned migrations of an asset with the description and checksum Flyway records for each of them in
+ * its schema history table. The manifest is computed once per asset, so a warm function reads the scripts of
+ * an unchanged asset only when there is something to migrate.
+ * <p>
+ * {@link #isAppliedTo(Configuration)} compares the manifest with the schema history in a single query. The
+ * answer is only yes when a migrate would not change anything and validation would pass. In every other case,
+ * including a missing history table, the caller leaves the decision to Flyway. An asset with repeatable
+ * migrations or SQL callbacks never takes that shortcut, as Flyway runs those on every migrate.
+ */
+public class MigrationManifest {
+    private static final Logger logger = LogManager.getLogger(MigrationManifest.class);
+
+    private final NavigableMap<MigrationVersion, Migration> migrations;
+
+    private final boolean versionedOnly;
+
+    /**
+     * A versioned migration as Flyway records it in the schema history table.
+     * @param description the description from the script name, with underscores replaced by spaces
+     * @param checksum the CRC32 Flyway computes over the lines of the script
+     */
+    record Migration(String description, int checksum) {
+    }
+
+    private MigrationManifest(NavigableMap<MigrationVersion, Migration> migrations, boolean versionedOnly) {
+        this.migrations = Collections.unmodifiableNavigableMap(migrations);
+        this.versionedOnly = versionedOnly;
+    }
+
+    /**
+     * Reads every versioned script of the resources once to compute its checksum.
+     * @param resources the scripts of the asset
+     * @param configuration the Flyway configuration with the naming conventions of the scripts
+     * @return the manifest of the asset
+     */
+    public static MigrationManifest of(ResourceProvider resources, Configuration configuration) {
+        NavigableMap<MigrationVersion, Migration> migrations = new TreeMap<>();
+        boolean versionedOnly = true;
+        for (LoadableResource script : resources.getResources("", configuration.getSqlMigrationSuffixes())) {
+            ScriptName name = ScriptName.parse(script.getFilename(), configuration);
+            if (name == null) {
+                logger.debug("{} is not a versioned migration", script.getFilename());
+                versionedOnly = false;
+                continue;
+            }
+            if (migrations.put(name.version(), new Migration(name.description(), checksum(script))) != null) {
+                logger.debug("Version {} is defined more than once", name.version());
+                versionedOnly = false;
+            }
+        }
+        return new MigrationManifest(migrations, versionedOnly);
+    }
+
+    /**
+     * The version and description in the file name of a versioned migration.
+     */
+    record ScriptName(MigrationVersion version, String description) {
+
+        /**
+         * @param filename the file name of a script
+         * @param configuration the Flyway configuration with the naming conventions of the scripts
+         * @return the version and description, or null if the script is not a versioned migration
+         */
+        static ScriptName parse(String filename, Configuration configuration) {
+            String prefix = configuration.getSqlMigrationPrefix();
+            String separator = configuration.getSqlMigrationSeparator();
+            int separatorAt = filename.indexOf(separator);
+            if (!filename.startsWith(prefix) || separatorAt <= prefix.length()) {
+                return null;
+            }
+            String description = filename.substring(separatorAt + separator.length());
+            for (String suffix : configuration.getSqlMigrationSuffixes()) {
+                if (description.endsWith(suffix)) {
+                    description = description.substring(0, description.length() - suffix.length());
+                    break;
+                }
+            }
+            return new ScriptName(MigrationVersion.fromVersion(filename.substring(prefix.length(), separatorAt)),
+                    description.replace('_', ' '));
+        }
+    }
+
+    /**
+     * Computes the checksum of a script the way Flyway does for versioned migrations: a CRC32 over the UTF-8
+     * bytes of each line without its line break and without a leading byte order mark. Placeholders are not
+     * replaced.
+     * @param script the script
+     * @return the checksum
+     */
+    static int checksum(LoadableResource script) {
+        CRC32 crc32 = new CRC32();
+        try (Reader reader = script.read(); BufferedReader lines = new BufferedReader(reader, 4096)) {
+            String line = lines.readLine();
+            if (line != null && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            for (; line != null; line = lines.readLine()) {
+                crc32.update(line.getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + script.getFilename(), e);
+        }
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * @return the versioned migrations of the asset by version
+     */
+    Map<MigrationVersion, Migration> migrations() {
+        return migrations;
+    }
+
+    /**
+     * Compares the manifest with the schema history table of the configuration in one query.
+     * @param configuration the Flyway configuration of the migration
+     * @return true if every migration of the asset is applied with the same description and checksum, and
+     *         nothing else is recorded, false if Flyway has to look at the schema
+     */
+    public boolean isAppliedTo(Configuration configuration) {
+        if (!versionedOnly) {
+            return false;
+        }
+        String schema = configuration.getDefaultSchema() != null ? configuration.getDefaultSchema()
+                : configuration.getSchemas().length > 0 ? configuration.getSchemas()[0] : null;
+        String table = (schema != null ? quote(schema) + "." : "") + quote(configuration.getTable());
+        try (Connection connection = configuration.getDataSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet history = statement.executeQuery(
+                     "SELECT \"version\", \"description\", \"type\", \"checksum\", \"success\" FROM " + table
+                             + " WHERE \"version\" IS NOT NULL")) {
+            return isAppliedTo(history);
+        } catch (SQLException e) {
+            logger.debug("Could not read the schema history {}: {}", table, e.getMessage());
+            return false;
+        }
+    }
+
+    boolean isAppliedTo(ResultSet history) throws SQLException {
+        NavigableMap<MigrationVersion, Migration> applied = new TreeMap<>();
+        MigrationVersion baseline = MigrationVersion.EMPTY;
+        while (history.next()) {
+            MigrationVersion version = MigrationVersion.fromVersion(history.getString("version"));
+            String type = history.getString("type");
+            if (!history.getBoolean("success")) {
+                logger.info("Migration {} has failed before", version);
+                return false;
+            }
+            if ("BASELINE".equals(type)) {
+                baseline = baseline.compareTo(version) < 0 ? version : baseline;
+            } else if ("SQL".equals(type)) {
+                int checksum = history.getInt("checksum");
+                if (applied.put(version, new Migration(history.getString("description"), checksum)) != null) {
+                    return false;
+                }
+            } else if (!"SCHEMA".equals(type)) {
+                logger.debug("Migration {} has type {}", version, type);
+                return false;
+            }
+        }
+        applied.headMap(baseline, true).clear();
+        Map<MigrationVersion, Migration> expected = migrations.tailMap(baseline, false);
+        if (!applied.equals(expected)) {
+            logger.info("{} of {} migrations of the asset are applied", applied.size(), expected.size());
+            return false;
+        }
+        return true;
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -5,12 +5,13 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.flywaydb.core.api.ResourceProvider;
 import org.flywaydb.core.api.configuration.Configuration;
 import org.flywaydb.core.api.configuration.FluentConfiguration;
-import software.amazon.lambda.powertools.parameters.SecretsProvider;
-import software.amazon.lambda.powertools.parameters.transform.JsonTransformer;
 
-import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @JsonIgnoreProperties({ "masterSecret","ServiceToken" })
@@ -53,13 +54,26 @@ public class ResourceConfiguration {
         return secretPlaceHolders;
     }
 
-    public Configuration buildConfig(DBSecret masterDBSecret, Path localSqlLocation, SecretsProvider secretsProvider) {
+    /**
+     * @return the names of the secrets whose passwords are placeholder values
+     */
+    public Collection<String> secretNames() {
+        return secretPlaceHolders != null ? secretPlaceHolders.values() : List.of();
+    }
+
+    /**
+     * @param masterDBSecret the secret of the database to migrate
+     * @param sqlResources the migration scripts
+     * @param secrets the resolved secrets by name, including the ones of {@link #secretNames()}
+     * @return the Flyway configuration of the migration
+     */
+    public Configuration buildConfig(DBSecret masterDBSecret, ResourceProvider sqlResources, Map<String, DBSecret> secrets) {
         var jdbcUrl = String.format("jdbc:%s://%s:%s/%s",
                 "postgresql",
                 masterDBSecret.getHost(),
                 masterDBSecret.getPort(),
                 masterDBSecret.getDbname());
-        this.resolveSecretValues(secretsProvider);
+        this.resolveSecretValues(secrets);
         FluentConfiguration configuration = new FluentConfiguration();
 
         configuration.placeholders(this.getPlaceHolders())
@@ -68,7 +82,7 @@ public class ResourceConfiguration {
                      .defaultSchema("demoapp")
                      .baselineOnMigrate(true)
                      .ignoreMigrationPatterns("*:pending")
-                     .locations("filesystem:".concat(localSqlLocation.toString()));
+                     .resourceProvider(sqlResources);
         logger.debug("Dumpling place holders:");
         configuration.getPlaceholders().forEach((key, value) -> {
             logger.debug("Key: {} Value: {}",key,value);
@@ -76,11 +90,15 @@ public class ResourceConfiguration {
         return configuration;
     }
 
-    private void resolveSecretValues(SecretsProvider secretsProvider) {
+    private void resolveSecretValues(Map<String, DBSecret> secrets) {
+        if (this.secretPlaceHolders == null) {
+            return;
+        }
+        if (this.placeHolders == null) {
+            this.placeHolders = new HashMap<>();
+        }
         this.secretPlaceHolders.forEach((key, value) -> {
-            DBSecret dbSecret = secretsProvider
-                    .withTransformation(JsonTransformer.class)
-                    .get(value,DBSecret.class);
+            DBSecret dbSecret = secrets.get(value);
             logger.debug("Adding secret placeholder for: {}",key);
             this.placeHolders.put(key,dbSecret.getPassword());
         });
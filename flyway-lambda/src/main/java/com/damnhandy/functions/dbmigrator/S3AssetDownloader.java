@@ -0,0 +1,145 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3CrtAsyncClientBuilder;
+import software.amazon.awssdk.services.s3.S3Uri;
+import software.amazon.awssdk.services.s3.S3Utilities;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedFileDownload;
+import software.amazon.awssdk.transfer.s3.model.DownloadFileRequest;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Downloads the CDK asset with the migration scripts straight to a file. With the CRT based client the
+ * object is fetched as ranged GETs of {@code partSize} bytes, up to {@code maxConcurrency} at a time, and
+ * each part is written to its offset in the file as it arrives, so the heap never holds the archive and
+ * the Lambda memory no longer has to be sized for the largest bundle.
+ */
+public class S3AssetDownloader implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(S3AssetDownloader.class);
+
+    /**
+     * Environment variable with the size in bytes of the ranged GETs.
+     */
+    public static final String PART_SIZE_ENV = "ASSET_DOWNLOAD_PART_SIZE";
+
+    /**
+     * Environment variable with the number of ranged GETs in flight.
+     */
+    public static final String MAX_CONCURRENCY_ENV = "ASSET_DOWNLOAD_MAX_CONCURRENCY";
+
+    static final long DEFAULT_PART_SIZE = 8L * 1024 * 1024;
+
+    static final int DEFAULT_MAX_CONCURRENCY = 8;
+
+    private final S3AsyncClient s3Client;
+
+    private final S3TransferManager transferManager;
+
+    /**
+     * @param s3Client the client the transfer manager downloads with, a CRT based client for parallel
+     *                 ranged downloads; it is closed with this downloader
+     */
+    public S3AssetDownloader(S3AsyncClient s3Client) {
+        this.s3Client = s3Client;
+        this.transferManager = S3TransferManager.builder()
+                .s3Client(s3Client)
+                .build();
+    }
+
+    /**
+     * Creates a downloader with a CRT based client, configured from {@value #PART_SIZE_ENV} and
+     * {@value #MAX_CONCURRENCY_ENV} in the function environment.
+     */
+    public static S3AssetDownloader fromEnvironment() {
+        Map<String, String> environment = System.getenv();
+        long partSize = setting(environment, PART_SIZE_ENV, DEFAULT_PART_SIZE);
+        int maxConcurrency = (int) setting(environment, MAX_CONCURRENCY_ENV, DEFAULT_MAX_CONCURRENCY);
+        logger.debug("Downloading assets in parts of {} bytes, {} at a time", partSize, maxConcurrency);
+        return new S3AssetDownloader(crtClientBuilder(partSize, maxConcurrency)
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .build());
+    }
+
+    static S3CrtAsyncClientBuilder crtClientBuilder(long partSize, int maxConcurrency) {
+        return S3AsyncClient.crtBuilder()
+                .minimumPartSizeInBytes(partSize)
+                .maxConcurrency(maxConcurrency);
+    }
+
+    static long setting(Map<String, String> environment, String name, long defaultValue) {
+        String value = environment.get(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        long setting = Long.parseLong(value.trim());
+        if (setting <= 0) {
+            throw new IllegalArgumentException(name + " must be positive, was " + value);
+        }
+        return setting;
+    }
+
+    public S3Utilities utilities() {
+        return s3Client.utilities();
+    }
+
+    /**
+     * Downloads the object to a file.
+     * @param s3Uri the location of the object
+     * @param destination the file to write, replaced if it exists
+     * @return the destination
+     * @throws IOException if the object could not be downloaded
+     */
+    public Path download(S3Uri s3Uri, Path destination) throws IOException {
+        download(s3Uri, destination, null);
+        return destination;
+    }
+
+    /**
+     * Downloads the object to a file unless it still has the given ETag.
+     * @param s3Uri the location of the object
+     * @param destination the file to write, replaced if it exists
+     * @param ifNoneMatch the ETag of a copy the caller already has, or null to download unconditionally
+     * @return the ETag of the downloaded object, or empty if the object still has the ETag {@code ifNoneMatch}
+     *         and the destination was not written
+     * @throws IOException if the object could not be downloaded
+     */
+    public Optional<String> download(S3Uri s3Uri, Path destination, String ifNoneMatch) throws IOException {
+        var request = DownloadFileRequest.builder()
+                .getObjectRequest(get -> get
+                        .bucket(s3Uri.bucket().orElseThrow())
+                        .key(s3Uri.key().orElseThrow())
+                        .ifNoneMatch(ifNoneMatch))
+                .destination(destination)
+                .build();
+        try {
+            CompletedFileDownload download = transferManager.downloadFile(request).completionFuture().join();
+            logger.info("Downloaded {} bytes of {} to {}", download.response().contentLength(), s3Uri.uri(),
+                    destination);
+            return Optional.of(download.response().eTag());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof S3Exception s3Exception
+                    && s3Exception.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                logger.debug("{} still has ETag {}", s3Uri.uri(), ifNoneMatch);
+                return Optional.empty();
+            }
+            throw new IOException("Could not download " + s3Uri.uri(), e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        transferManager.close();
+        s3Client.close();
+    }
+}
@@ -0,0 +1,163 @@
+package com.damnhandy.functions.dbmigrator;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Resolves the master secret and the secrets of the placeholders of a migration concurrently instead of one
+ * Secrets Manager round trip after the other. At most {@code concurrency} secrets are fetched at a time, and a
+ * secret that is not resolved within the timeout of being requested fails the invocation instead of letting
+ * it run into the Lambda timeout.
+ * <p>
+ * Resolved secrets are kept for the TTL, so the warm invocations of one execution environment reuse them. A
+ * secret that is requested again while it is being fetched waits for that fetch. Failed fetches are not
+ * kept. A rotated secret is picked up once its cached value expires.
+ */
+public class SecretResolver implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(SecretResolver.class);
+
+    /**
+     * Environment variable with the seconds a resolved secret is reused for.
+     */
+    public static final String TTL_ENV = "SECRET_CACHE_TTL_SECONDS";
+
+    /**
+     * Environment variable with the milliseconds a secret may take to resolve.
+     */
+    public static final String TIMEOUT_ENV = "SECRET_RESOLVE_TIMEOUT_MILLIS";
+
+    /**
+     * Environment variable with the number of secrets fetched at a time.
+     */
+    public static final String CONCURRENCY_ENV = "SECRET_RESOLVE_CONCURRENCY";
+
+    static final long DEFAULT_TTL_SECONDS = 60;
+
+    static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    static final int DEFAULT_CONCURRENCY = 8;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Function<String, String> secretValues;
+
+    private final Duration ttl;
+
+    private final Duration timeout;
+
+    private final ExecutorService executor;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private record Entry(CompletableFuture<DBSecret> secret, long expiresAt) {
+    }
+
+    /**
+     * @param secretValues returns the JSON value of a secret by name, such as {@code SecretsProvider::get}
+     * @param ttl how long a resolved secret is reused
+     * @param timeout how long a secret may take to resolve, counted from when it is requested
+     * @param concurrency the number of secrets fetched at a time
+     */
+    public SecretResolver(Function<String, String> secretValues, Duration ttl, Duration timeout, int concurrency) {
+        this.secretValues = secretValues;
+        this.ttl = ttl;
+        this.timeout = timeout;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(concurrency, task -> {
+            Thread thread = new Thread(task, "secret-resolver-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a resolver configured from {@value #TTL_ENV}, {@value #TIMEOUT_ENV} and {@value #CONCURRENCY_ENV}
+     * in the function environment.
+     * @param secretValues returns the JSON value of a secret by name
+     */
+    public static SecretResolver fromEnvironment(Function<String, String> secretValues) {
+        Map<String, String> environment = System.getenv();
+        return new SecretResolver(secretValues,
+                Duration.ofSeconds(S3AssetDownloader.setting(environment, TTL_ENV, DEFAULT_TTL_SECONDS)),
+                Duration.ofMillis(S3AssetDownloader.setting(environment, TIMEOUT_ENV, DEFAULT_TIMEOUT_MILLIS)),
+                (int) S3AssetDownloader.setting(environment, CONCURRENCY_ENV, DEFAULT_CONCURRENCY));
+    }
+
+    /**
+     * Resolves the secrets concurrently, or from the cache.
+     * @param names the names of the secrets
+     * @return the secrets by name, in the order of the names
+     * @throws IllegalStateException if a secret cannot be resolved or does not resolve in time
+     */
+    public Map<String, DBSecret> resolve(Collection<String> names) {
+        Map<String, CompletableFuture<DBSecret>> requested = new LinkedHashMap<>();
+        for (String name : names) {
+            requested.computeIfAbsent(name, this::request);
+        }
+        Map<String, DBSecret> secrets = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<DBSecret>> secret : requested.entrySet()) {
+            secrets.put(secret.getKey(), join(secret.getKey(), secret.getValue()));
+        }
+        return secrets;
+    }
+
+    private CompletableFuture<DBSecret> request(String name) {
+        long now = System.nanoTime();
+        Entry entry = cache.compute(name, (key, cached) -> {
+            if (cached != null && cached.expiresAt() - now > 0 && !cached.secret().isCompletedExceptionally()) {
+                return cached;
+            }
+            logger.debug("Fetching secret {}", key);
+            return new Entry(CompletableFuture.supplyAsync(() -> fetch(key), executor), now + ttl.toNanos());
+        });
+        entry.secret().whenComplete((secret, failure) -> {
+            if (failure != null) {
+                cache.remove(name, entry);
+            }
+        });
+        // the cached fetch is shared, only the wait of this request times out
+        return entry.secret().copy().orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private DBSecret fetch(String name) {
+        try {
+            return objectMapper.readValue(secretValues.apply(name), DBSecret.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Secret " + name + " is not a database secret", e);
+        }
+    }
+
+    private DBSecret join(String name, CompletableFuture<DBSecret> secret) {
+        try {
+            return secret.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+                throw new IllegalStateException("Secret " + name + " did not resolve within "
+                        + timeout.toMillis() + " ms", cause);
+            }
+            throw new IllegalStateException("Could not resolve secret " + name, cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,147 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.ResourceProvider;
+import org.flywaydb.core.api.resource.LoadableResource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Serves the migration scripts of the CDK asset to Flyway straight from the ZIP archive. The entries are
+ * indexed once from the central directory of the archive and a script is only inflated, as a stream, when
+ * Flyway reads it, so nothing is extracted to /tmp. Entries whose name would resolve outside of the
+ * archive root are rejected when the archive is opened.
+ */
+public class ZipResourceProvider implements ResourceProvider, AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(ZipResourceProvider.class);
+
+    private final ZipFile zipFile;
+
+    private final Charset encoding;
+
+    private final Map<String, ZipEntryResource> resources = new TreeMap<>();
+
+    /**
+     * @param archive the ZIP archive of migration scripts
+     * @param encoding the encoding of the scripts
+     * @throws IOException if the archive cannot be read
+     * @throws FlywayException if an entry name points outside of the archive
+     */
+    public ZipResourceProvider(Path archive, Charset encoding) throws IOException {
+        this.zipFile = new ZipFile(archive.toFile());
+        this.encoding = encoding;
+        try {
+            zipFile.stream()
+                    .filter(entry -> !entry.isDirectory())
+                    .forEach(entry -> resources.put(checkEntryName(entry.getName()), new ZipEntryResource(entry)));
+        } catch (RuntimeException e) {
+            zipFile.close();
+            throw e;
+        }
+        logger.debug("Indexed {} files of {}", resources.size(), archive);
+    }
+
+    /**
+     * Rejects absolute entry names, names with backslashes and names that climb out of the archive root
+     * with {@code ..}, the names a zip-slip archive uses to write outside of the extraction directory.
+     * @param name the name of a ZIP entry
+     * @return the name
+     */
+    static String checkEntryName(String name) {
+        Path path = Paths.get(name).normalize();
+        if (name.isEmpty() || name.startsWith("/") || name.indexOf('\\') >= 0 || path.isAbsolute()
+                || path.startsWith("..")) {
+            throw new FlywayException("Refusing ZIP entry outside of the archive root: " + name);
+        }
+        return name;
+    }
+
+    /**
+     * @return the number of files in the archive
+     */
+    public int size() {
+        return resources.size();
+    }
+
+    @Override
+    public LoadableResource getResource(String name) {
+        return resources.get(name);
+    }
+
+    @Override
+    public Collection<LoadableResource> getResources(String prefix, String[] suffixes) {
+        List<LoadableResource> matches = new ArrayList<>();
+        for (ZipEntryResource resource : resources.values()) {
+            String filename = resource.getFilename();
+            if (!filename.startsWith(prefix)) {
+                continue;
+            }
+            for (String suffix : suffixes) {
+                if (filename.endsWith(suffix)) {
+                    matches.add(resource);
+                    break;
+                }
+            }
+        }
+        return Collections.unmodifiableList(matches);
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+
+    private class ZipEntryResource extends LoadableResource {
+        private final ZipEntry entry;
+
+        private ZipEntryResource(ZipEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Reader read() {
+            try {
+                return new BufferedReader(new InputStreamReader(zipFile.getInputStream(entry), encoding));
+            } catch (IOException e) {
+                throw new FlywayException("Unable to read " + getAbsolutePathOnDisk(), e);
+            }
+        }
+
+        @Override
+        public String getAbsolutePath() {
+            return entry.getName();
+        }
+
+        @Override
+        public String getAbsolutePathOnDisk() {
+            return zipFile.getName() + "!/" + entry.getName();
+        }
+
+        @Override
+        public String getFilename() {
+            String name = entry.getName();
+            return name.substring(name.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public String getRelativePath() {
+            return entry.getName();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class AssetCacheTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    private static LocalS3Server s3;
+
+    private static S3AssetDownloader downloader;
+
+    @BeforeAll
+    static void startS3() throws IOException {
+        s3 = new LocalS3Server();
+        downloader = new S3AssetDownloader(S3AssetDownloaderTest.client(s3, 5 * MIB, 4));
+    }
+
+    @AfterAll
+    static void stopS3() {
+        downloader.close();
+        s3.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        s3.reset();
+    }
+
+    private static List<String> files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testRevalidatesCachedAsset(@TempDir Path tmp) throws IOException {
+        s3.putObject("assets", "bundle.zip", 3 * MIB);
+        var uri = S3AssetDownloaderTest.s3Uri(downloader, "assets", "bundle.zip");
+
+        Path first = new AssetCache(tmp, 100 * MIB, downloader).get(uri);
+        LocalS3Server.assertContent(first, 3 * MIB);
+        Assertions.assertEquals(0, s3.notModifiedResponses());
+
+        // a warm invocation, and a new handler on the same /tmp
+        Path second = new AssetCache(tmp, 100 * MIB, downloader).get(uri);
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals(1, s3.notModifiedResponses());
+        Assertions.assertEquals(List.of(first.getFileName().toString()), files(tmp));
+        LocalS3Server.assertContent(second, 3 * MIB);
+    }
+
+    @Test
+    public void testReplacesChangedAsset(@TempDir Path tmp) throws IOException {
+        var cache = new AssetCache(tmp, 100 * MIB, downloader);
+        s3.putObject("assets", "bundle.zip", 2 * MIB);
+        var uri = S3AssetDownloaderTest.s3Uri(downloader, "assets", "bundle.zip");
+        Path first = cache.get(uri);
+
+        s3.putObject("assets", "bundle.zip", 2 * MIB + 1);
+        Path second = cache.get(uri);
+        Assertions.assertNotEquals(first, second);
+        LocalS3Server.assertContent(second, 2 * MIB + 1);
+        Assertions.assertEquals(List.of(second.getFileName().toString()), files(tmp));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed(@TempDir Path tmp) throws IOException {
+        var cache = new AssetCache(tmp, 5 * MIB / 2, downloader);
+        for (String key : List.of("a.zip", "b.zip", "c.zip")) {
+            s3.putObject("assets", key, MIB);
+        }
+        Path a = cache.get(S3AssetDownloaderTest.s3Uri(downloader, "assets", "a.zip"));
+        Path b = cache.get(S3AssetDownloaderTest.s3Uri(downloader, "assets", "b.zip"));
+        Files.setLastModifiedTime(b, Files.getLastModifiedTime(a));
+        // a is used again, so b is the least recently used
+        Assertions.assertEquals(a, cache.get(S3AssetDownloaderTest.s3Uri(downloader, "assets", "a.zip")));
+        Path c = cache.get(S3AssetDownloaderTest.s3Uri(downloader, "assets", "c.zip"));
+        Assertions.assertTrue(Files.exists(a));
+        Assertions.assertFalse(Files.exists(b));
+        Assertions.assertTrue(Files.exists(c));
+
+        // an asset larger than the cache is still kept while it is the current one
+        s3.putObject("assets", "large.zip", 3 * MIB);
+        Path large = cache.get(S3AssetDownloaderTest.s3Uri(downloader, "assets", "large.zip"));
+        Assertions.assertEquals(List.of(large.getFileName().toString()), files(tmp));
+    }
+
+    @Test
+    public void testFailedDownloadLeavesNothingBehind(@TempDir Path tmp) throws IOException {
+        Files.write(tmp.resolve(".download-1234.zip"), new byte[100]);
+        var cache = new AssetCache(tmp, 100 * MIB, downloader);
+        Assertions.assertEquals(List.of(), files(tmp));
+
+        s3.putObject("assets", "bundle.zip", MIB);
+        Path cached = cache.get(S3AssetDownloaderTest.s3Uri(downloader, "assets", "bundle.zip"));
+        Assertions.assertThrows(IOException.class,
+                () -> cache.get(S3AssetDownloaderTest.s3Uri(downloader, "assets", "missing.zip")));
+        Assertions.assertEquals(List.of(cached.getFileName().toString()), files(tmp));
+    }
+
+    @Test
+    public void testFileName() {
+        Assertions.assertEquals("d41d8cd98f00b204e9800998ecf8427e-12", AssetCache.fileName("\"d41d8cd98f00b204e9800998ecf8427e-12\""));
+        Assertions.assertEquals("a_b_c", AssetCache.fileName("a/b.c"));
+    }
+}
@@ -0,0 +1,79 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * Migrates {@code data-migration/sql/V3__tables_and_data.sql}, a thousand single-row INSERTs into
+ * {@code demoapp.cars}, with Flyway's own SQL migration and with {@link BatchedInsertResolver}, into a clean
+ * schema each time. Run with {@code ./gradlew benchmark}. The default database is an in-memory H2, which has no
+ * network round trips to save; {@code -Dbenchmark.jdbcUrl=jdbc:postgresql://...} with
+ * {@code -Dbenchmark.user} and {@code -Dbenchmark.password} runs it against PostgreSQL instead. The schema
+ * {@code demoapp} of that database is cleaned between runs.
+ */
+@Tag("benchmark")
+public class BatchedInsertBenchmarkTest {
+
+    private static final int WARMUP = 3;
+
+    private static final int ITERATIONS = 11;
+
+    private final Benchmark benchmark = new Benchmark(BatchedInsertBenchmarkTest.class);
+
+    @Test
+    public void compareFlywayWithBatchedInserts(@TempDir Path tmp) throws Exception {
+        Path script = Path.of(System.getProperty("benchmark.script",
+                "../data-migration/sql/V3__tables_and_data.sql"));
+        Path archive = ZipResourceProviderTest.zip(tmp.resolve("asset.zip"),
+                Map.of("sql/" + script.getFileName(), Files.readString(script, StandardCharsets.UTF_8)));
+
+        try (var provider = new ZipResourceProvider(archive, StandardCharsets.UTF_8)) {
+            Configuration configuration = new FluentConfiguration()
+                    // the script names demoapp unquoted, which H2 folds to upper case unless told otherwise
+                    .dataSource(System.getProperty("benchmark.jdbcUrl",
+                                    "jdbc:h2:mem:v3;DB_CLOSE_DELAY=-1;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE"),
+                            System.getProperty("benchmark.user", "sa"), System.getProperty("benchmark.password", ""))
+                    .defaultSchema("demoapp")
+                    .cleanDisabled(false)
+                    .resourceProvider(provider);
+            var batchedInserts = new BatchedInsertResolver(provider, configuration);
+            Assertions.assertEquals(1, batchedInserts.size());
+            Flyway flyway = Flyway.configure().configuration(configuration).load();
+            Flyway batchedFlyway = BatchedInsertResolverTest.flyway(configuration, batchedInserts);
+            Benchmark.Timings plain = benchmark.time(WARMUP, ITERATIONS, flyway::clean, () -> {
+                Assertions.assertEquals(1, flyway.migrate().migrationsExecuted);
+                Assertions.assertEquals(1000, cars(configuration));
+            });
+            Benchmark.Timings batched = benchmark.time(WARMUP, ITERATIONS, batchedFlyway::clean, () -> {
+                Assertions.assertEquals(1, batchedFlyway.migrate().migrationsExecuted);
+                Assertions.assertEquals(1000, cars(configuration));
+            });
+            benchmark.report("%s, %,d bytes", script.getFileName(), Files.size(script));
+            benchmark.report("flyway sql migration: p50 %,8.1f ms", plain.millis(50));
+            benchmark.report("batched inserts:      p50 %,8.1f ms", batched.millis(50));
+        }
+    }
+
+    private static int cars(Configuration configuration) throws SQLException {
+        try (Connection connection = configuration.getDataSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT count(*) FROM demoapp.cars")) {
+            result.next();
+            return result.getInt(1);
+        }
+    }
+}
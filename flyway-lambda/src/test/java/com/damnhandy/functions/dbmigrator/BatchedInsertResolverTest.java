@@ -0,0 +1,122 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.MigrationInfo;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.resource.LoadableResource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class BatchedInsertResolverTest {
+
+    static Flyway flyway(Configuration configuration, BatchedInsertResolver batchedInserts) {
+        return Flyway.configure()
+                .configuration(configuration)
+                .resourceProvider(batchedInserts.remainingScripts())
+                .resolvers(batchedInserts)
+                .load();
+    }
+
+    private static Map<String, String> scripts() {
+        Map<String, String> scripts = new LinkedHashMap<>();
+        scripts.put("sql/V1__tables.sql", "CREATE TABLE cars (id INT PRIMARY KEY, make VARCHAR(50));\n"
+                + "CREATE TABLE makes (name VARCHAR(50) PRIMARY KEY);");
+        StringBuilder data = new StringBuilder("-- seed data\n");
+        for (int i = 1; i <= 50; i++) {
+            data.append("INSERT INTO cars(id,make) VALUES (").append(i).append(",'Make ").append(i % 7)
+                    .append("');\n");
+        }
+        data.append("INSERT INTO makes(name) VALUES ('Saab');\nINSERT INTO makes(name) VALUES ('Volvo');\n");
+        scripts.put("sql/V2__data.sql", data.toString());
+        scripts.put("sql/V3__more_data.sql", "INSERT INTO makes(name) VALUES ('${make}');\n"
+                + "INSERT INTO makes(name) VALUES ('Subaru');");
+        return scripts;
+    }
+
+    private static List<String> history(Flyway flyway) {
+        return Arrays.stream(flyway.info().applied())
+                .map(info -> String.join(" ", info.getVersion().toString(), info.getDescription(),
+                        info.getType().name(), String.valueOf(info.getChecksum()), info.getState().name()))
+                .collect(Collectors.toList());
+    }
+
+    private static int count(String database, String table) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:" + database, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT count(*) FROM \"demoapp\"." + table)) {
+            result.next();
+            return result.getInt(1);
+        }
+    }
+
+    @Test
+    public void testRecordsTheSameHistoryAsFlyway(@TempDir Path tmp) throws IOException, SQLException {
+        Path archive = ZipResourceProviderTest.zip(tmp.resolve("asset.zip"), scripts());
+        try (var provider = new ZipResourceProvider(archive, StandardCharsets.UTF_8)) {
+            Configuration plain = Flyway.configure()
+                    .configuration(MigrationManifestTest.configuration("plain", provider))
+                    .placeholders(Map.of("make", "Bentley"));
+            Flyway flyway = Flyway.configure().configuration(plain).load();
+            Assertions.assertEquals(3, flyway.migrate().migrationsExecuted);
+
+            Configuration batched = Flyway.configure()
+                    .configuration(MigrationManifestTest.configuration("batched", provider))
+                    .placeholders(Map.of("make", "Bentley"));
+            var batchedInserts = new BatchedInsertResolver(provider, batched);
+            // V1 has nothing to batch and V3 has a placeholder
+            Assertions.assertEquals(1, batchedInserts.size());
+            Assertions.assertEquals(List.of("sql/V1__tables.sql", "sql/V3__more_data.sql"),
+                    batchedInserts.remainingScripts().getResources("V", new String[] {".sql"}).stream()
+                            .map(LoadableResource::getRelativePath)
+                            .collect(Collectors.toList()));
+            Assertions.assertNull(batchedInserts.remainingScripts().getResource("sql/V2__data.sql"));
+            Assertions.assertEquals(3, flyway(batched, batchedInserts).migrate().migrationsExecuted);
+
+            Assertions.assertEquals(history(flyway), history(flyway(batched, batchedInserts)));
+            for (MigrationInfo info : flyway(batched, batchedInserts).info().applied()) {
+                Assertions.assertEquals("SQL", info.getType().name());
+            }
+            Assertions.assertEquals(50, count("batched", "cars"));
+            Assertions.assertEquals(4, count("batched", "makes"));
+
+            // a schema migrated with or without batching validates either way
+            Assertions.assertTrue(Flyway.configure().configuration(batched).load()
+                    .validateWithResult().validationSuccessful);
+            Assertions.assertTrue(flyway(plain, new BatchedInsertResolver(provider, plain))
+                    .validateWithResult().validationSuccessful);
+        }
+    }
+
+    @Test
+    public void testRollsBackFailedBatch(@TempDir Path tmp) throws IOException, SQLException {
+        Map<String, String> scripts = scripts();
+        scripts.remove("sql/V3__more_data.sql");
+        scripts.put("sql/V2__data.sql", scripts.get("sql/V2__data.sql")
+                + "INSERT INTO makes(name) VALUES ('Saab');\n");
+        Path archive = ZipResourceProviderTest.zip(tmp.resolve("asset.zip"), scripts);
+        try (var provider = new ZipResourceProvider(archive, StandardCharsets.UTF_8)) {
+            Configuration configuration = MigrationManifestTest.configuration("rollback", provider);
+            var batchedInserts = new BatchedInsertResolver(provider, configuration);
+            Assertions.assertThrows(FlywayException.class, () -> flyway(configuration, batchedInserts).migrate());
+            // the batch of cars had succeeded before the batch with the duplicate make failed
+            Assertions.assertEquals(0, count("rollback", "cars"));
+            Assertions.assertEquals(0, count("rollback", "makes"));
+        }
+    }
+}
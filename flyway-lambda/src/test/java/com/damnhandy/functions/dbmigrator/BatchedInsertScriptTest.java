@@ -0,0 +1,113 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.flywaydb.core.api.FlywayException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchedInsertScriptTest {
+
+    private static List<String> statements(String script) throws IOException, SQLException {
+        List<String> statements = new ArrayList<>();
+        BatchedInsertScript.execute(new StringReader(script), "${", statements::add);
+        return statements;
+    }
+
+    @Test
+    public void testFoldsRunsOfSingleRowInserts() throws IOException, SQLException {
+        String script = """
+                -- Create the tables
+                CREATE TABLE if not exists demoapp.cars (id INT NOT NULL, make VARCHAR(100), model TEXT);
+
+                --- load initial data into table
+                INSERT INTO demoapp.cars(id,make,model) VALUES (1,'Hyundai','Genesis; Coupe');
+                INSERT INTO demoapp.cars(id, make, model) VALUES (2,'O''Brien','(Legacy');
+                /* a comment /* nested */ between rows */
+                insert into demoapp.cars (id,make,model) values (3,'Bentley',lower('Continental'));
+                INSERT INTO demoapp.makes(name) VALUES ('Bentley');
+                INSERT INTO demoapp.makes(name) VALUES ('Subaru') ON CONFLICT DO NOTHING;
+                INSERT INTO demoapp.cars(id,make,model) VALUES (4,'Saab','900'),(5,'Saab','9000');
+                INSERT INTO demoapp.cars(id,make,model) VALUES (6,'Volvo','240--not a comment')
+                """;
+        Assertions.assertEquals(List.of(
+                "CREATE TABLE if not exists demoapp.cars (id INT NOT NULL, make VARCHAR(100), model TEXT)",
+                "INSERT INTO demoapp.cars(id,make,model) VALUES (1,'Hyundai','Genesis; Coupe'),\n"
+                        + "(2,'O''Brien','(Legacy'),\n"
+                        + "(3,'Bentley',lower('Continental'))",
+                "INSERT INTO demoapp.makes(name) VALUES ('Bentley')",
+                "INSERT INTO demoapp.makes(name) VALUES ('Subaru') ON CONFLICT DO NOTHING",
+                "INSERT INTO demoapp.cars(id,make,model) VALUES (4,'Saab','900'),(5,'Saab','9000')",
+                "INSERT INTO demoapp.cars(id,make,model) VALUES (6,'Volvo','240--not a comment')"),
+                statements(script));
+
+        var summary = BatchedInsertScript.scan(new StringReader(script), "${");
+        Assertions.assertEquals(new BatchedInsertScript.Summary(8, 6, 5), summary);
+        Assertions.assertTrue(summary.batched());
+    }
+
+    @Test
+    public void testSplitsBatchesAtMaxRows() throws IOException, SQLException {
+        StringBuilder script = new StringBuilder();
+        int rows = BatchedInsertScript.MAX_ROWS * 2 + 1;
+        for (int i = 1; i <= rows; i++) {
+            script.append("INSERT INTO demoapp.cars(id) VALUES (").append(i).append(");\n");
+        }
+        List<String> statements = statements(script.toString());
+        Assertions.assertEquals(3, statements.size());
+        Assertions.assertTrue(statements.get(1).startsWith("INSERT INTO demoapp.cars(id) VALUES ("
+                + (BatchedInsertScript.MAX_ROWS + 1) + "),\n"));
+        Assertions.assertEquals("INSERT INTO demoapp.cars(id) VALUES (" + rows + ")", statements.get(2));
+    }
+
+    @Test
+    public void testLeavesUnsupportedScriptsToFlyway() throws IOException {
+        for (String script : List.of(
+                "INSERT INTO t(a) VALUES (1);\nINSERT INTO t(a) VALUES (2);\n"
+                        + "CREATE FUNCTION f() RETURNS int AS $$ SELECT 1; $$ LANGUAGE sql;",
+                "INSERT INTO t(a) VALUES (E'\\n');\nINSERT INTO t(a) VALUES ('x');",
+                "INSERT INTO t(a) VALUES ('${appuser}');\nINSERT INTO t(a) VALUES ('x');",
+                "INSERT INTO t(a) VALUES (1);\nINSERT INTO t(a) VALUES (2);\nCREATE INDEX CONCURRENTLY i ON t(a);",
+                "COPY t(a) FROM STDIN;\n1\n2\n\\.\n",
+                "INSERT INTO t(a) VALUES ('unterminated);")) {
+            Assertions.assertNull(BatchedInsertScript.scan(new StringReader(script), "${"), script);
+            Assertions.assertThrows(FlywayException.class, () -> statements(script), script);
+        }
+        // placeholders are only a problem when Flyway would replace them
+        Assertions.assertNotNull(BatchedInsertScript.scan(
+                new StringReader("INSERT INTO t(a) VALUES ('${x}');\nINSERT INTO t(a) VALUES ('y');"), null));
+    }
+
+    @Test
+    public void testLeavesAtomicFunctionBodiesToFlyway() throws IOException {
+        String script = "INSERT INTO t(a) VALUES (1);\nINSERT INTO t(a) VALUES (2);\n"
+                + "CREATE FUNCTION f() RETURNS int LANGUAGE sql\nBEGIN ATOMIC\n  INSERT INTO t(a) VALUES (3);\n"
+                + "  SELECT 1;\nEND;";
+        Assertions.assertNull(BatchedInsertScript.scan(new StringReader(script), "${"));
+        Assertions.assertThrows(FlywayException.class, () -> statements(script));
+    }
+
+    @Test
+    public void testLeavesRulesWithSeveralActionsToFlyway() throws IOException {
+        String script = "INSERT INTO t(a) VALUES (1);\nINSERT INTO t(a) VALUES (2);\n"
+                + "CREATE RULE r AS ON INSERT TO v DO INSTEAD (\n  INSERT INTO t(a) VALUES (NEW.a);\n"
+                + "  INSERT INTO u(a) VALUES (NEW.a)\n);";
+        Assertions.assertNull(BatchedInsertScript.scan(new StringReader(script), "${"));
+        Assertions.assertThrows(FlywayException.class, () -> statements(script));
+    }
+
+    @Test
+    public void testNothingToBatch() throws IOException {
+        var summary = BatchedInsertScript.scan(new StringReader("\uFEFFCREATE TABLE t (a int);\n"
+                + "INSERT INTO t(a) VALUES (1);\nALTER TABLE t ADD COLUMN b int;\nINSERT INTO t(a) VALUES (2);"), "${");
+        Assertions.assertEquals(new BatchedInsertScript.Summary(4, 4, 2), summary);
+        Assertions.assertFalse(summary.batched());
+        Assertions.assertTrue(BatchedInsertScript.isSingleRow("(1, ')', \"a)\")"));
+        Assertions.assertFalse(BatchedInsertScript.isSingleRow("(1), (2)"));
+        Assertions.assertFalse(BatchedInsertScript.isSingleRow("(1) RETURNING id"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+
+/**
+ * The harness of the tests tagged {@code benchmark}: runs a task a number of times to warm up, then measures
+ * each of a number of runs, and reports the results through the logger of the benchmark. Run them with
+ * {@code ./gradlew benchmark}.
+ */
+public final class Benchmark {
+
+    private final Logger logger;
+
+    /**
+     * @param benchmark the test class, which names the logger the results are reported to
+     */
+    public Benchmark(Class<?> benchmark) {
+        this.logger = LogManager.getLogger(benchmark);
+    }
+
+    /**
+     * @param warmup the number of runs that are not measured
+     * @param iterations the number of runs that are measured
+     * @return the time each measured run took
+     */
+    public Timings time(int warmup, int iterations, Task task) throws Exception {
+        return time(warmup, iterations, () -> { }, task);
+    }
+
+    /**
+     * @param warmup the number of runs that are not measured
+     * @param iterations the number of runs that are measured
+     * @param setup runs before each run of the task and is not measured
+     * @return the time each measured run took
+     */
+    public Timings time(int warmup, int iterations, Task setup, Task task) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            setup.run();
+            task.run();
+        }
+        long[] nanos = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            setup.run();
+            long start = System.nanoTime();
+            task.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return new Timings(nanos);
+    }
+
+    /**
+     * Reports one line of results, formatted with {@link String#format(String, Object...)}.
+     */
+    public void report(String format, Object... args) {
+        logger.info(String.format(format, args));
+    }
+
+    /**
+     * A run of the benchmark.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * The times of the measured runs, in ascending order.
+     */
+    public static final class Timings {
+
+        private final long[] nanos;
+
+        private Timings(long[] nanos) {
+            this.nanos = nanos;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         */
+        public double millis(double percentile) {
+            return nanos[(int) Math.min(nanos.length - 1, nanos.length * percentile / 100)] / 1_000_000.0;
+        }
+    }
+}
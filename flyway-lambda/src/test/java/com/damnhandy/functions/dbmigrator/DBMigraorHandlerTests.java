@@ -18,7 +18,6 @@ import org.zapodot.junit.db.annotations.EmbeddedDatabaseTest;
 import org.zapodot.junit.db.common.CompatibilityMode;
 import org.zapodot.junit.db.common.Engine;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
-import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.lambda.powertools.cloudformation.Response;
 import software.amazon.lambda.powertools.parameters.SecretsProvider;
 
@@ -29,7 +28,6 @@ import java.sql.ResultSet;
 import java.sql.Statement;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -46,7 +44,7 @@ public class DBMigraorHandlerTests {
     @Mock
     Context mockContext;
     @AWSClient(endpoint = Endpoint.class)
-    private S3Client s3Client;
+    private S3AsyncClient s3Client;
 
     SecretsProvider secretsProvider = mock(SecretsProvider.class);
 
@@ -60,17 +58,13 @@ public class DBMigraorHandlerTests {
            type = CloudFormationCustomResourceEvent.class)
     public void testOnCreate(CloudFormationCustomResourceEvent event,
                              final @EmbeddedDatabase Connection connection) throws Exception {
-        when(secretsProvider.get(anyString(),any())).thenReturn(
-                new DBSecret("postgres",
-                        "localhost",
-                        "postgres",
-                        "dummypassword",
-                        "unitests",
-                        "5436", connection.getMetaData().getURL()));
+        // the handler parses the JSON of the secret itself, see SecretResolver
+        when(secretsProvider.get(anyString())).thenReturn(
+                "{\"engine\":\"postgres\",\"host\":\"localhost\",\"username\":\"postgres\","
+                        + "\"password\":\"dummypassword\",\"dbname\":\"unitests\",\"port\":\"5436\"}");
 
-        DBSecret secret = secretsProvider.get("/foo",DBSecret.class);
         Assertions.assertNotNull(s3Client);
-        DBMigratorHandler handler = new DBMigratorHandler(secretsProvider,s3Client);
+        DBMigratorHandler handler = new DBMigratorHandler(secretsProvider,new S3AssetDownloader(s3Client));
         Response response = handler.handleRequest(event,mockContext);
         assertTrue(response.getStatus() == Response.Status.SUCCESS);
         try(final Statement statement = connection.createStatement();
@@ -84,7 +78,7 @@ public class DBMigraorHandlerTests {
             type = CloudFormationCustomResourceEvent.class)
     public void testOnUpdate(CloudFormationCustomResourceEvent event) throws Exception {
         Assertions.assertNotNull(s3Client);
-        DBMigratorHandler handler = new DBMigratorHandler(secretsProvider,s3Client);
+        DBMigratorHandler handler = new DBMigratorHandler(secretsProvider,new S3AssetDownloader(s3Client));
         Response response = handler.handleRequest(event,mockContext);
         assertTrue(response.getStatus() == Response.Status.SUCCESS);
     }
@@ -0,0 +1,227 @@
+package com.damnhandy.functions.dbmigrator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for S3 that answers path-style GetObject and HeadObject requests, including ranged
+ * and conditional ones. Object content is generated from the position, so large objects take no memory. Responses can be
+ * delayed and throttled per connection to come closer to S3 than an unthrottled loopback.
+ */
+public class LocalS3Server implements AutoCloseable {
+
+    private static final int CHUNK = 64 * 1024;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+
+    private final AtomicInteger versions = new AtomicInteger();
+
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    private final List<String> ranges = new ArrayList<>();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    private volatile Duration latency = Duration.ZERO;
+
+    private volatile long bytesPerSecond;
+
+    public LocalS3Server() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public URI endpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Stores an object of the given size, with a new ETag.
+     */
+    public void putObject(String bucket, String key, long size) {
+        String eTag = "\"" + Long.toHexString(size) + "0" + versions.incrementAndGet() + "\"";
+        objects.put("/" + bucket + "/" + key, new StoredObject(size, eTag));
+    }
+
+    /**
+     * @param latency the delay before every response
+     * @param bytesPerSecond the rate each response body is sent at, 0 for unthrottled
+     */
+    public void throttle(Duration latency, long bytesPerSecond) {
+        this.latency = latency;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @return the Range headers of the GET requests so far, null for requests without one
+     */
+    public synchronized List<String> ranges() {
+        return new ArrayList<>(ranges);
+    }
+
+    /**
+     * @return the most GET requests served at the same time
+     */
+    public int maxConcurrentRequests() {
+        return maxActive.get();
+    }
+
+    /**
+     * @return the number of conditional GET requests answered with 304 Not Modified
+     */
+    public int notModifiedResponses() {
+        return notModified.get();
+    }
+
+    public synchronized void reset() {
+        ranges.clear();
+        maxActive.set(0);
+        notModified.set(0);
+    }
+
+    public static byte byteAt(long position) {
+        return (byte) (position * 31 + (position >>> 11));
+    }
+
+    /**
+     * Asserts that a downloaded file has the content of an object of the given size.
+     */
+    public static void assertContent(Path file, long size) throws IOException {
+        if (Files.size(file) != size) {
+            throw new AssertionError("expected " + size + " bytes, was " + Files.size(file));
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[CHUNK];
+            long position = 0;
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                for (int i = 0; i < read; i++, position++) {
+                    if (buffer[i] != byteAt(position)) {
+                        throw new AssertionError("content differs at byte " + position);
+                    }
+                }
+            }
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            StoredObject object = objects.get(exchange.getRequestURI().getPath());
+            if (object == null) {
+                byte[] error = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>NoSuchKey</Code>"
+                        + "<Message>The specified key does not exist.</Message></Error>")
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/xml");
+                exchange.sendResponseHeaders(404, error.length);
+                exchange.getResponseBody().write(error);
+                return;
+            }
+            var headers = exchange.getResponseHeaders();
+            headers.set("ETag", object.eTag());
+            if (object.eTag().equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            long size = object.size();
+            long first = 0;
+            long last = size - 1;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null && range.startsWith("bytes=")) {
+                String[] bounds = range.substring("bytes=".length()).split("-", 2);
+                first = Long.parseLong(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    last = Math.min(Long.parseLong(bounds[1]), size - 1);
+                }
+            }
+            long length = last - first + 1;
+            headers.set("Content-Type", "application/zip");
+            headers.set("Accept-Ranges", "bytes");
+            headers.set("Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT");
+            if (range != null) {
+                headers.set("Content-Range", "bytes " + first + "-" + last + "/" + size);
+            }
+            int status = range != null ? 206 : 200;
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                headers.set("Content-Length", Long.toString(length));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            synchronized (this) {
+                ranges.add(range);
+            }
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                send(exchange, status, first, length);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, long first, long length) throws IOException {
+        sleep(latency.toNanos());
+        exchange.sendResponseHeaders(status, length);
+        OutputStream out = exchange.getResponseBody();
+        byte[] buffer = new byte[CHUNK];
+        long start = System.nanoTime();
+        for (long sent = 0; sent < length; ) {
+            int count = (int) Math.min(buffer.length, length - sent);
+            for (int i = 0; i < count; i++) {
+                buffer[i] = byteAt(first + sent + i);
+            }
+            out.write(buffer, 0, count);
+            sent += count;
+            long rate = bytesPerSecond;
+            if (rate > 0) {
+                sleep(sent * 1_000_000_000L / rate - (System.nanoTime() - start));
+            }
+        }
+    }
+
+    private static void sleep(long nanos) throws IOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private record StoredObject(long size, String eTag) {
+    }
+}
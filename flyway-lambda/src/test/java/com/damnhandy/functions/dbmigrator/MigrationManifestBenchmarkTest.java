@@ -0,0 +1,69 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Times an invocation for an asset whose migrations are all applied already, against a schema history of 500
+ * scripts: the info, validate and migrate passes the function used to run, the manifest of a new asset checked
+ * with one query, and the check alone with the manifest of a warm function. The database is an in-memory H2,
+ * so every round trip a pass saves against RDS is not part of these numbers. Run with
+ * {@code ./gradlew benchmark}, {@code -Dbenchmark.scripts=<count>} changes the number of scripts.
+ */
+@Tag("benchmark")
+public class MigrationManifestBenchmarkTest {
+
+    private static final int WARMUP = 3;
+
+    private static final int ITERATIONS = 11;
+
+    private final Benchmark benchmark = new Benchmark(MigrationManifestBenchmarkTest.class);
+
+    @Test
+    public void compareThreePassesWithManifest(@TempDir Path tmp) throws Exception {
+        int count = Integer.getInteger("benchmark.scripts", 500);
+        Map<String, String> scripts = new LinkedHashMap<>();
+        for (int i = 1; i <= count; i++) {
+            scripts.put(String.format("sql/V%d__change_%d.sql", i, i), script(i));
+        }
+        Path archive = ZipResourceProviderTest.zip(tmp.resolve("asset.zip"), scripts);
+        try (var provider = new ZipResourceProvider(archive, StandardCharsets.UTF_8)) {
+            Configuration configuration = MigrationManifestTest.configuration("benchmark", provider);
+            Assertions.assertEquals(count, Flyway.configure().configuration(configuration).load()
+                    .migrate().migrationsExecuted);
+
+            Benchmark.Timings threePasses = benchmark.time(WARMUP, ITERATIONS, () -> {
+                var flyway = Flyway.configure().configuration(configuration).load();
+                flyway.info();
+                flyway.validate();
+                Assertions.assertEquals(0, flyway.migrate().migrationsExecuted);
+            });
+            Benchmark.Timings newAsset = benchmark.time(WARMUP, ITERATIONS, () ->
+                    Assertions.assertTrue(MigrationManifest.of(provider, configuration).isAppliedTo(configuration)));
+            MigrationManifest cached = MigrationManifest.of(provider, configuration);
+            Benchmark.Timings warm = benchmark.time(WARMUP, ITERATIONS, () ->
+                    Assertions.assertTrue(cached.isAppliedTo(configuration)));
+            benchmark.report("%,d applied scripts", count);
+            benchmark.report("info, validate, migrate:    p50 %,8.1f ms", threePasses.millis(50));
+            benchmark.report("manifest and one query:     p50 %,8.1f ms", newAsset.millis(50));
+            benchmark.report("cached manifest, one query: p50 %,8.1f ms", warm.millis(50));
+        }
+    }
+
+    private static String script(int version) {
+        return "CREATE TABLE change_" + version + " (\n"
+                + "    id INT PRIMARY KEY,\n"
+                + "    description VARCHAR(200)\n"
+                + ");\n"
+                + "INSERT INTO change_" + version + " VALUES (1, 'change " + version + "');\n";
+    }
+}
@@ -0,0 +1,106 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationInfo;
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.ResourceProvider;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MigrationManifestTest {
+
+    static Configuration configuration(String database, ResourceProvider scripts) {
+        return new FluentConfiguration()
+                .dataSource("jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1", "sa", "")
+                .defaultSchema("demoapp")
+                .baselineOnMigrate(true)
+                .ignoreMigrationPatterns("*:pending")
+                .resourceProvider(scripts);
+    }
+
+    private static Map<String, String> scripts() {
+        Map<String, String> scripts = new LinkedHashMap<>();
+        scripts.put("sql/V1__initial.sql", "\uFEFFCREATE TABLE makes (name VARCHAR(50));\r\n");
+        scripts.put("sql/V1_1__more_makes.sql",
+                "INSERT INTO makes VALUES ('Volvo');\r\n\r\nINSERT INTO makes VALUES ('Saab');");
+        scripts.put("sql/V2__cars.sql", "CREATE TABLE cars (\n  make VARCHAR(50),\n  model VARCHAR(50)\n);\n");
+        return scripts;
+    }
+
+    @Test
+    public void testChecksumsMatchFlyway(@TempDir Path tmp) throws IOException {
+        Path archive = ZipResourceProviderTest.zip(tmp.resolve("asset.zip"), scripts());
+        try (var provider = new ZipResourceProvider(archive, StandardCharsets.UTF_8)) {
+            Configuration configuration = configuration("checksums", provider);
+            MigrationManifest manifest = MigrationManifest.of(provider, configuration);
+            MigrationInfo[] resolved = Flyway.configure().configuration(configuration).load().info().all();
+            Assertions.assertEquals(3, manifest.migrations().size());
+            Assertions.assertEquals(resolved.length, manifest.migrations().size());
+            for (MigrationInfo info : resolved) {
+                MigrationManifest.Migration migration = manifest.migrations().get(info.getVersion());
+                Assertions.assertNotNull(migration, info.getVersion().toString());
+                Assertions.assertEquals(info.getDescription(), migration.description());
+                Assertions.assertEquals(info.getChecksum(), migration.checksum(), info.getScript());
+            }
+            Assertions.assertEquals("more makes",
+                    manifest.migrations().get(MigrationVersion.fromVersion("1.1")).description());
+        }
+    }
+
+    @Test
+    public void testIsAppliedTo(@TempDir Path tmp) throws IOException {
+        Map<String, String> scripts = scripts();
+        Path archive = ZipResourceProviderTest.zip(tmp.resolve("asset.zip"), scripts);
+        try (var provider = new ZipResourceProvider(archive, StandardCharsets.UTF_8)) {
+            Configuration configuration = configuration("applied", provider);
+            MigrationManifest manifest = MigrationManifest.of(provider, configuration);
+            // there is no schema history yet
+            Assertions.assertFalse(manifest.isAppliedTo(configuration));
+            Assertions.assertEquals(3, Flyway.configure().configuration(configuration).load()
+                    .migrate().migrationsExecuted);
+            Assertions.assertTrue(manifest.isAppliedTo(configuration));
+        }
+
+        // a new version is pending
+        scripts.put("sql/V3__colors.sql", "ALTER TABLE cars ADD COLUMN color VARCHAR(20);");
+        Assertions.assertFalse(isApplied(tmp.resolve("pending.zip"), scripts, "applied"));
+        scripts.remove("sql/V3__colors.sql");
+
+        // an applied script has changed
+        scripts.put("sql/V2__cars.sql", "CREATE TABLE cars (make VARCHAR(50), model VARCHAR(50));");
+        Assertions.assertFalse(isApplied(tmp.resolve("changed.zip"), scripts, "applied"));
+        scripts.putAll(scripts());
+
+        // an applied script was removed from the asset
+        scripts.remove("sql/V1_1__more_makes.sql");
+        Assertions.assertFalse(isApplied(tmp.resolve("missing.zip"), scripts, "applied"));
+        scripts.putAll(scripts());
+
+        // Flyway runs repeatable migrations and callbacks on every migrate
+        scripts.put("sql/R__views.sql", "CREATE OR REPLACE VIEW car_makes AS SELECT make FROM cars;");
+        Assertions.assertFalse(isApplied(tmp.resolve("repeatable.zip"), scripts, "applied"));
+        scripts.remove("sql/R__views.sql");
+        scripts.put("sql/afterMigrate.sql", "SELECT 1;");
+        Assertions.assertFalse(isApplied(tmp.resolve("callback.zip"), scripts, "applied"));
+        scripts.remove("sql/afterMigrate.sql");
+
+        Assertions.assertTrue(isApplied(tmp.resolve("unchanged.zip"), scripts, "applied"));
+    }
+
+    private static boolean isApplied(Path archive, Map<String, String> scripts, String database) throws IOException {
+        try (var provider = new ZipResourceProvider(ZipResourceProviderTest.zip(archive, scripts),
+                StandardCharsets.UTF_8)) {
+            Configuration configuration = configuration(database, provider);
+            return MigrationManifest.of(provider, configuration).isAppliedTo(configuration);
+        }
+    }
+}
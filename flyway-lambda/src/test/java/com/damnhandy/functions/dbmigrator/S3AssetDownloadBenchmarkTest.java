@@ -0,0 +1,100 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Downloads a large bundle from {@link LocalS3Server}, throttled to a per-connection rate and a first byte
+ * latency in the range of S3, the way getSqlAsset used to, into a byte array, and with
+ * {@link S3AssetDownloader} at several concurrencies. Reports the wall time and the peak heap of each.
+ * Run with {@code ./gradlew benchmark}, {@code -Dbenchmark.assetSize=<bytes>} changes the bundle size.
+ */
+@Tag("benchmark")
+public class S3AssetDownloadBenchmarkTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    private final Benchmark benchmark = new Benchmark(S3AssetDownloadBenchmarkTest.class);
+
+    @Test
+    public void compareDownloads(@TempDir Path tmp) throws IOException {
+        long size = Long.getLong("benchmark.assetSize", 256 * MIB);
+        try (var s3 = new LocalS3Server()) {
+            s3.putObject("assets", "bundle.zip", size);
+            s3.throttle(Duration.ofMillis(30), 40 * MIB);
+            Path file = tmp.resolve("bundle.zip");
+
+            var client = S3Client.builder()
+                    .httpClient(UrlConnectionHttpClient.create())
+                    .endpointOverride(s3.endpoint())
+                    .forcePathStyle(true)
+                    .region(Region.US_EAST_1)
+                    .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                    .build();
+            Result bytes = measure(() -> {
+                byte[] data = client.getObjectAsBytes(get -> get.bucket("assets").key("bundle.zip")).asByteArray();
+                Files.write(file, data);
+            });
+            client.close();
+            LocalS3Server.assertContent(file, size);
+            report("getObjectAsBytes", size, bytes);
+
+            Result parallel = null;
+            for (int concurrency : new int[] {1, 4, 16}) {
+                try (var downloader = new S3AssetDownloader(S3AssetDownloaderTest.client(s3,
+                        S3AssetDownloader.DEFAULT_PART_SIZE, concurrency))) {
+                    var s3Uri = S3AssetDownloaderTest.s3Uri(downloader, "assets", "bundle.zip");
+                    parallel = measure(() -> downloader.download(s3Uri, file));
+                }
+                LocalS3Server.assertContent(file, size);
+                report("transfer manager x" + concurrency, size, parallel);
+            }
+            Assertions.assertTrue(parallel.heapBytes < bytes.heapBytes);
+        }
+    }
+
+    private interface Download {
+        void run() throws IOException;
+    }
+
+    private static Result measure(Download download) throws IOException {
+        System.gc();
+        long baseline = heapUsed();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+        long start = System.nanoTime();
+        download.run();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long peak = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+        return new Result(millis, Math.max(0, peak - baseline));
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private void report(String name, long size, Result result) {
+        benchmark.report("%-22s %,6d MiB in %,7d ms, %8.1f MiB/s, peak heap +%,6d MiB", name, size / MIB,
+                result.millis, size / (double) MIB / Math.max(1, result.millis) * 1000, result.heapBytes / MIB);
+    }
+
+    private record Result(long millis, long heapBytes) {
+    }
+}
@@ -0,0 +1,118 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Uri;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+public class S3AssetDownloaderTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    private static LocalS3Server s3;
+
+    @BeforeAll
+    static void startS3() throws IOException {
+        s3 = new LocalS3Server();
+    }
+
+    @AfterAll
+    static void stopS3() {
+        s3.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        s3.reset();
+    }
+
+    static S3AssetDownloader downloader(long partSize, int maxConcurrency) {
+        return new S3AssetDownloader(client(s3, partSize, maxConcurrency));
+    }
+
+    static S3AsyncClient client(LocalS3Server s3, long partSize, int maxConcurrency) {
+        return S3AssetDownloader.crtClientBuilder(partSize, maxConcurrency)
+                .endpointOverride(s3.endpoint())
+                .forcePathStyle(true)
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                .build();
+    }
+
+    static S3Uri s3Uri(S3AssetDownloader downloader, String bucket, String key) {
+        return downloader.utilities().parseUri(URI.create("s3://" + bucket + "/" + key));
+    }
+
+    @Test
+    public void testDownloadsInParallelRangedParts(@TempDir Path tmp) throws IOException {
+        long size = 40 * MIB + 12345;
+        s3.putObject("assets", "bundle.zip", size);
+        try (var downloader = downloader(5 * MIB, 4)) {
+            Path file = downloader.download(s3Uri(downloader, "assets", "bundle.zip"), tmp.resolve("bundle.zip"));
+            LocalS3Server.assertContent(file, size);
+        }
+        Assertions.assertTrue(s3.ranges().size() >= 8, "ranged GETs: " + s3.ranges());
+        Assertions.assertTrue(s3.ranges().stream().allMatch(range -> range != null && range.startsWith("bytes=")));
+        Assertions.assertTrue(s3.maxConcurrentRequests() > 1);
+        Assertions.assertTrue(s3.maxConcurrentRequests() <= 4);
+    }
+
+    @Test
+    public void testReplacesExistingFile(@TempDir Path tmp) throws IOException {
+        s3.putObject("assets", "nested/small.zip", 1000);
+        Path file = tmp.resolve("small.zip");
+        Files.write(file, new byte[5000]);
+        try (var downloader = downloader(5 * MIB, 4)) {
+            downloader.download(s3Uri(downloader, "assets", "nested/small.zip"), file);
+        }
+        LocalS3Server.assertContent(file, 1000);
+    }
+
+    @Test
+    public void testConditionalDownload(@TempDir Path tmp) throws IOException {
+        s3.putObject("assets", "bundle.zip", 1000);
+        try (var downloader = downloader(5 * MIB, 4)) {
+            var uri = s3Uri(downloader, "assets", "bundle.zip");
+            String eTag = downloader.download(uri, tmp.resolve("first.zip"), null).orElseThrow();
+            Assertions.assertEquals(Optional.empty(), downloader.download(uri, tmp.resolve("second.zip"), eTag));
+            Assertions.assertEquals(1, s3.notModifiedResponses());
+            Assertions.assertTrue(downloader.download(uri, tmp.resolve("third.zip"), "\"other\"").isPresent());
+        }
+    }
+
+    @Test
+    public void testMissingObject(@TempDir Path tmp) {
+        try (var downloader = downloader(5 * MIB, 4)) {
+            Assertions.assertThrows(IOException.class,
+                    () -> downloader.download(s3Uri(downloader, "assets", "missing.zip"), tmp.resolve("missing.zip")));
+        }
+    }
+
+    @Test
+    public void testSettingsFromEnvironment() {
+        Map<String, String> environment = Map.of(S3AssetDownloader.PART_SIZE_ENV, " 16777216 ",
+                S3AssetDownloader.MAX_CONCURRENCY_ENV, "");
+        Assertions.assertEquals(16 * MIB,
+                S3AssetDownloader.setting(environment, S3AssetDownloader.PART_SIZE_ENV, 1));
+        Assertions.assertEquals(S3AssetDownloader.DEFAULT_MAX_CONCURRENCY,
+                S3AssetDownloader.setting(environment, S3AssetDownloader.MAX_CONCURRENCY_ENV,
+                        S3AssetDownloader.DEFAULT_MAX_CONCURRENCY));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> S3AssetDownloader.setting(Map.of(S3AssetDownloader.PART_SIZE_ENV, "0"),
+                        S3AssetDownloader.PART_SIZE_ENV, 1));
+    }
+}
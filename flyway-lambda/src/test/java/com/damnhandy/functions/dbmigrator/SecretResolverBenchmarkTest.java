@@ -0,0 +1,66 @@
+package com.damnhandy.functions.dbmigrator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves a master secret and the secrets of four placeholders from {@link SlowSecretStore}: one after the
+ * other, the way the function used to, with {@link SecretResolver} in a cold execution environment, and again
+ * from its cache in a warm one. Run with {@code ./gradlew benchmark},
+ * {@code -Dbenchmark.secretLatencyMillis=<millis>} changes the latency of a Secrets Manager request and
+ * {@code -Dbenchmark.secrets=<count>} the number of secrets.
+ */
+@Tag("benchmark")
+public class SecretResolverBenchmarkTest {
+
+    private static final int WARMUP = 1;
+
+    private static final int ITERATIONS = 5;
+
+    private final Benchmark benchmark = new Benchmark(SecretResolverBenchmarkTest.class);
+
+    @Test
+    public void compareSequentialWithConcurrent() throws Exception {
+        Duration latency = Duration.ofMillis(Long.getLong("benchmark.secretLatencyMillis", 100));
+        int count = Integer.getInteger("benchmark.secrets", 5);
+        SlowSecretStore store = new SlowSecretStore(latency);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            names.add("secret-" + i);
+            store.put("secret-" + i, "password-" + i);
+        }
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        Benchmark.Timings sequential = benchmark.time(WARMUP, ITERATIONS, () -> {
+            for (String name : names) {
+                objectMapper.readValue(store.apply(name), DBSecret.class);
+            }
+        });
+        // a new resolver has nothing cached, like the first invocation of an execution environment
+        Benchmark.Timings cold = benchmark.time(WARMUP, ITERATIONS, () -> {
+            try (var resolver = resolver(store)) {
+                Assertions.assertEquals(count, resolver.resolve(names).size());
+            }
+        });
+        Benchmark.Timings warm;
+        try (var resolver = resolver(store)) {
+            warm = benchmark.time(WARMUP, ITERATIONS, () ->
+                    Assertions.assertEquals(count, resolver.resolve(names).size()));
+        }
+        benchmark.report("%d secrets, %d ms per request", count, latency.toMillis());
+        benchmark.report("one after the other: p50 %,8.1f ms", sequential.millis(50));
+        benchmark.report("concurrent, cold:    p50 %,8.1f ms", cold.millis(50));
+        benchmark.report("cached, warm:        p50 %,8.1f ms", warm.millis(50));
+    }
+
+    private static SecretResolver resolver(SlowSecretStore store) {
+        return new SecretResolver(store, Duration.ofMinutes(1), Duration.ofSeconds(30),
+                SecretResolver.DEFAULT_CONCURRENCY);
+    }
+}
@@ -0,0 +1,95 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+public class SecretResolverTest {
+
+    private static final Duration LATENCY = Duration.ofMillis(300);
+
+    private static final List<String> NAMES = List.of("secret-0", "secret-1", "secret-2", "secret-3", "secret-4",
+            "secret-5");
+
+    private static SlowSecretStore store() {
+        SlowSecretStore store = new SlowSecretStore(LATENCY);
+        for (int i = 0; i < 6; i++) {
+            store.put("secret-" + i, "password-" + i);
+        }
+        return store;
+    }
+
+    @Test
+    public void testResolvesConcurrently() {
+        SlowSecretStore store = store();
+        try (var resolver = new SecretResolver(store, Duration.ofMinutes(1), Duration.ofSeconds(5), 8)) {
+            long start = System.nanoTime();
+            Map<String, DBSecret> secrets = resolver.resolve(NAMES);
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            Assertions.assertEquals(NAMES, List.copyOf(secrets.keySet()));
+            Assertions.assertEquals("password-3", secrets.get("secret-3").getPassword());
+            Assertions.assertEquals(6, store.maxInFlight());
+            // one after the other this takes six times the latency
+            Assertions.assertTrue(elapsed < 3 * LATENCY.toMillis(), elapsed + " ms");
+        }
+    }
+
+    @Test
+    public void testBoundsConcurrency() {
+        SlowSecretStore store = store();
+        try (var resolver = new SecretResolver(store, Duration.ofMinutes(1), Duration.ofSeconds(5), 2)) {
+            Assertions.assertEquals(6, resolver.resolve(NAMES).size());
+            Assertions.assertEquals(2, store.maxInFlight());
+        }
+    }
+
+    @Test
+    public void testCachesForTtl() throws InterruptedException {
+        SlowSecretStore store = store();
+        try (var resolver = new SecretResolver(store, Duration.ofSeconds(1), Duration.ofSeconds(5), 8)) {
+            resolver.resolve(List.of("secret-0", "secret-1", "secret-0"));
+            long start = System.nanoTime();
+            Map<String, DBSecret> secrets = resolver.resolve(List.of("secret-1", "secret-0"));
+            Assertions.assertTrue(System.nanoTime() - start < LATENCY.toNanos());
+            Assertions.assertEquals("password-1", secrets.get("secret-1").getPassword());
+            Assertions.assertEquals(1, store.requests("secret-0"));
+            Assertions.assertEquals(1, store.requests("secret-1"));
+
+            Thread.sleep(1100);
+            resolver.resolve(List.of("secret-0"));
+            Assertions.assertEquals(2, store.requests("secret-0"));
+        }
+    }
+
+    @Test
+    public void testTimesOutSlowSecret() {
+        SlowSecretStore store = store().latency("secret-5", Duration.ofSeconds(3));
+        try (var resolver = new SecretResolver(store, Duration.ofMinutes(1), Duration.ofMillis(500), 8)) {
+            long start = System.nanoTime();
+            IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+                    () -> resolver.resolve(NAMES));
+            Assertions.assertTrue(e.getMessage().contains("secret-5"), e.getMessage());
+            Assertions.assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+            // the secrets that did resolve are cached for the next invocation
+            Assertions.assertEquals(5, resolver.resolve(NAMES.subList(0, 5)).size());
+            Assertions.assertEquals(1, store.requests("secret-0"));
+        }
+    }
+
+    @Test
+    public void testDoesNotCacheFailures() {
+        SlowSecretStore store = store();
+        try (var resolver = new SecretResolver(store, Duration.ofMinutes(1), Duration.ofSeconds(5), 8)) {
+            IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+                    () -> resolver.resolve(List.of("secret-0", "missing")));
+            Assertions.assertTrue(e.getMessage().contains("missing"), e.getMessage());
+            store.put("missing", "found");
+            Assertions.assertEquals("found", resolver.resolve(List.of("missing")).get("missing").getPassword());
+            Assertions.assertEquals(2, store.requests("missing"));
+            Assertions.assertEquals(1, store.requests("secret-0"));
+        }
+    }
+}
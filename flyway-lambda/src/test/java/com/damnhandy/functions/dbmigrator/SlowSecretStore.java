@@ -0,0 +1,85 @@
+package com.damnhandy.functions.dbmigrator;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A local stand-in for Secrets Manager that answers every request after an artificial latency, so tests can
+ * show what resolving secrets one after the other costs. It returns database secrets as JSON by name, and
+ * counts the requests per secret and the most requests it had in flight at once.
+ */
+public class SlowSecretStore implements Function<String, String> {
+
+    private final Duration latency;
+
+    private final Map<String, String> secrets = new ConcurrentHashMap<>();
+
+    private final Map<String, Duration> latencies = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    /**
+     * @param latency how long every request takes
+     */
+    public SlowSecretStore(Duration latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Stores a database secret with the password.
+     */
+    public SlowSecretStore put(String name, String password) {
+        secrets.put(name, "{\"engine\":\"postgres\",\"host\":\"localhost\",\"username\":\"" + name
+                + "\",\"password\":\"" + password + "\",\"dbname\":\"demoapp\",\"port\":\"5432\"}");
+        return this;
+    }
+
+    /**
+     * Makes the requests for one secret take longer, or shorter, than the others.
+     */
+    public SlowSecretStore latency(String name, Duration latency) {
+        latencies.put(name, latency);
+        return this;
+    }
+
+    @Override
+    public String apply(String name) {
+        requests.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(latencies.getOrDefault(name, latency).toMillis());
+            String secret = secrets.get(name);
+            if (secret == null) {
+                throw new IllegalArgumentException("Secrets Manager can't find the specified secret: " + name);
+            }
+            return secret;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of requests for the secret
+     */
+    public int requests(String name) {
+        AtomicInteger count = requests.get(name);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * @return the most requests that were in flight at the same time
+     */
+    public int maxInFlight() {
+        return maxInFlight.get();
+    }
+}
@@ -0,0 +1,137 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.flywaydb.core.api.resource.LoadableResource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compares extracting a bundle with thousands of scripts to /tmp and scanning the extracted tree, the way
+ * the function used to hand the scripts to Flyway, with serving them from the archive through
+ * {@link ZipResourceProvider}. Both read every script once, as Flyway does to compute the checksums.
+ * Run with {@code ./gradlew benchmark}, {@code -Dbenchmark.scripts=<count>} changes the number of scripts.
+ */
+@Tag("benchmark")
+public class ZipResourceProviderBenchmarkTest {
+
+    private static final int WARMUP = 1;
+
+    private static final int ITERATIONS = 7;
+
+    private final Benchmark benchmark = new Benchmark(ZipResourceProviderBenchmarkTest.class);
+
+    @Test
+    public void compareExtractWithZipProvider(@TempDir Path tmp) throws Exception {
+        int scripts = Integer.getInteger("benchmark.scripts", 5000);
+        Path archive = tmp.resolve("asset.zip");
+        try (OutputStream out = Files.newOutputStream(archive); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 1; i <= scripts; i++) {
+                zip.putNextEntry(new ZipEntry(String.format("sql/%03d/V%d__change_%d.sql", i / 100, i, i)));
+                zip.write(script(i).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        Path extracted = Files.createTempDirectory(tmp, "extracted");
+        extract(archive, extracted);
+        Assertions.assertEquals(scripts, scripts(extracted).size());
+        long chars = read(extracted);
+        long extractedBytes;
+        try (Stream<Path> tree = Files.walk(extracted)) {
+            extractedBytes = tree.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+
+        Benchmark.Timings extract = benchmark.time(WARMUP, ITERATIONS, () -> {
+            Path destination = Files.createTempDirectory(tmp, "extracted");
+            extract(archive, destination);
+            Assertions.assertEquals(chars, read(destination));
+        });
+        Benchmark.Timings provider = benchmark.time(WARMUP, ITERATIONS, () -> {
+            long served = 0;
+            try (var resources = new ZipResourceProvider(archive, StandardCharsets.UTF_8)) {
+                for (LoadableResource resource : resources.getResources("V", new String[] {".sql"})) {
+                    served += drain(resource.read());
+                }
+            }
+            Assertions.assertEquals(chars, served);
+        });
+        benchmark.report("%,d scripts, archive %,d bytes", scripts, Files.size(archive));
+        benchmark.report("extract then scan: p50 %,8.1f ms, %,d bytes written to /tmp", extract.millis(50),
+                extractedBytes);
+        benchmark.report("zip provider:      p50 %,8.1f ms, nothing written", provider.millis(50));
+    }
+
+    private static String script(int version) {
+        StringBuilder sql = new StringBuilder("-- change ").append(version).append('\n');
+        for (int row = 0; row < 10; row++) {
+            sql.append("INSERT INTO demoapp.cars (make, model, model_year, color, description) VALUES ('Make")
+                    .append(version).append("', 'Model").append(row)
+                    .append("', 2003, 'Green', 'A car inserted by a migration script.');\n");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Extracts the archive the way the function did before it read the scripts from the archive.
+     */
+    private static void extract(Path archive, Path destination) throws IOException {
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                Path file = destination.resolve(entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(file);
+                    continue;
+                }
+                Files.createDirectories(file.getParent());
+                try (InputStream in = zip.getInputStream(entry)) {
+                    Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static List<Path> scripts(Path directory) throws IOException {
+        try (Stream<Path> tree = Files.walk(directory)) {
+            return tree.filter(path -> path.getFileName().toString().startsWith("V"))
+                    .filter(path -> path.getFileName().toString().endsWith(".sql"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long read(Path directory) throws IOException {
+        long chars = 0;
+        for (Path file : scripts(directory)) {
+            chars += drain(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+        }
+        return chars;
+    }
+
+    private static long drain(Reader reader) throws IOException {
+        long chars = 0;
+        try (BufferedReader lines = new BufferedReader(reader)) {
+            char[] buffer = new char[8192];
+            for (int read; (read = lines.read(buffer)) != -1; ) {
+                chars += read;
+            }
+        }
+        return chars;
+    }
+}
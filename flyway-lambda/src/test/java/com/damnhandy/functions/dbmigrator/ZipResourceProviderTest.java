@@ -0,0 +1,85 @@
+package com.damnhandy.functions.dbmigrator;
+
+import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.resource.LoadableResource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ZipResourceProviderTest {
+
+    static Path zip(Path file, Map<String, String> entries) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                if (entry.getValue() != null) {
+                    zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                }
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    static String content(LoadableResource resource) throws IOException {
+        try (Reader reader = resource.read(); BufferedReader lines = new BufferedReader(reader)) {
+            return lines.lines().collect(Collectors.joining("\n"));
+        }
+    }
+
+    @Test
+    public void testServesScriptsFromArchive(@TempDir Path tmp) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("V2__tables.sql", "CREATE TABLE cars (id int);");
+        entries.put("nested/", null);
+        entries.put("nested/V1__initial.sql", "CREATE SCHEMA demoapp;");
+        entries.put("nested/R__views.sql", "CREATE VIEW v AS SELECT 1;");
+        entries.put("README.md", "not a migration");
+        entries.put("V3__data.SQL.txt", "not a migration either");
+        Path archive = zip(tmp.resolve("asset.zip"), entries);
+        try (var provider = new ZipResourceProvider(archive, StandardCharsets.UTF_8)) {
+            Assertions.assertEquals(5, provider.size());
+
+            List<String> versioned = provider.getResources("V", new String[] {".sql"}).stream()
+                    .map(LoadableResource::getRelativePath)
+                    .collect(Collectors.toList());
+            Assertions.assertEquals(List.of("V2__tables.sql", "nested/V1__initial.sql"), versioned);
+            Assertions.assertEquals(1, provider.getResources("R", new String[] {".sql"}).size());
+
+            LoadableResource resource = provider.getResource("nested/V1__initial.sql");
+            Assertions.assertEquals("V1__initial.sql", resource.getFilename());
+            Assertions.assertTrue(resource.getAbsolutePathOnDisk().endsWith("asset.zip!/nested/V1__initial.sql"));
+            Assertions.assertEquals("CREATE SCHEMA demoapp;", content(resource));
+            // every read is a new stream
+            Assertions.assertEquals("CREATE SCHEMA demoapp;", content(resource));
+            Assertions.assertNull(provider.getResource("V1__initial.sql"));
+        }
+    }
+
+    @Test
+    public void testRejectsZipSlipEntries(@TempDir Path tmp) throws IOException {
+        for (String name : List.of("../V1__evil.sql", "sql/../../V1__evil.sql", "/tmp/V1__evil.sql",
+                "sql\\..\\..\\V1__evil.sql")) {
+            Path archive = zip(tmp.resolve("evil.zip"), Map.of("V1__ok.sql", "SELECT 1;", name, "SELECT 2;"));
+            Assertions.assertThrows(FlywayException.class, () -> ZipResourceProvider.checkEntryName(name), name);
+            Assertions.assertThrows(FlywayException.class,
+                    () -> new ZipResourceProvider(archive, StandardCharsets.UTF_8), name);
+            Assertions.assertFalse(Files.exists(tmp.resolve("V1__evil.sql")));
+        }
+        Assertions.assertEquals("sql/./V1__ok.sql", ZipResourceProvider.checkEntryName("sql/./V1__ok.sql"));
+    }
+}
@@ -0,0 +1,64 @@
+#!/usr/bin/env bash
+#
+# Compares platform-thread and virtual-thread request execution under increasing concurrency.
+# Starts the built jar once per mode against the database of the given profile and drives it with
+# hey (https://github.com/rakyll/hey). The virtual-thread run needs a Java 21+ `java` on the path.
+#
+# In both modes database work goes through the DbBulkhead, which admits demoapp.db-bulkhead.threads
+# queries at a time and sheds the rest with a 503 once its queue is full. What differs is the
+# thread that waits: a platform worker and bulkhead thread, or a virtual thread parked on the
+# bulkhead's semaphore. Throughput is therefore bounded by the bulkhead and the connection pool in
+# both modes; compare latency and the shed column, the 503s answered by the bulkhead.
+#
+#   ./gradlew bootJar && bin/compare-thread-modes.sh local
+#
+set -euo pipefail
+
+PROFILE=${1:-local}
+JAR=${JAR:-build/libs/springboot-app-1.0.0.jar}
+DURATION=${DURATION:-30s}
+CONCURRENCY=${CONCURRENCY:-"50 200 1000 4000"}
+# DB bound endpoints that bypass the caches
+URLS=${URLS:-"http://localhost:8080/cars?limit=50&after=500 http://localhost:8080/cars/filter?make=Ford&limit=20"}
+OUT=${OUT:-build/thread-modes}
+
+mkdir -p "${OUT}"
+
+shed() {
+  curl --silent http://localhost:8081/actuator/prometheus \
+    | awk '/^db_bulkhead_(rejected|timed_out)_total/ {sum+=$2} END {printf "%d", sum}'
+}
+command -v hey >/dev/null || { echo "hey is required: go install github.com/rakyll/hey@latest"; exit 1; }
+
+run_mode() {
+  local mode=$1 profiles=$2
+  java -jar "${JAR}" --spring.profiles.active="${profiles}" > "${OUT}/${mode}.log" 2>&1 &
+  local pid=$!
+  trap "kill ${pid} 2>/dev/null || true" EXIT
+  until curl --fail --silent http://localhost:8081/actuator/health/readiness | grep -q UP; do
+    kill -0 "${pid}" 2>/dev/null || { echo "${mode} failed to start, see ${OUT}/${mode}.log"; exit 1; }
+    sleep 1
+  done
+  for url in ${URLS}; do
+    # warm up the JIT and the connection pool
+    hey -z 10s -c 50 "${url}" > /dev/null
+    for c in ${CONCURRENCY}; do
+      local report="${OUT}/${mode}-c${c}-$(echo "${url}" | md5sum | cut -c1-8).txt"
+      local before
+      before=$(shed)
+      hey -z "${DURATION}" -c "${c}" "${url}" > "${report}"
+      printf "%-8s c=%-5s %-55s %10s req/s  p50 %8ss  p99 %8ss  shed %6s  errors %s\n" "${mode}" "${c}" "${url#http://localhost:8080}" \
+        "$(awk '/Requests\/sec/ {print $2}' "${report}")" \
+        "$(awk '/50% in/ {print $3}' "${report}")" \
+        "$(awk '/99% in/ {print $3}' "${report}")" \
+        "$(( $(shed) - before ))" \
+        "$(awk '/Error distribution/ {found=1; next} found && /\[/ {sum+=substr($1,2)} END {print sum+0}' "${report}")"
+    done
+  done
+  kill "${pid}"
+  wait "${pid}" 2>/dev/null || true
+  trap - EXIT
+}
+
+run_mode platform "${PROFILE}"
+run_mode virtual "${PROFILE},virtual-threads"
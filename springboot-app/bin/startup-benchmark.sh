@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+#
+# Measures time-to-ready, from launching the JVM until the readiness probe reports UP, of the Boot
+# jar and of the fast-startup build (Spring AOT and an AppCDS archive) against the database of the
+# given profile. Each mode is started RUNS times and the median and best times are reported.
+#
+#   ./gradlew -Paot startupBenchmark -PbenchmarkProfile=local
+#   ./gradlew -Paot bootJar cdsArchive && bin/startup-benchmark.sh local
+#
+set -euo pipefail
+
+PROFILE=${1:-local}
+JAR=${JAR:-build/libs/springboot-app-1.0.0.jar}
+CDS_DIR=${CDS_DIR:-build/cds}
+RUNS=${RUNS:-10}
+OUT=${OUT:-build/startup}
+
+mkdir -p "${OUT}"
+[ -f "${CDS_DIR}/jvm.args" ] || { echo "${CDS_DIR}/jvm.args is missing, run ./gradlew -Paot cdsArchive"; exit 1; }
+
+now_ms() {
+  echo $(( $(date +%s%N) / 1000000 ))
+}
+
+# prints the milliseconds until the application is ready
+start_once() {
+  local mode=$1; shift
+  local log="${OUT}/${mode}.log"
+  local start
+  start=$(now_ms)
+  "$@" --spring.profiles.active="${PROFILE}" > "${log}" 2>&1 &
+  local pid=$!
+  trap "kill ${pid} 2>/dev/null || true" EXIT
+  until curl --fail --silent http://localhost:8081/actuator/health/readiness | grep -q UP; do
+    kill -0 "${pid}" 2>/dev/null || { echo "${mode} failed to start, see ${log}" >&2; exit 1; }
+    sleep 0.05
+  done
+  echo $(( $(now_ms) - start ))
+  kill "${pid}"
+  wait "${pid}" 2>/dev/null || true
+  trap - EXIT
+}
+
+run_mode() {
+  local mode=$1; shift
+  local times=()
+  for _ in $(seq "${RUNS}"); do
+    times+=("$(start_once "${mode}" "$@")")
+  done
+  local sorted
+  sorted=$(printf "%s\n" "${times[@]}" | sort -n)
+  printf "%-6s ready p50 %6s ms  best %6s ms  (%s runs, %s)\n" "${mode}" \
+    "$(echo "${sorted}" | sed -n "$(( (RUNS + 1) / 2 ))p")" "$(echo "${sorted}" | head -1)" \
+    "${RUNS}" "$(grep -o 'Started AwscloudApplication in [0-9.]* seconds' "${OUT}/${mode}.log")"
+}
+
+run_mode jar java -jar "${JAR}"
+run_mode fast java @"${CDS_DIR}/jvm.args" -jar "${CDS_DIR}/springboot-app.jar"
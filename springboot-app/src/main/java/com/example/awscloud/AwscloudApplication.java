@@ -5,6 +5,8 @@ import org.apache.logging.log4j.Logger;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.env.Environment;
 
@@ -13,8 +15,23 @@ public class AwscloudApplication {
 
   private static final Logger log = LogManager.getLogger(AwscloudApplication.class);
 
+  /**
+   * Set by the cds-training profile: the JVM exits as soon as the context is refreshed, before the
+   * runners and the ready listeners that need a database. A listener rather than a profile bean,
+   * so it also works in an AOT-processed build, where bean conditions are fixed at build time.
+   */
+  static final String EXIT_AFTER_REFRESH = "demoapp.startup.exit-after-refresh";
+
   public static void main(String[] args) {
-    SpringApplication.run(AwscloudApplication.class, args);
+    SpringApplication application = new SpringApplication(AwscloudApplication.class);
+    application.addListeners((ApplicationListener<ApplicationStartedEvent>) event -> {
+      Environment environment = event.getApplicationContext().getEnvironment();
+      if (environment.getProperty(EXIT_AFTER_REFRESH, Boolean.class, false)) {
+        log.info("{} is set, exiting after startup", EXIT_AFTER_REFRESH);
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+      }
+    });
+    application.run(args);
   }
 
   @Bean
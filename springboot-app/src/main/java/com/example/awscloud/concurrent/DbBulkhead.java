@@ -0,0 +1,370 @@
+package com.example.awscloud.concurrent;
+
+import com.example.awscloud.metrics.EndpointContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.ServiceUnavailableException;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ *     A bulkhead for work that needs a database connection. Requests are suspended and their work
+ *     runs on a small fixed pool, sized like the connection pool, with a bounded queue in front of
+ *     it. When Postgres slows down the queue fills up and further requests are rejected at once
+ *     with {@code 503 Service Unavailable} and a {@code Retry-After} header instead of tying up
+ *     server threads; the actuator endpoints are served on their own port and stay responsive.
+ * </p>
+ * <p>
+ *     Every request has a deadline. A request whose work has not completed when the deadline
+ *     passes is answered with a {@code 503}, and its work is removed from the queue if it has not
+ *     started yet, so an overloaded instance does not spend connections on answers nobody waits
+ *     for any more.
+ * </p>
+ * <p>
+ *     With {@code demoapp.db-bulkhead.virtual-threads}, set by the {@code virtual-threads} profile,
+ *     there is no pool: every task gets a virtual thread of its own and the same limits are
+ *     enforced with semaphores, so the request keeps running on virtual threads and only the number
+ *     of concurrent database tasks is bounded.
+ * </p>
+ * <p>
+ *     A streamed body, a {@link Response} with a {@link StreamingOutput}, reads its rows while the
+ *     client receives them, which takes as long as the client does. It is therefore not written on
+ *     the bulkhead: the task that built the response hands it to one of
+ *     {@code demoapp.db-bulkhead.stream-threads} stream writers and frees its slot, and the
+ *     deadline no longer applies once the body is being written. While all writers are busy the
+ *     task waits for one until the deadline of the request, so a listing whose response is already
+ *     built is only shed once it could not have been answered in time anyway. The stream takes its
+ *     own connection, so the threads and the stream threads together should not exceed the
+ *     connection pool.
+ * </p>
+ * <p>
+ *     Bulk imports stream the upload into the database while the client sends it, which takes as
+ *     long as the client does, so they do not run on the bulkhead either but on the request thread,
+ *     each with a connection of its own. At most {@code demoapp.db-bulkhead.import-threads} run at
+ *     a time, and further imports are answered with a {@code 503} at once, before any of the body
+ *     is read. These connections come on top of the threads and the stream threads.
+ * </p>
+ */
+@Component
+public class DbBulkhead {
+
+  private final ThreadPoolExecutor executor;
+
+  private final ExecutorService taskExecutor;
+
+  private final Semaphore admitted;
+
+  private final Semaphore permits;
+
+  private final ExecutorService streamExecutor;
+
+  private final Semaphore streams;
+
+  private final Semaphore imports;
+
+  private final Duration deadline;
+
+  private final Duration retryAfter;
+
+  private final Counter rejected;
+
+  private final Counter timedOut;
+
+  /**
+   *
+   * @param threads the number of concurrent database tasks, at most the size of the connection pool
+   * @param queueCapacity the number of tasks that may wait for a thread before requests are shed
+   * @param deadline the time a request may take from being queued to being answered
+   * @param retryAfter the delay suggested to a client whose request was shed
+   * @param streamThreads the number of streamed bodies written at the same time
+   * @param importThreads the number of imports run at the same time
+   * @param virtualThreads whether tasks run on virtual threads instead of a pool
+   * @param meterRegistry
+   */
+  @Autowired
+  public DbBulkhead(@Value("${demoapp.db-bulkhead.threads:16}") int threads,
+                    @Value("${demoapp.db-bulkhead.queue-capacity:200}") int queueCapacity,
+                    @Value("${demoapp.db-bulkhead.deadline:5s}") Duration deadline,
+                    @Value("${demoapp.db-bulkhead.retry-after:1s}") Duration retryAfter,
+                    @Value("${demoapp.db-bulkhead.stream-threads:4}") int streamThreads,
+                    @Value("${demoapp.db-bulkhead.import-threads:2}") int importThreads,
+                    @Value("${demoapp.db-bulkhead.virtual-threads:false}") boolean virtualThreads,
+                    MeterRegistry meterRegistry) {
+    this(threads, queueCapacity, deadline, retryAfter, streamThreads, importThreads,
+        virtualThreads ? VirtualThreads.newPerTaskExecutor() : null, meterRegistry);
+  }
+
+  /**
+   * @param taskExecutor runs every task on a thread of its own, limited by semaphores, or
+   *                     {@code null} to run the tasks on a fixed pool
+   */
+  DbBulkhead(int threads, int queueCapacity, Duration deadline, Duration retryAfter,
+             int streamThreads, int importThreads, ExecutorService taskExecutor,
+             MeterRegistry meterRegistry) {
+    this.deadline = deadline;
+    this.retryAfter = retryAfter;
+    this.streams = new Semaphore(streamThreads);
+    this.imports = new Semaphore(importThreads);
+    this.rejected = meterRegistry.counter("db.bulkhead.rejected");
+    this.timedOut = meterRegistry.counter("db.bulkhead.timed.out");
+    if (taskExecutor == null) {
+      this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("db-bulkhead-"),
+          new ThreadPoolExecutor.AbortPolicy());
+      this.taskExecutor = null;
+      this.admitted = null;
+      this.permits = null;
+      this.streamExecutor = Executors.newCachedThreadPool(new CustomizableThreadFactory("db-stream-"));
+      new ExecutorServiceMetrics(executor, "db.bulkhead", Tags.empty()).bindTo(meterRegistry);
+    } else {
+      this.executor = null;
+      this.taskExecutor = taskExecutor;
+      this.admitted = new Semaphore(threads + queueCapacity);
+      this.permits = new Semaphore(threads);
+      this.streamExecutor = taskExecutor;
+      Gauge.builder("db.bulkhead.active", permits, p -> threads - p.availablePermits())
+          .register(meterRegistry);
+      Gauge.builder("db.bulkhead.queued", this,
+              b -> Math.max(0, threads + queueCapacity - b.admitted.availablePermits()
+                  - (threads - b.permits.availablePermits())))
+          .register(meterRegistry);
+    }
+    Gauge.builder("db.bulkhead.streams.active", streams, s -> streamThreads - s.availablePermits())
+        .register(meterRegistry);
+    Gauge.builder("db.bulkhead.imports.active", imports, s -> importThreads - s.availablePermits())
+        .register(meterRegistry);
+  }
+
+  /**
+   * <p>
+   *     Runs the work on the bulkhead and resumes the suspended request with its result, or with
+   *     the exception it throws. Rejected and timed out requests are resumed with a {@code 503}.
+   *     The {@link EndpointContext} of the caller is carried over to the bulkhead thread.
+   * </p>
+   * @param asyncResponse the suspended request
+   * @param work produces the response entity, or a {@link Response}
+   */
+  public void execute(AsyncResponse asyncResponse, Callable<?> work) {
+    String endpoint = EndpointContext.get();
+    long expires = System.nanoTime() + deadline.toNanos();
+    if (taskExecutor != null) {
+      executeWithPermit(asyncResponse, () -> run(asyncResponse, work, endpoint, expires));
+      return;
+    }
+    FutureTask<Void> task =
+        new FutureTask<>(() -> run(asyncResponse, work, endpoint, expires), null);
+    asyncResponse.setTimeoutHandler(response -> {
+      task.cancel(false);
+      executor.remove(task);
+      timedOut.increment();
+      response.resume(unavailable());
+    });
+    asyncResponse.setTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      rejected.increment();
+      asyncResponse.resume(unavailable());
+    }
+  }
+
+  /**
+   * <p>
+   *     Runs an import on the calling thread, or rejects it with a {@code 503} if the maximum
+   *     number of imports is already running.
+   * </p>
+   * @param work the import
+   * @return the result of the import
+   * @throws ServiceUnavailableException if the import was rejected
+   */
+  public <T> T runImport(Supplier<T> work) {
+    if (!imports.tryAcquire()) {
+      rejected.increment();
+      throw new ServiceUnavailableException(unavailable());
+    }
+    try {
+      return work.get();
+    } finally {
+      imports.release();
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+    } else {
+      taskExecutor.shutdown();
+    }
+    streamExecutor.shutdown();
+  }
+
+  private void executeWithPermit(AsyncResponse asyncResponse, Runnable work) {
+    if (!admitted.tryAcquire()) {
+      rejected.increment();
+      asyncResponse.resume(unavailable());
+      return;
+    }
+    PermitTask task = new PermitTask(work);
+    asyncResponse.setTimeoutHandler(response -> {
+      task.abandon();
+      timedOut.increment();
+      response.resume(unavailable());
+    });
+    asyncResponse.setTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+    try {
+      taskExecutor.execute(task);
+    } catch (RejectedExecutionException e) {
+      admitted.release();
+      rejected.increment();
+      asyncResponse.resume(unavailable());
+    }
+  }
+
+  private void run(AsyncResponse asyncResponse, Callable<?> work, String endpoint,
+                   long expires) {
+    EndpointContext.set(endpoint);
+    try {
+      Object result = work.call();
+      if (result instanceof Response response && response.getEntity() instanceof StreamingOutput) {
+        stream(asyncResponse, response, endpoint, expires);
+      } else {
+        asyncResponse.resume(result);
+      }
+    } catch (Throwable e) {
+      asyncResponse.resume(e);
+    } finally {
+      EndpointContext.clear();
+    }
+  }
+
+  private void stream(AsyncResponse asyncResponse, Response response, String endpoint,
+                      long expires) {
+    if (!awaitStream(expires)) {
+      // Usually the timeout handler has answered the request already and this resume is ignored
+      if (asyncResponse.resume(unavailable())) {
+        timedOut.increment();
+      }
+      return;
+    }
+    try {
+      streamExecutor.execute(() -> {
+        EndpointContext.set(endpoint);
+        try {
+          asyncResponse.resume(response);
+        } finally {
+          EndpointContext.clear();
+          streams.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      streams.release();
+      rejected.increment();
+      asyncResponse.resume(unavailable());
+    }
+  }
+
+  private boolean awaitStream(long expires) {
+    try {
+      return streams.tryAcquire(Math.max(0, expires - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private Response unavailable() {
+    return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, Math.max(1, retryAfter.toSeconds()))
+        .build();
+  }
+
+  /**
+   * A task admitted to the bulkhead that waits on its own thread for one of the permits. A task
+   * abandoned at its deadline while it still waits is interrupted, so it frees its place in the
+   * queue right away and never runs.
+   */
+  private final class PermitTask implements Runnable {
+
+    private static final int WAITING = 0;
+
+    private static final int RUNNING = 1;
+
+    private static final int ABANDONED = 2;
+
+    private final Runnable work;
+
+    private final AtomicInteger state = new AtomicInteger(WAITING);
+
+    private Thread waiter;
+
+    private PermitTask(Runnable work) {
+      this.work = work;
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        waiter = Thread.currentThread();
+      }
+      try {
+        if (state.get() == WAITING) {
+          permits.acquire();
+          try {
+            if (state.compareAndSet(WAITING, RUNNING)) {
+              work.run();
+            }
+          } finally {
+            permits.release();
+          }
+        }
+      } catch (InterruptedException e) {
+        // abandoned while waiting for a permit
+      } finally {
+        synchronized (this) {
+          waiter = null;
+        }
+        // an interrupt of abandon() may have arrived after the permit was taken
+        Thread.interrupted();
+        // an abandoned task has already given back its place in the queue
+        if (state.get() == RUNNING || state.compareAndSet(WAITING, ABANDONED)) {
+          admitted.release();
+        }
+      }
+    }
+
+    private void abandon() {
+      synchronized (this) {
+        if (state.compareAndSet(WAITING, ABANDONED)) {
+          admitted.release();
+          if (waiter != null) {
+            waiter.interrupt();
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package com.example.awscloud.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>
+ *     Access to virtual threads for the {@code virtual-threads} profile. The application is still
+ *     compiled for Java 17, so the executor is looked up reflectively and fails on a runtime older
+ *     than 21.
+ * </p>
+ */
+public final class VirtualThreads {
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * @return an executor that starts a new virtual thread for every task
+   * @throws IllegalStateException on a runtime without virtual threads
+   */
+  public static ExecutorService newPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("the virtual-threads profile requires Java 21 or later, "
+          + "this is Java " + Runtime.version(), e);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.example.awscloud.config;
+
+import com.example.awscloud.repository.CarRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.support.NullValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * <p>
+ *     Spring Configuration for the Caffeine backed caches. The cache statistics are recorded so
+ *     that Spring Boot binds them to Micrometer as the {@code cache.*} meters.
+ * </p>
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+  @Bean
+  CacheManagerCustomizer<CaffeineCacheManager> carsCacheCustomizer(
+      @Value("${demoapp.cache.cars.maximum-size:10000}") long maximumSize,
+      @Value("${demoapp.cache.cars.ttl:60s}") Duration ttl,
+      @Value("${demoapp.cache.cars.negative-ttl:5s}") Duration negativeTtl) {
+    return cacheManager -> cacheManager.registerCustomCache(CarRepository.CARS_CACHE,
+        Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfter(new NegativeAwareExpiry(ttl, negativeTtl))
+            .recordStats()
+            .build());
+  }
+
+  /**
+   * <p>
+   *     Expires cached misses, which Spring stores as {@link NullValue}, sooner than cached cars so
+   *     that a newly created car becomes visible quickly.
+   * </p>
+   */
+  static class NegativeAwareExpiry implements Expiry<Object, Object> {
+
+    private final long ttlNanos;
+
+    private final long negativeTtlNanos;
+
+    NegativeAwareExpiry(Duration ttl, Duration negativeTtl) {
+      this.ttlNanos = ttl.toNanos();
+      this.negativeTtlNanos = negativeTtl.toNanos();
+    }
+
+    @Override
+    public long expireAfterCreate(Object key, Object value, long currentTime) {
+      return value instanceof NullValue ? negativeTtlNanos : ttlNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, value, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
@@ -1,6 +1,10 @@
 package com.example.awscloud.config;
 
+import com.example.awscloud.metrics.EndpointFilter;
+import com.example.awscloud.metrics.SerializationMetrics;
 import com.example.awscloud.resources.CarResource;
+import com.example.awscloud.resources.SmileProvider;
+import com.example.awscloud.resources.VaryAcceptFilter;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,5 +22,9 @@ public class JerseyConfig extends ResourceConfig {
 
   public JerseyConfig() {
     register(CarResource.class);
+    register(EndpointFilter.class);
+    register(SerializationMetrics.class);
+    register(SmileProvider.class);
+    register(VaryAcceptFilter.class);
   }
 }
@@ -0,0 +1,44 @@
+package com.example.awscloud.config;
+
+import com.example.awscloud.metrics.EndpointContext;
+import com.example.awscloud.metrics.HibernateMetrics;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import java.util.function.Function;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * <p>
+ *     Spring Configuration for the application meters. Methods annotated with
+ *     {@link io.micrometer.core.annotation.Timed} are timed with the endpoint of the current request
+ *     as an additional tag, and Hibernate reports its statements and entity loads per endpoint.
+ * </p>
+ */
+@Configuration
+public class MetricsConfig {
+
+  @Bean
+  TimedAspect timedAspect(MeterRegistry meterRegistry) {
+    // Typed, as a bare lambda would match the Predicate<ProceedingJoinPoint> constructor as well
+    Function<ProceedingJoinPoint, Iterable<Tag>> tags = joinPoint -> Tags.of(
+        "class", joinPoint.getStaticPart().getSignature().getDeclaringType().getSimpleName(),
+        "method", joinPoint.getStaticPart().getSignature().getName(),
+        EndpointContext.TAG, EndpointContext.get());
+    return new TimedAspect(meterRegistry, tags);
+  }
+
+  @Bean
+  HibernatePropertiesCustomizer hibernateMetricsCustomizer(MeterRegistry meterRegistry) {
+    HibernateMetrics hibernateMetrics = new HibernateMetrics(meterRegistry);
+    return properties -> {
+      properties.put(AvailableSettings.STATEMENT_INSPECTOR, hibernateMetrics);
+      properties.put(AvailableSettings.INTERCEPTOR, hibernateMetrics);
+    };
+  }
+}
@@ -0,0 +1,133 @@
+package com.example.awscloud.config;
+
+import com.example.awscloud.datasource.ReplicaLagMonitor;
+import com.example.awscloud.datasource.ReplicaRoutingDataSource;
+import com.example.awscloud.datasource.ReplicaRoutingDataSource.Role;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.config.MeterFilter;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * <p>
+ *     Spring Configuration for a read replica, active when {@code demoapp.datasource.replica.url}
+ *     is set. The application data source then routes read-only transactions to a second Hikari
+ *     pool on the replica and everything else to the primary pool, see
+ *     {@link ReplicaRoutingDataSource}.
+ * </p>
+ * <p>
+ *     Both pools take their settings from {@code spring.datasource}; the replica pool overrides
+ *     them with {@code demoapp.datasource.replica.*} and {@code demoapp.datasource.replica.hikari.*}.
+ *     The pools are named after their role, and the {@code hikaricp.*} meters of both carry a
+ *     {@code role} tag. Only the routing data source is a bean, so the health endpoint keeps
+ *     checking the primary alone and a replica outage, which reads survive by falling back, does
+ *     not take the instance out of service.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "demoapp.datasource.replica", name = "url")
+public class ReplicaRoutingConfig implements DisposableBean {
+
+  private static final String HIKARI_METER_PREFIX = "hikaricp.";
+
+  // Neither pool is a bean of its own, so they are closed here
+  private final List<HikariDataSource> pools = new CopyOnWriteArrayList<>();
+
+  @Bean
+  DataSource dataSource(DataSourceProperties properties, ReplicaLagMonitor replicaLagMonitor,
+                        Environment environment, MeterRegistry meterRegistry) {
+    HikariDataSource primary = primaryPool(properties, environment, meterRegistry);
+    return new LazyConnectionDataSourceProxy(
+        new ReplicaRoutingDataSource(primary, replicaLagMonitor.getReplica(), replicaLagMonitor));
+  }
+
+  @Bean
+  ReplicaLagMonitor replicaLagMonitor(DataSourceProperties properties, Environment environment,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${demoapp.datasource.replica.max-lag:5s}") Duration maxLag) {
+    String lagQuery = environment.getProperty("demoapp.datasource.replica.lag-query",
+        ReplicaLagMonitor.POSTGRES_LAG_QUERY);
+    ReplicaLagMonitor monitor = new ReplicaLagMonitor(
+        replicaPool(properties, environment, meterRegistry), lagQuery, maxLag, meterRegistry);
+    // Decide before the first request whether the replica can be used
+    monitor.check();
+    return monitor;
+  }
+
+  /**
+   * <p>
+   *     Adds the {@code role} tag to the meters of the two pools, whose pool names are their roles.
+   * </p>
+   */
+  @Bean
+  MeterFilter poolRoleMeterFilter() {
+    return new MeterFilter() {
+      @Override
+      public Meter.Id map(Meter.Id id) {
+        String pool = id.getTag("pool");
+        if (!id.getName().startsWith(HIKARI_METER_PREFIX) || pool == null
+            || Arrays.stream(Role.values()).noneMatch(role -> role.tag().equals(pool))) {
+          return id;
+        }
+        return id.withTag(Tag.of("role", pool));
+      }
+    };
+  }
+
+  @Override
+  public void destroy() {
+    pools.forEach(HikariDataSource::close);
+  }
+
+  private HikariDataSource primaryPool(DataSourceProperties properties,
+                                       Environment environment, MeterRegistry meterRegistry) {
+    HikariDataSource pool = new HikariDataSource();
+    pool.setJdbcUrl(properties.determineUrl());
+    pool.setUsername(properties.determineUsername());
+    pool.setPassword(properties.determinePassword());
+    pool.setDriverClassName(properties.determineDriverClassName());
+    Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+    return named(pool, Role.PRIMARY, meterRegistry);
+  }
+
+  private HikariDataSource replicaPool(DataSourceProperties properties,
+                                       Environment environment, MeterRegistry meterRegistry) {
+    Binder binder = Binder.get(environment);
+    HikariDataSource pool = new HikariDataSource();
+    pool.setJdbcUrl(environment.getRequiredProperty("demoapp.datasource.replica.url"));
+    pool.setUsername(environment.getProperty("demoapp.datasource.replica.username",
+        properties.determineUsername()));
+    pool.setPassword(environment.getProperty("demoapp.datasource.replica.password",
+        properties.determinePassword()));
+    pool.setDriverClassName(properties.determineDriverClassName());
+    binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+    binder.bind("demoapp.datasource.replica.hikari", Bindable.ofInstance(pool));
+    // Nothing but reads ever runs on the replica
+    pool.setReadOnly(true);
+    return named(pool, Role.REPLICA, meterRegistry);
+  }
+
+  private HikariDataSource named(HikariDataSource pool, Role role, MeterRegistry meterRegistry) {
+    pool.setPoolName(role.tag());
+    pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+    pools.add(pool);
+    return pool;
+  }
+}
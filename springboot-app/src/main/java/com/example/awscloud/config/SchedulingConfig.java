@@ -0,0 +1,51 @@
+package com.example.awscloud.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.TaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * <p>
+ *     Enables {@code @Scheduled} methods, such as the lag check of
+ *     {@link com.example.awscloud.datasource.ReplicaLagMonitor}, and provides the scheduler the
+ *     change polling of {@link com.example.awscloud.repository.CarChangeMonitor} runs on.
+ * </p>
+ * <p>
+ *     The listeners of a change, the search index refresh and the snapshot rebuild, run on the
+ *     thread of the poll and can take seconds on a large table. They get a scheduler of their own,
+ *     so they neither delay the lag check nor each other's initial load.
+ * </p>
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+  /**
+   * The name of the scheduler that polls for changes of the cars table and runs their listeners.
+   */
+  public static final String CARS_CHANGE_SCHEDULER = "carsChangeScheduler";
+
+  /**
+   * Spring Boot's scheduler for the {@code @Scheduled} methods, configured by
+   * {@code spring.task.scheduling.*}. It is declared here because Boot backs off from its own once
+   * the context holds another {@link org.springframework.scheduling.TaskScheduler}.
+   */
+  @Bean
+  @Primary
+  ThreadPoolTaskScheduler taskScheduler(TaskSchedulerBuilder builder) {
+    return builder.build();
+  }
+
+  @Bean(CARS_CHANGE_SCHEDULER)
+  ThreadPoolTaskScheduler carsChangeScheduler(
+      @Value("${demoapp.cars.change-threads:2}") int threads) {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize(threads);
+    scheduler.setThreadNamePrefix("cars-change-");
+    return scheduler;
+  }
+}
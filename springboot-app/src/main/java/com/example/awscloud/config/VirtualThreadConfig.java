@@ -0,0 +1,77 @@
+package com.example.awscloud.config;
+
+import com.example.awscloud.concurrent.VirtualThreads;
+import io.undertow.servlet.api.DeploymentInfo;
+import java.util.concurrent.ExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.web.embedded.undertow.UndertowDeploymentInfoCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * <p>
+ *     Spring Configuration for the {@code virtual-threads} profile. Undertow hands every request
+ *     from its IO threads to a virtual-thread-per-task executor instead of its worker pool, so a
+ *     request blocked on JDBC parks a virtual thread rather than holding one of a fixed number of
+ *     platform threads. Jersey resources run on that thread as well, and the profile switches the
+ *     {@link com.example.awscloud.concurrent.DbBulkhead} to virtual threads, so database work does
+ *     not move back onto a platform pool.
+ * </p>
+ * <p>
+ *     The application is still compiled for Java 17, so the executor is looked up reflectively and
+ *     the profile fails at startup on a runtime older than 21. On 21 to 23 a virtual thread that
+ *     blocks inside a {@code synchronized} block pins its carrier; the cache load of
+ *     {@code CarRepository#findCarById} runs inside such a block in Caffeine, which is why the
+ *     container image for this mode uses a 25 runtime, where monitors no longer pin (JEP 491).
+ * </p>
+ */
+@Configuration
+@Profile("virtual-threads")
+public class VirtualThreadConfig {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+  private static final int MONITORS_UNPINNED_FEATURE = 24;
+
+  /**
+   * The executor is created by the customizer rather than exposed as a bean of its own: an
+   * {@link java.util.concurrent.Executor} bean would make Spring Boot back off from its
+   * {@code applicationTaskExecutor}, which {@code @Async} methods and Spring MVC's async support
+   * fall back on.
+   */
+  @Bean
+  UndertowDeploymentInfoCustomizer virtualThreadDeploymentInfoCustomizer() {
+    if (Runtime.version().feature() < MONITORS_UNPINNED_FEATURE) {
+      LOGGER.warn("Java {} pins carrier threads in synchronized blocks; run the virtual-threads "
+          + "profile on Java {} or later, or with -Djdk.tracePinnedThreads=short to find them",
+          Runtime.version().feature(), MONITORS_UNPINNED_FEATURE);
+    }
+    return new VirtualThreadExecutorCustomizer(VirtualThreads.newPerTaskExecutor());
+  }
+
+  /**
+   * Hands the requests to the virtual-thread executor and shuts it down with the context.
+   */
+  private static final class VirtualThreadExecutorCustomizer
+      implements UndertowDeploymentInfoCustomizer, DisposableBean {
+
+    private final ExecutorService executor;
+
+    private VirtualThreadExecutorCustomizer(ExecutorService executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void customize(DeploymentInfo deploymentInfo) {
+      deploymentInfo.setExecutor(executor).setAsyncExecutor(executor);
+    }
+
+    @Override
+    public void destroy() {
+      executor.shutdown();
+    }
+  }
+}
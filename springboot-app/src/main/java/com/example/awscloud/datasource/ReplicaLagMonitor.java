@@ -0,0 +1,118 @@
+package com.example.awscloud.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * <p>
+ *     Checks on a schedule how far the replica lags behind the primary and decides whether
+ *     {@link ReplicaRoutingDataSource} may send read-only transactions to it. The replica is
+ *     available when the lag query succeeds and reports a lag of at most
+ *     {@code demoapp.datasource.replica.max-lag}.
+ * </p>
+ * <p>
+ *     The default lag query is for Postgres streaming replicas: the time since the last replayed
+ *     transaction, or zero when the replica has replayed everything it received, so an idle
+ *     primary does not make the replica look stale. The lag and the availability are published as
+ *     the {@code db.replica.lag} and {@code db.replica.available} gauges.
+ * </p>
+ */
+public class ReplicaLagMonitor {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+  public static final String POSTGRES_LAG_QUERY = "SELECT CASE"
+      + " WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn()"
+      + " THEN 0"
+      + " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp())"
+      + " END";
+
+  private final DataSource replica;
+
+  private final String lagQuery;
+
+  private final Duration maxLag;
+
+  private volatile boolean available;
+
+  private volatile double lagSeconds = Double.NaN;
+
+  /**
+   *
+   * @param replica the replica pool
+   * @param lagQuery a query returning the replication lag in seconds as its only value
+   * @param maxLag the largest lag at which the replica is still used
+   * @param meterRegistry
+   */
+  public ReplicaLagMonitor(DataSource replica, String lagQuery, Duration maxLag,
+                           MeterRegistry meterRegistry) {
+    this.replica = replica;
+    this.lagQuery = lagQuery;
+    this.maxLag = maxLag;
+    Gauge.builder("db.replica.lag", this, monitor -> monitor.lagSeconds)
+        .description("Replication lag of the read replica at the last check")
+        .baseUnit("seconds")
+        .register(meterRegistry);
+    Gauge.builder("db.replica.available", this, monitor -> monitor.available ? 1 : 0)
+        .description("Whether read-only transactions are routed to the read replica")
+        .register(meterRegistry);
+  }
+
+  /**
+   * @return the replica pool
+   */
+  public DataSource getReplica() {
+    return replica;
+  }
+
+  /**
+   * @return whether read-only transactions may run on the replica
+   */
+  public boolean isAvailable() {
+    return available;
+  }
+
+  /**
+   * <p>
+   *     Stops routing to the replica until the next successful check, for example because a
+   *     connection to it could not be obtained.
+   * </p>
+   */
+  public void markUnavailable(Exception cause) {
+    if (available) {
+      LOGGER.warn("replica unavailable, reads fall back to the primary: {}", cause.getMessage());
+    }
+    available = false;
+  }
+
+  @Scheduled(fixedDelayString = "${demoapp.datasource.replica.lag-check-interval:PT5S}")
+  public void check() {
+    double lag;
+    try (Connection connection = replica.getConnection();
+         Statement statement = connection.createStatement();
+         ResultSet rows = statement.executeQuery(lagQuery)) {
+      rows.next();
+      lag = rows.getDouble(1);
+    } catch (SQLException e) {
+      lagSeconds = Double.NaN;
+      markUnavailable(e);
+      return;
+    }
+    lagSeconds = lag;
+    boolean current = lag * 1000 <= maxLag.toMillis();
+    if (current != available) {
+      LOGGER.info("replica {} at a lag of {} s", current ? "available" : "unavailable, lagging",
+          lag);
+    }
+    available = current;
+  }
+}
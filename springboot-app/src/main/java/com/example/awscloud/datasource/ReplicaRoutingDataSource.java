@@ -0,0 +1,91 @@
+package com.example.awscloud.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * <p>
+ *     Sends the connections of read-only transactions to the replica pool and every other
+ *     connection, including those taken outside of a transaction, to the primary pool. Every read
+ *     of {@link com.example.awscloud.repository.CarRepository} is annotated with
+ *     {@code @Transactional(readOnly = true)}, so listings run on the replica while writes never
+ *     compete with them for a connection on the primary.
+ * </p>
+ * <p>
+ *     The transaction manager takes its connection before it marks the transaction read-only, so
+ *     this data source has to be wrapped in a
+ *     {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, which only asks
+ *     for the connection once the first statement runs.
+ * </p>
+ * <p>
+ *     While the {@link ReplicaLagMonitor} reports the replica as unavailable, because it cannot be
+ *     reached or lags behind by more than the tolerated delay, read-only transactions run on the
+ *     primary as well. A replica connection that cannot be obtained falls back to the primary right
+ *     away and marks the replica unavailable until the next successful check.
+ * </p>
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+  /**
+   * The role of a pool, used as its pool name and as the {@code role} tag of its meters.
+   */
+  public enum Role {
+    PRIMARY,
+    REPLICA;
+
+    public String tag() {
+      return name().toLowerCase();
+    }
+  }
+
+  private final DataSource primary;
+
+  private final DataSource replica;
+
+  private final ReplicaLagMonitor replicaLagMonitor;
+
+  public ReplicaRoutingDataSource(DataSource primary, DataSource replica,
+                                  ReplicaLagMonitor replicaLagMonitor) {
+    this.primary = primary;
+    this.replica = replica;
+    this.replicaLagMonitor = replicaLagMonitor;
+    setTargetDataSources(Map.of(Role.PRIMARY, primary, Role.REPLICA, replica));
+    setDefaultTargetDataSource(primary);
+    setLenientFallback(false);
+    afterPropertiesSet();
+  }
+
+  @Override
+  protected Role determineCurrentLookupKey() {
+    return TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+        && replicaLagMonitor.isAvailable() ? Role.REPLICA : Role.PRIMARY;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    if (determineCurrentLookupKey() == Role.REPLICA) {
+      try {
+        return replica.getConnection();
+      } catch (SQLException e) {
+        replicaLagMonitor.markUnavailable(e);
+      }
+    }
+    return primary.getConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    if (determineCurrentLookupKey() == Role.REPLICA) {
+      try {
+        return replica.getConnection(username, password);
+      } catch (SQLException e) {
+        replicaLagMonitor.markUnavailable(e);
+      }
+    }
+    return primary.getConnection(username, password);
+  }
+}
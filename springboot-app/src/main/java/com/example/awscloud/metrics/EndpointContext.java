@@ -0,0 +1,39 @@
+package com.example.awscloud.metrics;
+
+/**
+ * <p>
+ *     Holds the endpoint that the current thread is working for, for example
+ *     {@code GET /cars/{id}}, so that meters recorded deep inside the repository or Hibernate can be
+ *     tagged with it. It is set by {@link EndpointFilter} on the request thread, cleared there by
+ *     {@link EndpointContextFilter}, and carried over to the thread that does the work by
+ *     {@link com.example.awscloud.concurrent.DbBulkhead}.
+ * </p>
+ */
+public final class EndpointContext {
+
+  public static final String TAG = "endpoint";
+
+  /** Tag value for work that does not belong to a request, such as the index refresh. */
+  public static final String NONE = "none";
+
+  private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+  private EndpointContext() {
+  }
+
+  /**
+   * @return the endpoint of the current thread, or {@link #NONE}
+   */
+  public static String get() {
+    String endpoint = CURRENT.get();
+    return endpoint == null ? NONE : endpoint;
+  }
+
+  public static void set(String endpoint) {
+    CURRENT.set(endpoint);
+  }
+
+  public static void clear() {
+    CURRENT.remove();
+  }
+}
@@ -0,0 +1,36 @@
+package com.example.awscloud.metrics;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * <p>
+ *     Clears the {@link EndpointContext} that {@link EndpointFilter} set on the container thread
+ *     once the request has been handled on it, so that later work on the same worker thread is not
+ *     tagged with a stale endpoint.
+ * </p>
+ * <p>
+ *     This is a servlet filter rather than a Jersey response filter: a suspended request is resumed,
+ *     and its response filters run, on the bulkhead thread, which still needs the endpoint while it
+ *     writes a streamed body. The container thread returns through this filter as soon as the
+ *     resource method has suspended the request, or once a synchronous response has been written.
+ * </p>
+ */
+@Component
+public class EndpointContextFilter extends OncePerRequestFilter {
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                  FilterChain filterChain) throws ServletException, IOException {
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      EndpointContext.clear();
+    }
+  }
+}
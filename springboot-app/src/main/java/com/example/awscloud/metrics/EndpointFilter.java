@@ -0,0 +1,47 @@
+package com.example.awscloud.metrics;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.ext.Provider;
+import java.util.List;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+
+/**
+ * <p>
+ *     Sets the {@link EndpointContext} from the matched resource method, as the HTTP method and
+ *     the path template, so that the tag has a bounded number of values whatever ids are requested.
+ *     The endpoint is also stored as a request property under {@link EndpointContext#TAG} for
+ *     providers that may run on another thread.
+ * </p>
+ * <p>
+ *     The value is not cleared by a response filter, as a streamed body still reads from the
+ *     database after the response filters ran; {@link EndpointContextFilter} clears it on the
+ *     container thread once the request has been handled there.
+ * </p>
+ */
+@Provider
+public class EndpointFilter implements ContainerRequestFilter {
+
+  @Override
+  public void filter(ContainerRequestContext requestContext) {
+    String endpoint = requestContext.getMethod() + " "
+        + template((ExtendedUriInfo) requestContext.getUriInfo());
+    requestContext.setProperty(EndpointContext.TAG, endpoint);
+    EndpointContext.set(endpoint);
+  }
+
+  private static String template(ExtendedUriInfo uriInfo) {
+    // The matched templates are listed from the resource method up to the root resource
+    List<UriTemplate> templates = uriInfo.getMatchedTemplates();
+    StringBuilder path = new StringBuilder();
+    for (int i = templates.size() - 1; i >= 0; i--) {
+      String template = templates.get(i).getTemplate();
+      if (!template.startsWith("/") && !template.isEmpty()) {
+        path.append('/');
+      }
+      path.append(template);
+    }
+    return path.length() == 0 ? "/" : path.toString();
+  }
+}
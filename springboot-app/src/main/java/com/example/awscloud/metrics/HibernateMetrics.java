@@ -0,0 +1,41 @@
+package com.example.awscloud.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.Interceptor;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.type.Type;
+
+/**
+ * <p>
+ *     Counts the SQL statements Hibernate prepares and the entities it loads, tagged with the
+ *     endpoint that caused them. Hibernate's own statistics, bound by Spring Boot as
+ *     {@code hibernate.*}, only have totals for the whole session factory; these counters show
+ *     which endpoint issues how many statements per request.
+ * </p>
+ */
+public class HibernateMetrics implements StatementInspector, Interceptor {
+
+  // Both interfaces are Serializable, but the instance is only ever held by the session factory
+  private static final long serialVersionUID = 1L;
+
+  private final transient MeterRegistry meterRegistry;
+
+  public HibernateMetrics(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public String inspect(String sql) {
+    meterRegistry.counter("cars.hibernate.statements", EndpointContext.TAG, EndpointContext.get())
+        .increment();
+    return sql;
+  }
+
+  @Override
+  public boolean onLoad(Object entity, Object id, Object[] state, String[] propertyNames,
+                        Type[] types) {
+    meterRegistry.counter("cars.hibernate.entity.loads", EndpointContext.TAG, EndpointContext.get(),
+        "entity", entity.getClass().getSimpleName()).increment();
+    return false;
+  }
+}
@@ -0,0 +1,76 @@
+package com.example.awscloud.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ *     Times the writing of every response entity, which for JSON is the Jackson serialization, and
+ *     records the number of bytes written. For the streamed {@code /cars} listing the time includes
+ *     reading the cars, which the repository timers record separately.
+ * </p>
+ */
+@Component
+@Provider
+public class SerializationMetrics implements WriterInterceptor {
+
+  private final MeterRegistry meterRegistry;
+
+  public SerializationMetrics(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+    Object property = context.getProperty(EndpointContext.TAG);
+    String endpoint = property == null ? EndpointContext.NONE : property.toString();
+    CountingOutputStream output = new CountingOutputStream(context.getOutputStream());
+    context.setOutputStream(output);
+    Timer.Sample sample = Timer.start(meterRegistry);
+    try {
+      context.proceed();
+    } finally {
+      sample.stop(Timer.builder("cars.serialization")
+          .description("Time spent writing the response entity")
+          .tag(EndpointContext.TAG, endpoint)
+          .publishPercentileHistogram()
+          .register(meterRegistry));
+      DistributionSummary.builder("cars.response.size")
+          .description("Size of the response entity before transfer encoding")
+          .baseUnit("bytes")
+          .tag(EndpointContext.TAG, endpoint)
+          .publishPercentileHistogram()
+          .register(meterRegistry)
+          .record(output.count);
+    }
+  }
+
+  private static final class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    CountingOutputStream(OutputStream output) {
+      super(output);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+}
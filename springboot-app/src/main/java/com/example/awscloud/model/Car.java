@@ -1,5 +1,6 @@
 package com.example.awscloud.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import java.time.Year;
@@ -8,8 +9,12 @@ import java.time.Year;
 @Table(name = "cars", schema = "demoapp")
 public class Car {
 
+  // Ids are allocated 50 at a time from the sequence created in V6__car_id_sequence.sql, so
+  // inserting a batch of cars does not need a round trip per row to find its id.
   @Id
-  @GeneratedValue(strategy = GenerationType.AUTO)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cars_id")
+  @SequenceGenerator(name = "cars_id", schema = "demoapp", sequenceName = "cars_id_seq",
+      allocationSize = 50)
   @JsonProperty("id")
   private Integer id;
 
@@ -33,6 +38,11 @@ public class Car {
   @Column(name = "description", nullable = false, columnDefinition = "text")
   private String description;
 
+  @Version
+  @JsonIgnore
+  @Column(name = "row_version", nullable = false)
+  private Long version;
+
   public Car() {}
 
   public Car(Integer id, String make, String model, Year year, String color, String description) {
@@ -91,4 +101,12 @@ public class Car {
   public void setDescription(String description) {
     this.description = description;
   }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
 }
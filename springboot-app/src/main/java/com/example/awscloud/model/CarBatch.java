@@ -0,0 +1,14 @@
+package com.example.awscloud.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+/**
+ * <p>
+ *     The result of a batch lookup: the cars that were found, in the order their ids were
+ *     requested, and the requested ids for which there is no car.
+ * </p>
+ */
+public record CarBatch(@JsonProperty("cars") List<Car> cars,
+                       @JsonProperty("missing") List<Integer> missing) {
+}
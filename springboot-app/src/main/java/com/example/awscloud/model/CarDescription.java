@@ -0,0 +1,17 @@
+package com.example.awscloud.model;
+
+/**
+ * <p>
+ *     The description of a car with the row version it was read at, selected with a JPQL
+ *     constructor expression to build the {@link com.example.awscloud.search.CarSearchIndex}
+ *     without loading any entity.
+ * </p>
+ */
+public record CarDescription(Integer id, Long version, String description) {
+
+  /**
+   * The select clause that constructs a description from the car aliased {@code c}.
+   */
+  public static final String SELECT = "SELECT new com.example.awscloud.model.CarDescription("
+      + "c.id, c.version, c.description)";
+}
@@ -0,0 +1,40 @@
+package com.example.awscloud.model;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     The attributes of a {@link Car} that can be selected individually with the {@code fields}
+ *     query parameter. The name of each field is both its JSON property and its JPA attribute.
+ * </p>
+ */
+public enum CarField {
+  ID("id"),
+  MAKE("make"),
+  MODEL("model"),
+  MODEL_YEAR("modelYear"),
+  COLOR("color"),
+  DESCRIPTION("description");
+
+  private final String attribute;
+
+  CarField(String attribute) {
+    this.attribute = attribute;
+  }
+
+  public String getAttribute() {
+    return attribute;
+  }
+
+  /**
+   * @param attribute the JSON/JPA name of the field
+   * @return the matching field
+   * @throws IllegalArgumentException if no field has that name
+   */
+  public static CarField fromAttribute(String attribute) {
+    return Arrays.stream(values())
+        .filter(field -> field.attribute.equals(attribute))
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException("Unknown car field: " + attribute));
+  }
+}
@@ -0,0 +1,33 @@
+package com.example.awscloud.model;
+
+import java.time.Year;
+import java.util.List;
+
+/**
+ * <p>
+ *     Criteria for filtering cars. Every {@code null} criterion is ignored; the others are combined
+ *     with AND. Equality is exact and case sensitive so that it can be answered from an index.
+ * </p>
+ * @param make the exact make, or {@code null}
+ * @param model the exact model, or {@code null}
+ * @param color the exact color, or {@code null}
+ * @param minModelYear the earliest model year, inclusive, or {@code null}
+ * @param maxModelYear the latest model year, inclusive, or {@code null}
+ * @param orders the sort order; the id is always appended as a tie breaker
+ * @param limit the maximum number of cars to return
+ */
+public record CarFilter(String make,
+                        String model,
+                        String color,
+                        Year minModelYear,
+                        Year maxModelYear,
+                        List<Order> orders,
+                        int limit) {
+
+  /**
+   * @param field the field to sort by
+   * @param ascending {@code false} to sort in descending order
+   */
+  public record Order(CarField field, boolean ascending) {
+  }
+}
@@ -0,0 +1,20 @@
+package com.example.awscloud.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+/**
+ * <p>
+ *     The summary of a bulk import: how many records were received, what happened to them, and
+ *     the record numbers (counted from 1, not including a CSV header) of the first rejected ones.
+ *     Records that were valid but did not change a car, including earlier duplicates of a later
+ *     record for the same id, are counted as unchanged.
+ * </p>
+ */
+public record CarImportResult(@JsonProperty("received") long received,
+                              @JsonProperty("inserted") long inserted,
+                              @JsonProperty("updated") long updated,
+                              @JsonProperty("unchanged") long unchanged,
+                              @JsonProperty("rejected") long rejected,
+                              @JsonProperty("rejectedRecords") List<Long> rejectedRecords) {
+}
@@ -0,0 +1,25 @@
+package com.example.awscloud.model;
+
+import java.time.Year;
+
+/**
+ * <p>
+ *     A read-only view of a {@link Car}, selected with a JPQL constructor expression for the list
+ *     queries that only return cars to the client. A view is not an entity, so loading one adds
+ *     nothing to the persistence context and Hibernate keeps no snapshot of it for dirty checking.
+ *     It serializes to the same JSON as a {@link Car}.
+ * </p>
+ */
+public record CarView(Integer id,
+                      String make,
+                      String model,
+                      Year modelYear,
+                      String color,
+                      String description) {
+
+  /**
+   * The select clause that constructs a view from the car aliased {@code c}.
+   */
+  public static final String SELECT = "SELECT new com.example.awscloud.model.CarView("
+      + "c.id, c.make, c.model, c.modelYear, c.color, c.description)";
+}
@@ -0,0 +1,105 @@
+package com.example.awscloud.repository;
+
+import com.example.awscloud.config.SchedulingConfig;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ *     Detects changes to the {@code cars} table by polling {@link CarRepository#listFingerprint()}
+ *     and publishes a {@link CarsChangedEvent} whenever the fingerprint moves. The fingerprint is a
+ *     change counter maintained by a trigger, so a poll reads a single row even on a large table,
+ *     and it also catches rows written by other instances or directly in the database.
+ * </p>
+ * <p>
+ *     Writes made through this instance call {@link #carsWritten()} so that they are picked up
+ *     right away instead of at the next poll.
+ * </p>
+ * <p>
+ *     The polls, and with them the listeners of the event, run on the
+ *     {@link SchedulingConfig#CARS_CHANGE_SCHEDULER}, not on the scheduler of the
+ *     {@code @Scheduled} methods.
+ * </p>
+ */
+@Component
+public class CarChangeMonitor {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CarChangeMonitor.class);
+
+  private final CarRepository carRepository;
+
+  private final ApplicationEventPublisher publisher;
+
+  private final TaskScheduler taskScheduler;
+
+  private final Duration pollInterval;
+
+  private final AtomicBoolean pollRequested = new AtomicBoolean();
+
+  private String fingerprint;
+
+  public CarChangeMonitor(CarRepository carRepository, ApplicationEventPublisher publisher,
+                          @Qualifier(SchedulingConfig.CARS_CHANGE_SCHEDULER)
+                          TaskScheduler taskScheduler,
+                          @Value("${demoapp.cars.change-poll-interval:PT5S}")
+                          Duration pollInterval) {
+    this.carRepository = carRepository;
+    this.publisher = publisher;
+    this.taskScheduler = taskScheduler;
+    this.pollInterval = pollInterval;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    taskScheduler.scheduleWithFixedDelay(this::poll, Instant.now().plus(pollInterval),
+        pollInterval);
+  }
+
+  /**
+   * <p>
+   *     Requests a poll as soon as possible. The poll runs on the scheduler, not on the calling
+   *     request thread, and requests made while one is pending are coalesced, so a burst of writes
+   *     leads to a single refresh of the listeners.
+   * </p>
+   */
+  public void carsWritten() {
+    if (pollRequested.compareAndSet(false, true)) {
+      taskScheduler.schedule(() -> {
+        pollRequested.set(false);
+        poll();
+      }, Instant.now());
+    }
+  }
+
+  /**
+   * <p>
+   *     Reads the fingerprint and publishes a {@link CarsChangedEvent} if it moved. A requested poll
+   *     and the periodic one can run at the same time on the threads of the scheduler, so the
+   *     fingerprint is compared and replaced under the lock of the monitor, while the listeners
+   *     are called outside of it.
+   * </p>
+   */
+  public void poll() {
+    String current = carRepository.listFingerprint();
+    String previous;
+    synchronized (this) {
+      previous = fingerprint;
+      fingerprint = current;
+    }
+    // The first poll always publishes, as a change may have happened since listeners loaded
+    if (!current.equals(previous)) {
+      LOGGER.debug("cars changed, fingerprint {} -> {}", previous, current);
+      publisher.publishEvent(new CarsChangedEvent(current));
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package com.example.awscloud.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *     Converts newline delimited JSON cars into the CSV rows read by {@code COPY ... FORMAT csv},
+ *     one record at a time, so an import of any size only ever holds a single car in memory, and
+ *     reads the header of a CSV upload before its rows are passed on.
+ * </p>
+ * <p>
+ *     Values are written as text and validated by the database once they are staged, see
+ *     {@link CarImportRepository}. A missing or {@code null} property becomes an unquoted empty
+ *     field, which {@code COPY} reads as {@code NULL}; every other value is quoted, so an empty
+ *     string stays an empty string.
+ * </p>
+ */
+public final class CarCsv {
+
+  /**
+   * The columns of a CSV import, in order; a CSV upload must start with exactly this header.
+   */
+  public static final List<String> COLUMNS =
+      List.of("id", "make", "model", "model_year", "color", "description");
+
+  private static final List<String> PROPERTIES =
+      List.of("id", "make", "model", "modelYear", "color", "description");
+
+  // Far longer than any header of the known columns, so a body without line breaks is not read
+  // into memory looking for the end of the header
+  private static final int MAX_HEADER_LENGTH = 1024;
+
+  private CarCsv() {
+  }
+
+  /**
+   * @param objectMapper reads the JSON records
+   * @param ndjson cars as JSON objects separated by whitespace, typically one per line
+   * @param csv receives one CSV row per car, without a header
+   * @return the number of rows written
+   * @throws IOException if the input cannot be read, a
+   *         {@link com.fasterxml.jackson.core.JsonProcessingException} if it is not JSON objects
+   */
+  public static long ndjsonToCsv(ObjectMapper objectMapper, InputStream ndjson, Writer csv)
+      throws IOException {
+    long rows = 0;
+    try (MappingIterator<JsonNode> records = objectMapper.readerFor(JsonNode.class)
+        .readValues(ndjson)) {
+      while (records.hasNextValue()) {
+        JsonNode record = records.nextValue();
+        if (!record.isObject()) {
+          throw MismatchedInputException.from(records.getParser(), JsonNode.class,
+              "record " + (rows + 1) + " is not a JSON object");
+        }
+        for (int i = 0; i < PROPERTIES.size(); i++) {
+          if (i > 0) {
+            csv.write(',');
+          }
+          JsonNode value = record.get(PROPERTIES.get(i));
+          if (value != null && !value.isNull()) {
+            writeQuoted(csv, value.isValueNode() ? value.asText() : value.toString());
+          }
+        }
+        csv.write('\n');
+        rows++;
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * <p>
+   *     Reads the header line of a CSV upload, leaving the stream at the first record. Quoted names
+   *     are unquoted, and a byte order mark and a carriage return before the line break are
+   *     ignored.
+   * </p>
+   * @param csv the upload
+   * @return the column names of the header, or an empty list if the upload is empty
+   * @throws IOException if the upload cannot be read
+   * @throws IllegalArgumentException if the first line is too long to be a header
+   */
+  public static List<String> readHeader(InputStream csv) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = csv.read()) != -1 && b != '\n') {
+      if (line.size() == MAX_HEADER_LENGTH) {
+        throw new IllegalArgumentException("the first line is longer than " + MAX_HEADER_LENGTH
+            + " bytes");
+      }
+      line.write(b);
+    }
+    String header = line.toString(StandardCharsets.UTF_8);
+    if (header.startsWith("\uFEFF")) {
+      header = header.substring(1);
+    }
+    if (header.endsWith("\r")) {
+      header = header.substring(0, header.length() - 1);
+    }
+    if (header.isEmpty()) {
+      return List.of();
+    }
+    List<String> names = new ArrayList<>();
+    for (String name : header.split(",", -1)) {
+      if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+        name = name.substring(1, name.length() - 1).replace("\"\"", "\"");
+      }
+      names.add(name);
+    }
+    return names;
+  }
+
+  private static void writeQuoted(Writer csv, String value) throws IOException {
+    csv.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        csv.write('"');
+      }
+      csv.write(c);
+    }
+    csv.write('"');
+  }
+}
@@ -0,0 +1,23 @@
+package com.example.awscloud.repository;
+
+import org.springframework.dao.DataIntegrityViolationException;
+
+/**
+ * <p>
+ *     Thrown by {@link CarImportRepository} when the body of an import cannot be parsed, for
+ *     instance a CSV header that does not match or a record with the wrong number of columns. For
+ *     a record the message is the one reported by the server, including the line it failed on.
+ * </p>
+ */
+public class CarImportFormatException extends DataIntegrityViolationException {
+
+  private static final long serialVersionUID = 1L;
+
+  public CarImportFormatException(String message) {
+    super(message);
+  }
+
+  public CarImportFormatException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
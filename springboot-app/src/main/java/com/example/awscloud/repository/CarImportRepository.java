@@ -0,0 +1,267 @@
+package com.example.awscloud.repository;
+
+import com.example.awscloud.model.CarImportResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * <p>
+ *     Bulk imports cars with the Postgres {@code COPY} protocol. The request body is piped into
+ *     {@code COPY ... FROM STDIN} as it is read, so neither the application nor the driver ever
+ *     holds more than one buffer of the upload, however large it is.
+ * </p>
+ * <p>
+ *     Records are first copied as plain text into a temporary staging table, validated there with
+ *     one statement, and only then applied to {@code demoapp.cars}: records without an id are
+ *     inserted with ids allocated in blocks from {@code cars_id_seq}, records with the id of an existing car update
+ *     it and increment its row version. A record with a missing or invalid value is counted as
+ *     rejected instead of failing the import, while a body that cannot be parsed at all fails it
+ *     with a {@link CarImportFormatException}.
+ *     The whole import runs in a single transaction, so it is applied completely or not at all.
+ * </p>
+ * <p>
+ *     This needs the Postgres driver and is not available on H2.
+ * </p>
+ */
+@Repository
+public class CarImportRepository {
+
+  // Evaluated once per staged record, see validate(); the CASE keeps the EXISTS from running for
+  // an id that is not a number.
+  private static final String VALID = """
+      (make IS NOT NULL AND btrim(make) <> '' AND length(make) <= 100)
+      AND (model IS NOT NULL AND btrim(model) <> '' AND length(model) <= 100)
+      AND (color IS NOT NULL AND btrim(color) <> '' AND length(color) <= 40)
+      AND (description IS NOT NULL AND btrim(description) <> '')
+      AND (model_year ~ '^[0-9]{1,4}$')
+      AND CASE
+            WHEN id IS NULL THEN true
+            WHEN id ~ '^[0-9]{1,9}$'
+              THEN EXISTS (SELECT 1 FROM demoapp.cars c WHERE c.id = car_import.id::int)
+            ELSE false
+          END
+      """;
+
+  // The last record for an id wins. Cars whose properties would not change are left alone, so
+  // re-importing the same file does not bump any row version.
+  private static final String UPDATE = """
+      UPDATE demoapp.cars c
+         SET make = s.make, model = s.model, model_year = s.model_year, color = s.color,
+             description = s.description, row_version = c.row_version + 1
+        FROM (SELECT DISTINCT ON (id) id::int AS id, make, model, model_year::numeric AS model_year,
+                     color, description
+                FROM car_import
+               WHERE valid AND id IS NOT NULL
+               ORDER BY id, record DESC) s
+       WHERE c.id = s.id
+         AND (c.make, c.model, c.model_year, c.color, c.description)
+             IS DISTINCT FROM (s.make, s.model, s.model_year, s.color, s.description)
+      """;
+
+  // Must match the INCREMENT BY of cars_id_seq in V6__car_id_sequence.sql, as the allocationSize
+  // of Car.id does.
+  private static final int ID_BLOCK_SIZE = 50;
+
+  // Ids are allocated the way Hibernate's pooled-lo optimizer allocates them: one nextval() per
+  // block of ID_BLOCK_SIZE new cars, and the n-th car of a block gets the value plus n. Taking ids
+  // from the column default instead would use up a whole block for every car. The blocks are a
+  // materialized CTE, so nextval() runs exactly once per block however the join is planned.
+  private static final String INSERT = """
+      WITH new_cars AS (
+             SELECT row_number() OVER (ORDER BY record) - 1 AS n, make, model, model_year, color,
+                    description
+               FROM car_import
+              WHERE valid AND id IS NULL),
+           blocks AS MATERIALIZED (
+             SELECT block, nextval('demoapp.cars_id_seq') AS first_id
+               FROM generate_series(0, (SELECT (COUNT(*) + %1$d - 1) / %1$d - 1 FROM new_cars)) AS block)
+      INSERT INTO demoapp.cars (id, make, model, model_year, color, description)
+      SELECT b.first_id + c.n %% %1$d, c.make, c.model, c.model_year::numeric, c.color, c.description
+        FROM new_cars c
+        JOIN blocks b ON b.block = c.n / %1$d
+       ORDER BY c.n
+      """.formatted(ID_BLOCK_SIZE);
+
+  private final DataSource dataSource;
+
+  private final ObjectMapper objectMapper;
+
+  private final int copyBufferSize;
+
+  private final int maxRejectedRecords;
+
+  private final SQLExceptionTranslator exceptionTranslator;
+
+  /**
+   *
+   * @param dataSource
+   * @param objectMapper reads NDJSON imports
+   * @param copyBufferSize the number of bytes sent to the server per {@code COPY} message
+   * @param maxRejectedRecords how many rejected record numbers are listed in the result
+   */
+  public CarImportRepository(DataSource dataSource, ObjectMapper objectMapper,
+                             @Value("${demoapp.cars.import.copy-buffer-size:65536}") int copyBufferSize,
+                             @Value("${demoapp.cars.import.max-rejected-records:100}") int maxRejectedRecords) {
+    this.dataSource = dataSource;
+    this.objectMapper = objectMapper;
+    this.copyBufferSize = copyBufferSize;
+    this.maxRejectedRecords = maxRejectedRecords;
+    this.exceptionTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+  }
+
+  /**
+   * <p>
+   *     Imports CSV with the header {@code id,make,model,model_year,color,description}, see
+   *     {@link CarCsv#COLUMNS}. The header is checked here, as {@code COPY ... HEADER MATCH} would
+   *     need Postgres 15; the records are passed to the server unchanged and parsed there.
+   * </p>
+   * @param csv the upload, streamed to the database as it is read
+   * @return the summary of the import
+   * @throws CarImportFormatException if the body is not CSV with the expected header
+   * @throws DataIntegrityViolationException if applying the records violates a constraint
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @CacheEvict(cacheNames = CarRepository.CARS_CACHE, allEntries = true)
+  @Transactional
+  public CarImportResult importCsv(InputStream csv) {
+    List<String> header;
+    try {
+      header = CarCsv.readHeader(csv);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (IllegalArgumentException e) {
+      throw new CarImportFormatException("no header: " + e.getMessage(), e);
+    }
+    if (!header.equals(CarCsv.COLUMNS)) {
+      throw new CarImportFormatException("the header is " + String.join(",", header));
+    }
+    return importRecords((connection, copy) ->
+        connection.getCopyAPI().copyIn(copy + " WITH (FORMAT csv)", csv, copyBufferSize));
+  }
+
+  /**
+   * <p>
+   *     Imports newline delimited JSON objects with the properties of a car. Each record is
+   *     converted to a CSV row by {@link CarCsv} while it is read and written straight to the
+   *     {@code COPY} stream.
+   * </p>
+   * @param ndjson the upload, streamed to the database as it is read
+   * @return the summary of the import
+   * @throws UncheckedIOException if the body cannot be read, with a
+   *         {@link com.fasterxml.jackson.core.JsonProcessingException} as the cause if it is not
+   *         JSON objects
+   * @throws CarImportFormatException if the server cannot parse the converted records
+   * @throws DataIntegrityViolationException if applying the records violates a constraint
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @CacheEvict(cacheNames = CarRepository.CARS_CACHE, allEntries = true)
+  @Transactional
+  public CarImportResult importNdjson(InputStream ndjson) {
+    return importRecords((connection, copy) -> {
+      PGCopyOutputStream output =
+          new PGCopyOutputStream(connection, copy + " WITH (FORMAT csv)", copyBufferSize);
+      try {
+        Writer csv = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        CarCsv.ndjsonToCsv(objectMapper, ndjson, csv);
+        csv.flush();
+        return output.endCopy();
+      } catch (IOException | RuntimeException e) {
+        if (output.isActive()) {
+          output.cancelCopy();
+        }
+        throw e;
+      }
+    });
+  }
+
+  private CarImportResult importRecords(CopyIn copyIn) {
+    Connection connection = DataSourceUtils.getConnection(dataSource);
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TEMPORARY TABLE car_import ("
+          + "record bigint GENERATED ALWAYS AS IDENTITY, "
+          + "id text, make text, model text, model_year text, color text, description text, "
+          + "valid boolean) ON COMMIT DROP");
+      long received = copy(connection, copyIn);
+      long rejected = validate(statement);
+      List<Long> rejectedRecords = new ArrayList<>();
+      if (rejected > 0) {
+        try (ResultSet rows = statement.executeQuery("SELECT record FROM car_import"
+            + " WHERE NOT valid ORDER BY record LIMIT " + maxRejectedRecords)) {
+          while (rows.next()) {
+            rejectedRecords.add(rows.getLong(1));
+          }
+        }
+      }
+      long updated = statement.executeUpdate(UPDATE);
+      long inserted = statement.executeUpdate(INSERT);
+      return new CarImportResult(received, inserted, updated,
+          received - rejected - inserted - updated, rejected, rejectedRecords);
+    } catch (SQLException e) {
+      DataAccessException translated = exceptionTranslator.translate("import", null, e);
+      throw translated != null ? translated : new UncategorizedSQLException("import", null, e);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      DataSourceUtils.releaseConnection(connection, dataSource);
+    }
+  }
+
+  private static long copy(Connection connection, CopyIn copyIn) throws SQLException, IOException {
+    try {
+      return copyIn.copy(connection.unwrap(PGConnection.class),
+          "COPY car_import (" + String.join(", ", CarCsv.COLUMNS) + ") FROM STDIN");
+    } catch (SQLException e) {
+      // The staging table only has text columns, so a data exception, SQLSTATE class 22, can only
+      // mean that the body itself cannot be parsed
+      if (e.getSQLState() != null && e.getSQLState().startsWith("22")) {
+        throw new CarImportFormatException(e.getMessage(), e);
+      }
+      throw e;
+    }
+  }
+
+  private long validate(Statement statement) throws SQLException {
+    statement.executeUpdate("UPDATE car_import SET valid = (" + VALID + ") IS TRUE");
+    // Autovacuum never analyzes temporary tables; without statistics the join of a large import
+    // against the cars table would be planned for a table of a few rows.
+    statement.execute("ANALYZE car_import");
+    try (ResultSet rows = statement.executeQuery(
+        "SELECT COUNT(*) FROM car_import WHERE NOT valid")) {
+      rows.next();
+      return rows.getLong(1);
+    }
+  }
+
+  @FunctionalInterface
+  private interface CopyIn {
+    /**
+     * @return the number of records copied into the staging table
+     */
+    long copy(PGConnection connection, String copy) throws SQLException, IOException;
+  }
+}
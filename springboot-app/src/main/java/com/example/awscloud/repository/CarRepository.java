@@ -1,37 +1,485 @@
 package com.example.awscloud.repository;
 
 import com.example.awscloud.model.Car;
+import com.example.awscloud.model.CarDescription;
+import com.example.awscloud.model.CarField;
+import com.example.awscloud.model.CarFilter;
+import com.example.awscloud.model.CarView;
+import io.micrometer.core.annotation.Timed;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public class CarRepository {
 
+  public static final String CARS_CACHE = "cars";
+
   private EntityManager entityManager;
 
+  private int fetchSize;
+
+  private int batchChunkSize;
+
+  private int jdbcBatchSize;
+
   /**
    *
    * @param entityManager
+   * @param fetchSize the number of rows the JDBC driver pulls per round trip when streaming
+   * @param batchChunkSize the maximum number of ids bound to a single IN list
+   * @param jdbcBatchSize the number of inserts Hibernate sends to the driver as one batch
    */
-  public CarRepository(EntityManager entityManager) {
+  public CarRepository(EntityManager entityManager,
+                       @Value("${demoapp.cars.fetch-size:500}") int fetchSize,
+                       @Value("${demoapp.cars.batch-chunk-size:1000}") int batchChunkSize,
+                       @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int jdbcBatchSize) {
     this.entityManager = entityManager;
+    this.fetchSize = fetchSize;
+    this.batchChunkSize = batchChunkSize;
+    this.jdbcBatchSize = jdbcBatchSize;
   }
 
   /**
-   *
+   * <p>
+   *     Looks up a car through the {@code cars} cache. Concurrent misses on the same id are
+   *     collapsed into a single query ({@code sync = true}), and unknown ids are cached as well so
+   *     repeated lookups of a missing car do not reach the database. Size and expiry are set per
+   *     profile under {@code demoapp.cache.cars}, see {@link com.example.awscloud.config.CacheConfig}.
+   * </p>
+   * <p>
+   *     Unlike the other reads the lookup is deliberately not read-only, so that it always runs on
+   *     the primary even when a read replica is configured: a car read from a lagging replica right
+   *     after {@link #createCars(List)} cleared the cache would be cached for the whole TTL, or a new
+   *     id cached as a miss.
+   * </p>
    * @param id
-   * @return
+   * @return the car, or {@code null} if there is no car with that id
    */
+  @Timed(value = "cars.repository", histogram = true)
+  @Cacheable(cacheNames = CARS_CACHE, sync = true)
+  @Transactional
   public Car findCarById(Integer id) {
     return entityManager.find(Car.class, id);
   }
 
   /**
-   *
-   * @return
+   * <p>
+   *     Lists every car as a {@link CarView}. No entity is loaded, so the listing costs the rows
+   *     themselves but no persistence context entries or dirty checking snapshots, and the
+   *     read-only transaction lets the driver run the query on a read-only connection.
+   * </p>
+   * @return every car, in no particular order
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public List<CarView> listAllCars() {
+    return entityManager.createQuery(CarView.SELECT + " FROM Car c", CarView.class).getResultList();
+  }
+
+  /**
+   * <p>
+   *     Streams every car, in primary key order, to the consumer. Rows are read from a cursor
+   *     {@code fetchSize} at a time as {@link CarView}s, see {@link #listAllCars()}, so nothing is
+   *     added to the persistence context however large the table is, and no entity is loaded,
+   *     snapshotted for dirty checking or detached again per row.
+   * </p>
+   * <p>
+   *     The read runs in a transaction as the Postgres driver only honours the fetch size when
+   *     auto-commit is off; without it the whole result set would be buffered by the driver.
+   * </p>
+   * @param consumer receives each car as soon as it has been read
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public void streamAllCars(Consumer<CarView> consumer) {
+    try (Stream<CarView> cars = entityManager.createQuery(
+            CarView.SELECT + " FROM Car c ORDER BY c.id", CarView.class)
+        .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+        .getResultStream()) {
+      cars.forEach(consumer);
+    }
+  }
+
+  /**
+   * <p>
+   *     Streams the description and row version of every car, in primary key order, the same way
+   *     as {@link #streamAllCars(Consumer)}.
+   * </p>
+   * @param consumer receives each description as soon as it has been read
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public void streamCarDescriptions(Consumer<CarDescription> consumer) {
+    try (Stream<CarDescription> descriptions = entityManager.createQuery(
+            CarDescription.SELECT + " FROM Car c ORDER BY c.id", CarDescription.class)
+        .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+        .getResultStream()) {
+      descriptions.forEach(consumer);
+    }
+  }
+
+  /**
+   * <p>
+   *     Streams the id and row version of every car, in primary key order. Only the two columns are
+   *     read, so a consumer can find out which cars changed since it last looked without loading
+   *     them.
+   * </p>
+   * @param consumer receives the id and the row version of each car
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public void streamCarVersions(BiConsumer<Integer, Long> consumer) {
+    try (Stream<Object[]> rows = entityManager.createQuery(
+            "SELECT c.id, c.version FROM Car c ORDER BY c.id", Object[].class)
+        .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+        .getResultStream()) {
+      rows.forEach(row -> consumer.accept((Integer) row[0], (Long) row[1]));
+    }
+  }
+
+  /**
+   * <p>
+   *     Returns one page of cars using keyset pagination: only cars whose id is greater than the
+   *     cursor are read, in primary key order. Unlike an OFFSET the database seeks straight to the
+   *     cursor on the primary key index, so every page costs the same no matter how deep it is.
+   *     Cars are read as {@link CarView}s, see {@link #listAllCars()}.
+   * </p>
+   * @param after the id of the last car of the previous page, or {@code 0} for the first page
+   * @param limit the maximum number of cars to return
+   * @return up to {@code limit} cars with an id greater than {@code after}
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public List<CarView> listCarsAfter(int after, int limit) {
+    return entityManager.createQuery(CarView.SELECT + " FROM Car c WHERE c.id > :after ORDER BY c.id",
+            CarView.class)
+        .setParameter("after", after)
+        .setMaxResults(limit)
+        .getResultList();
+  }
+
+  /**
+   * <p>
+   *     Reads only the row version of a car, so that a conditional request can be answered without
+   *     loading the entity.
+   * </p>
+   * @param id
+   * @return the version of the car, or empty if there is no car with that id
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public Optional<Long> findCarVersion(Integer id) {
+    return entityManager.createQuery("SELECT c.version FROM Car c WHERE c.id = :id", Long.class)
+        .setParameter("id", id)
+        .getResultStream()
+        .findFirst();
+  }
+
+  /**
+   * <p>
+   *     Reads the change counter of the table, the sum of the stripes of
+   *     {@code demoapp.cars_changes}, which a statement level trigger increments on every insert,
+   *     update, delete and truncate of {@code cars}, see {@code V7__car_change_counter.sql}. It
+   *     changes whenever the full listing does, including for writes made by other instances or
+   *     directly in the database, and reading it takes a handful of rows however large the table
+   *     is.
+   * </p>
+   * @return an opaque fingerprint of the current contents of the table
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public String listFingerprint() {
+    Object changes = entityManager
+        .createNativeQuery("SELECT sum(changes) FROM demoapp.cars_changes")
+        .getSingleResult();
+    return String.valueOf(changes);
+  }
+
+  /**
+   * <p>
+   *     Finds cars by words of their description without the search index. Each term becomes a
+   *     {@code LIKE} on the lower-cased description, combined with AND or OR, and the cars the
+   *     database returns are streamed in primary key order through {@code accept}, which decides
+   *     whether a car really matches, until {@code limit} cars are accepted. The terms must only
+   *     contain letters and digits, so none of them is a {@code LIKE} wildcard.
+   * </p>
+   * @param terms lower-case words to look for
+   * @param matchAll whether every term has to occur (AND) or any term (OR)
+   * @param limit the maximum number of cars to return
+   * @param accept whether a car whose description contains the terms matches
+   * @return up to {@code limit} accepted cars, in primary key order
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public List<Car> searchDescriptions(Collection<String> terms, boolean matchAll, int limit,
+                                      DescriptionMatch accept) {
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Car> query = cb.createQuery(Car.class);
+    Root<Car> car = query.from(Car.class);
+    Path<String> description = car.get(CarField.DESCRIPTION.getAttribute());
+    Predicate[] predicates = terms.stream()
+        .map(term -> cb.like(cb.lower(description), "%" + term + "%"))
+        .toArray(Predicate[]::new);
+    query.where(matchAll ? cb.and(predicates) : cb.or(predicates))
+        .orderBy(cb.asc(car.get(CarField.ID.getAttribute())));
+    try (Stream<Car> cars = entityManager.createQuery(query)
+        .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+        .setHint(HibernateHints.HINT_READ_ONLY, true)
+        .getResultStream()) {
+      return cars.peek(entityManager::detach).filter(accept::matches).limit(limit)
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * <p>
+   *     Loads many cars with one {@code IN} query instead of one query per id. Large id sets are
+   *     split into chunks of {@code batchChunkSize} ids to stay well below the bind parameter limit
+   *     of the driver; all chunks are read in the same transaction and on the same connection.
+   *     The cars are loaded read-only, so Hibernate drops their dirty checking snapshots.
+   * </p>
+   * @param ids the ids to look up, without duplicates
+   * @return the cars that exist, in no particular order
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public List<Car> findCarsByIds(Collection<Integer> ids) {
+    List<Integer> remaining = new ArrayList<>(ids);
+    List<Car> cars = new ArrayList<>(remaining.size());
+    for (int from = 0; from < remaining.size(); from += batchChunkSize) {
+      List<Integer> chunk = remaining.subList(from, Math.min(from + batchChunkSize, remaining.size()));
+      cars.addAll(entityManager.createQuery("SELECT c FROM Car c WHERE c.id IN :ids", Car.class)
+          .setParameter("ids", chunk)
+          .setHint(HibernateHints.HINT_READ_ONLY, true)
+          .getResultList());
+    }
+    return cars;
+  }
+
+  /**
+   * <p>
+   *     Streams a projection of every car, in primary key order. Only the columns of the requested
+   *     fields are selected, so a projection without {@code description} never reads, hydrates or
+   *     serializes the text column. Nothing is added to the persistence context.
+   * </p>
+   * @param fields the fields to select, {@link CarField#ID} must be included
+   * @param consumer receives each car as a map of field name to value, in the order of the fields
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public void streamCarFields(List<CarField> fields, Consumer<Map<String, Object>> consumer) {
+    try (Stream<Tuple> rows = projectionQuery(fields, false)
+        .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+        .getResultStream()) {
+      rows.forEach(row -> consumer.accept(toMap(row)));
+    }
+  }
+
+  /**
+   * <p>
+   *     Keyset paginated variant of {@link #streamCarFields(List, Consumer)}, see
+   *     {@link #listCarsAfter(int, int)}.
+   * </p>
+   * @param fields the fields to select, {@link CarField#ID} must be included
+   * @param after the id of the last car of the previous page, or {@code 0} for the first page
+   * @param limit the maximum number of cars to return
+   * @return up to {@code limit} projected cars with an id greater than {@code after}
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public List<Map<String, Object>> listCarFieldsAfter(List<CarField> fields, int after, int limit) {
+    return projectionQuery(fields, true)
+        .setParameter("after", after)
+        .setMaxResults(limit)
+        .getResultStream()
+        .map(CarRepository::toMap)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * <p>
+   *     Finds the cars that match the filter with a typed Criteria query. Each criterion compares a
+   *     bare column with a bound parameter, so the predicates stay sargable and are answered by the
+   *     indexes created in {@code V5__car_filter_indexes.sql}. In particular the model year is bound
+   *     through the {@link com.example.awscloud.model.YearConverter} as a number; Postgres widens the
+   *     parameter to the {@code numeric} type of {@code model_year} rather than casting the column.
+   *     Cars are read as {@link CarView}s, see {@link #listAllCars()}.
+   * </p>
+   * @param filter the criteria, sort order and limit
+   * @return the matching cars, sorted as requested and then by id
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @Transactional(readOnly = true)
+  public List<CarView> filterCars(CarFilter filter) {
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<CarView> query = cb.createQuery(CarView.class);
+    Root<Car> car = query.from(Car.class);
+    List<Predicate> predicates = new ArrayList<>();
+    if (filter.make() != null) {
+      predicates.add(cb.equal(car.get(CarField.MAKE.getAttribute()), filter.make()));
+    }
+    if (filter.model() != null) {
+      predicates.add(cb.equal(car.get(CarField.MODEL.getAttribute()), filter.model()));
+    }
+    if (filter.color() != null) {
+      predicates.add(cb.equal(car.get(CarField.COLOR.getAttribute()), filter.color()));
+    }
+    Path<Year> modelYear = car.get(CarField.MODEL_YEAR.getAttribute());
+    if (filter.minModelYear() != null) {
+      predicates.add(cb.greaterThanOrEqualTo(modelYear, filter.minModelYear()));
+    }
+    if (filter.maxModelYear() != null) {
+      predicates.add(cb.lessThanOrEqualTo(modelYear, filter.maxModelYear()));
+    }
+    List<Order> orders = new ArrayList<>();
+    for (CarFilter.Order order : filter.orders()) {
+      Path<?> path = car.get(order.field().getAttribute());
+      orders.add(order.ascending() ? cb.asc(path) : cb.desc(path));
+    }
+    orders.add(cb.asc(car.get(CarField.ID.getAttribute())));
+    query.select(cb.construct(CarView.class, car.get(CarField.ID.getAttribute()),
+            car.get(CarField.MAKE.getAttribute()), car.get(CarField.MODEL.getAttribute()), modelYear,
+            car.get(CarField.COLOR.getAttribute()), car.get(CarField.DESCRIPTION.getAttribute())))
+        .where(predicates.toArray(Predicate[]::new))
+        .orderBy(orders);
+    return entityManager.createQuery(query)
+        .setMaxResults(filter.limit())
+        .getResultList();
+  }
+
+  /**
+   * <p>
+   *     Inserts a new car. Its id is taken from the pooled {@code cars_id_seq} and the car is put
+   *     into the {@code cars} cache, replacing a cached miss for the same id.
+   * </p>
+   * @param car the car to create, without an id
+   * @return the created car with its id and row version
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @CachePut(cacheNames = CARS_CACHE, key = "#result.id")
+  @Transactional
+  public Car createCar(Car car) {
+    entityManager.persist(car);
+    entityManager.flush();
+    return car;
+  }
+
+  /**
+   * <p>
+   *     Inserts many cars in one transaction. Hibernate sends the inserts to the driver in JDBC
+   *     batches of {@code hibernate.jdbc.batch_size} and takes the ids from the pooled sequence, so
+   *     the number of round trips grows with the number of batches rather than with the number of
+   *     cars. The persistence context is flushed and cleared after every batch to keep memory
+   *     bounded. As the new ids may have been cached as misses, the {@code cars} cache is cleared.
+   * </p>
+   * @param cars the cars to create, without ids
+   * @return the ids of the created cars, in the order of the given cars
+   */
+  @Timed(value = "cars.repository", histogram = true)
+  @CacheEvict(cacheNames = CARS_CACHE, allEntries = true)
+  @Transactional
+  public List<Integer> createCars(List<Car> cars) {
+    List<Integer> ids = new ArrayList<>(cars.size());
+    for (int i = 0; i < cars.size(); i++) {
+      Car car = cars.get(i);
+      entityManager.persist(car);
+      ids.add(car.getId());
+      if ((i + 1) % jdbcBatchSize == 0) {
+        entityManager.flush();
+        entityManager.clear();
+      }
+    }
+    entityManager.flush();
+    entityManager.clear();
+    return ids;
+  }
+
+  /**
+   * <p>
+   *     Replaces the properties of a car. When an expected row version is given the update only
+   *     succeeds if the car still has that version; a concurrent update that slips in between the
+   *     check and the write is caught by the {@code @Version} column as well.
+   * </p>
+   * @param id the id of the car to update
+   * @param expectedVersion the row version the client has seen, or {@code null} to update
+   *                        unconditionally
+   * @param changes the new properties of the car
+   * @return the updated car, or {@code null} if there is no car with that id
+   * @throws OptimisticLockingFailureException if the car does not have the expected version
    */
-  public List<Car> listAllCars() {
-    return entityManager.createQuery("SELECT c FROM Car c", Car.class).getResultList();
+  @Timed(value = "cars.repository", histogram = true)
+  @CachePut(cacheNames = CARS_CACHE, key = "#id")
+  @Transactional
+  public Car updateCar(Integer id, Long expectedVersion, Car changes) {
+    Car car = entityManager.find(Car.class, id);
+    if (car == null) {
+      return null;
+    }
+    if (expectedVersion != null && !expectedVersion.equals(car.getVersion())) {
+      throw new OptimisticLockingFailureException("car " + id + " has version " + car.getVersion()
+          + ", not " + expectedVersion);
+    }
+    car.setMake(changes.getMake());
+    car.setModel(changes.getModel());
+    car.setModelYear(changes.getModelYear());
+    car.setColor(changes.getColor());
+    car.setDescription(changes.getDescription());
+    entityManager.flush();
+    return car;
+  }
+
+  private TypedQuery<Tuple> projectionQuery(List<CarField> fields, boolean paged) {
+    // The attribute names come from the CarField enum, never from the request, so building the
+    // select clause from them cannot inject anything into the query.
+    String select = fields.stream()
+        .map(field -> "c." + field.getAttribute() + " AS " + field.getAttribute())
+        .collect(Collectors.joining(", "));
+    String where = paged ? " WHERE c.id > :after" : "";
+    return entityManager.createQuery("SELECT " + select + " FROM Car c" + where + " ORDER BY c.id",
+        Tuple.class);
+  }
+
+  private static Map<String, Object> toMap(Tuple row) {
+    Map<String, Object> values = new LinkedHashMap<>();
+    for (TupleElement<?> element : row.getElements()) {
+      values.put(element.getAlias(), row.get(element));
+    }
+    return values;
+  }
+
+  /**
+   * Decides whether a car whose description contains the search terms really matches them.
+   */
+  @FunctionalInterface
+  public interface DescriptionMatch {
+
+    boolean matches(Car car);
   }
 }
@@ -0,0 +1,11 @@
+package com.example.awscloud.repository;
+
+/**
+ * <p>
+ *     Published when the contents of the {@code cars} table may have changed. The event does not
+ *     say which cars changed; listeners reconcile their own state against the table.
+ * </p>
+ * @param fingerprint the {@link CarRepository#listFingerprint()} that was observed, if known
+ */
+public record CarsChangedEvent(String fingerprint) {
+}
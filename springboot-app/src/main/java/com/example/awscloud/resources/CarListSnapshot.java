@@ -0,0 +1,133 @@
+package com.example.awscloud.resources;
+
+import com.example.awscloud.config.SchedulingConfig;
+import com.example.awscloud.repository.CarRepository;
+import com.example.awscloud.repository.CarsChangedEvent;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.ws.rs.core.EntityTag;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ *     Keeps the body of the full {@code /cars} listing serialized in memory, once as JSON and once
+ *     gzipped, so that {@link CarResource#findAll} can answer it with a copy of a byte array instead
+ *     of a query and a serialization of every car.
+ * </p>
+ * <p>
+ *     The snapshot is built in the background once the application is ready, a failed build is
+ *     logged and left to the next {@link CarsChangedEvent}, and it is rebuilt in the background on
+ *     every {@link CarsChangedEvent}; until the first build the listing is streamed from the
+ *     database. Requests keep being served from the previous snapshot while the
+ *     next one is built. Between a change and the rebuild the snapshot can be stale for up to
+ *     {@code demoapp.cars.change-poll-interval}. It is only enabled with
+ *     {@code demoapp.cars.snapshot.enabled}, as it holds the whole listing on the heap twice.
+ * </p>
+ */
+@Component
+public class CarListSnapshot {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CarListSnapshot.class);
+
+  private final CarRepository carRepository;
+
+  private final ObjectMapper objectMapper;
+
+  private final TaskScheduler taskScheduler;
+
+  private final boolean enabled;
+
+  private final ReentrantLock rebuildLock = new ReentrantLock();
+
+  private volatile Snapshot snapshot;
+
+  public CarListSnapshot(CarRepository carRepository, ObjectMapper objectMapper,
+                         @Qualifier(SchedulingConfig.CARS_CHANGE_SCHEDULER)
+                         TaskScheduler taskScheduler,
+                         @Value("${demoapp.cars.snapshot.enabled:false}") boolean enabled) {
+    this.carRepository = carRepository;
+    this.objectMapper = objectMapper;
+    this.taskScheduler = taskScheduler;
+    this.enabled = enabled;
+  }
+
+  /**
+   * @return the latest snapshot, or empty if snapshots are disabled or the first one is not built
+   */
+  public Optional<Snapshot> current() {
+    return Optional.ofNullable(snapshot);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    if (!enabled) {
+      return;
+    }
+    taskScheduler.schedule(() -> {
+      try {
+        rebuild();
+      } catch (RuntimeException e) {
+        LOGGER.warn("cars snapshot could not be built, streaming the listing until it is", e);
+      }
+    }, Instant.now());
+  }
+
+  @EventListener(CarsChangedEvent.class)
+  public void rebuild() {
+    if (!enabled) {
+      return;
+    }
+    rebuildLock.lock();
+    try {
+      long start = System.nanoTime();
+      // As for the streamed listing the tag is read first, so it is never newer than the body
+      EntityTag tag = CarResource.listTag(carRepository.listFingerprint(), null);
+      ByteArrayOutputStream json = new ByteArrayOutputStream(64 * 1024);
+      try (JsonGenerator generator = objectMapper.createGenerator(json)) {
+        generator.writeStartArray();
+        carRepository.streamAllCars(car -> {
+          try {
+            generator.writeObject(car);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        generator.writeEndArray();
+      }
+      byte[] body = json.toByteArray();
+      ByteArrayOutputStream gzip = new ByteArrayOutputStream(body.length / 4);
+      try (GZIPOutputStream output = new GZIPOutputStream(gzip, 64 * 1024)) {
+        output.write(body);
+      }
+      snapshot = new Snapshot(tag, body, gzip.toByteArray());
+      LOGGER.debug("cars snapshot rebuilt in {} ms, {} bytes, {} gzipped",
+          (System.nanoTime() - start) / 1_000_000, body.length, snapshot.gzip().length);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      rebuildLock.unlock();
+    }
+  }
+
+  /**
+   * @param tag the entity tag of the listing
+   * @param json the serialized listing
+   * @param gzip the serialized listing, gzipped
+   */
+  public record Snapshot(EntityTag tag, byte[] json, byte[] gzip) {
+  }
+}
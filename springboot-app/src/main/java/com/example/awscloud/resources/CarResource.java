@@ -1,33 +1,687 @@
 package com.example.awscloud.resources;
 
+import com.example.awscloud.concurrent.DbBulkhead;
 import com.example.awscloud.model.Car;
+import com.example.awscloud.model.CarBatch;
+import com.example.awscloud.model.CarField;
+import com.example.awscloud.model.CarFilter;
+import com.example.awscloud.model.CarImportResult;
+import com.example.awscloud.model.CarView;
+import com.example.awscloud.repository.CarChangeMonitor;
+import com.example.awscloud.repository.CarCsv;
+import com.example.awscloud.repository.CarImportFormatException;
+import com.example.awscloud.repository.CarImportRepository;
 import com.example.awscloud.repository.CarRepository;
+import com.example.awscloud.search.CarSearchIndex;
+import com.example.awscloud.search.InvertedIndex;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Link;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.core.UriInfo;
+import jakarta.ws.rs.ext.RuntimeDelegate;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 
 @Service
 @Path("/cars")
-@Produces(MediaType.APPLICATION_JSON)
-@Consumes({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_FORM_URLENCODED })
+@Produces({ MediaType.APPLICATION_JSON, SmileProvider.APPLICATION_SMILE })
+@Consumes({ MediaType.APPLICATION_JSON, SmileProvider.APPLICATION_SMILE,
+    MediaType.APPLICATION_FORM_URLENCODED })
 public class CarResource {
 
+  static final int DEFAULT_PAGE_SIZE = 50;
+
+  static final int MAX_PAGE_SIZE = 1000;
+
+  static final int MAX_BATCH_SIZE = 10000;
+
+  static final String TEXT_CSV = "text/csv";
+
+  static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+  static final String SMILE_TAG_SUFFIX = "-smile";
+
   CarRepository carRepository;
 
-  public CarResource(CarRepository carRepository) {
+  ObjectMapper objectMapper;
+
+  CarSearchIndex carSearchIndex;
+
+  CarListSnapshot carListSnapshot;
+
+  DbBulkhead dbBulkhead;
+
+  CarChangeMonitor carChangeMonitor;
+
+  CarImportRepository carImportRepository;
+
+  SmileProvider smileProvider;
+
+  public CarResource(CarRepository carRepository, ObjectMapper objectMapper,
+                     CarSearchIndex carSearchIndex, CarListSnapshot carListSnapshot,
+                     DbBulkhead dbBulkhead, CarChangeMonitor carChangeMonitor,
+                     CarImportRepository carImportRepository, SmileProvider smileProvider) {
     this.carRepository = carRepository;
+    this.objectMapper = objectMapper;
+    this.carSearchIndex = carSearchIndex;
+    this.carListSnapshot = carListSnapshot;
+    this.dbBulkhead = dbBulkhead;
+    this.carChangeMonitor = carChangeMonitor;
+    this.carImportRepository = carImportRepository;
+    this.smileProvider = smileProvider;
   }
 
+  /**
+   * <p>
+   *     Lists cars. Without paging parameters every car is returned and the body is streamed: each
+   *     row is written to the response as soon as it is read from the database, so the listing is
+   *     never held in memory as a whole. The full listing carries an {@code ETag} derived from
+   *     {@link CarRepository#listFingerprint()}; a matching {@code If-None-Match} is answered with
+   *     {@code 304 Not Modified} before any car is read.
+   * </p>
+   * <p>
+   *     With {@code demoapp.cars.snapshot.enabled} the full listing is served from the bytes held by
+   *     {@link CarListSnapshot} instead, gzipped when the client accepts it.
+   * </p>
+   * <p>
+   *     When {@code limit} or {@code after} is given a single page is returned instead, starting
+   *     after the car whose id is {@code after}. If there are more cars the response carries a
+   *     {@code Link} header with {@code rel="next"} that points at the following page.
+   * </p>
+   * <p>
+   *     {@code fields} takes a comma separated list of car properties, for example
+   *     {@code fields=make,model,modelYear}. Only those columns are selected from the database and
+   *     written to the response; {@code id} is always included.
+   * </p>
+   * <p>
+   *     Every method of this resource answers with Smile instead of JSON when the client prefers
+   *     {@code application/x-jackson-smile}, see {@link SmileProvider}. A Smile listing is always
+   *     streamed, as the snapshot only holds JSON, and every Smile response carries an
+   *     {@code ETag} of its own. As the representation depends on {@code Accept}, every response
+   *     carries {@code Vary: Accept}, see {@link VaryAcceptFilter}.
+   * </p>
+   * <p>
+   *     Like every method of this resource that reads from the database, the work runs on the
+   *     {@link DbBulkhead}; a streamed body is written from the bulkhead thread as well.
+   * </p>
+   */
   @GET
-  public Response findAll() {
-    return Response.ok(carRepository.listAllCars()).build();
+  public void findAll(@QueryParam("limit") Integer limit,
+                      @QueryParam("after") Integer after,
+                      @QueryParam("fields") String fields,
+                      @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                      @Context UriInfo uriInfo,
+                      @Context Request request,
+                      @Context HttpHeaders headers,
+                      @Suspended AsyncResponse asyncResponse) {
+    List<CarField> projection = parseFields(fields);
+    boolean smile = SmileProvider.prefersSmile(headers.getAcceptableMediaTypes());
+    if (limit != null || after != null) {
+      int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+      int cursor = after == null ? 0 : after;
+      validatePage(pageSize, cursor);
+      dbBulkhead.execute(asyncResponse, () -> findPage(pageSize, cursor, projection, uriInfo));
+      return;
+    }
+    Optional<CarListSnapshot.Snapshot> snapshot =
+        projection == null && !smile ? carListSnapshot.current() : Optional.empty();
+    if (snapshot.isPresent()) {
+      // Served from memory, so there is no reason to queue it behind database work
+      asyncResponse.resume(fromSnapshot(snapshot.get(), acceptEncoding, request));
+      return;
+    }
+    dbBulkhead.execute(asyncResponse, () -> streamAll(projection, smile, request));
   }
 
+  /**
+   * <p>
+   *     Returns a single car with an {@code ETag} built from its id and row version. When the
+   *     request carries {@code If-None-Match} only the row version is read to evaluate it, so an
+   *     unchanged car is answered with {@code 304 Not Modified} without being loaded or serialized.
+   * </p>
+   */
   @GET
   @Path("/{id}")
-  public Response findCarById(@PathParam("id") Integer id) {
+  public void findCarById(@PathParam("id") Integer id,
+                          @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                          @Context Request request,
+                          @Context HttpHeaders headers,
+                          @Suspended AsyncResponse asyncResponse) {
+    boolean smile = SmileProvider.prefersSmile(headers.getAcceptableMediaTypes());
+    dbBulkhead.execute(asyncResponse, () -> findCar(id, ifNoneMatch, smile, request));
+  }
+
+  /**
+   * <p>
+   *     Looks up many cars in one request. The body is a JSON array of ids; the response lists the
+   *     cars in the order they were requested, followed by the ids that do not exist. Duplicate ids
+   *     are only returned once.
+   * </p>
+   */
+  @POST
+  @Path("/batch")
+  public void findCarsByIds(List<Integer> ids, @Suspended AsyncResponse asyncResponse) {
+    if (ids == null || ids.isEmpty()) {
+      throw new BadRequestException("at least one id is required");
+    }
+    if (ids.size() > MAX_BATCH_SIZE) {
+      throw new BadRequestException("at most " + MAX_BATCH_SIZE + " ids can be requested at once");
+    }
+    if (ids.contains(null)) {
+      throw new BadRequestException("ids must not be null");
+    }
+    Set<Integer> requested = new LinkedHashSet<>(ids);
+    dbBulkhead.execute(asyncResponse, () -> findBatch(requested));
+  }
+
+  /**
+   * <p>
+   *     Filters cars by exact {@code make}, {@code model} and {@code color}, and by a model year
+   *     range. {@code modelYear} is shorthand for an equal {@code minModelYear} and
+   *     {@code maxModelYear}. {@code sort} is a comma separated list of {@code id}, {@code make},
+   *     {@code model}, {@code modelYear} and {@code color}, each optionally prefixed with {@code -}
+   *     for descending order, for example {@code sort=-modelYear,make}.
+   * </p>
+   */
+  @GET
+  @Path("/filter")
+  public void filterCars(@QueryParam("make") String make,
+                         @QueryParam("model") String model,
+                         @QueryParam("color") String color,
+                         @QueryParam("modelYear") Integer modelYear,
+                         @QueryParam("minModelYear") Integer minModelYear,
+                         @QueryParam("maxModelYear") Integer maxModelYear,
+                         @QueryParam("sort") String sort,
+                         @QueryParam("limit") @DefaultValue("50") int limit,
+                         @Suspended AsyncResponse asyncResponse) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      throw new BadRequestException("limit must be between 1 and " + MAX_PAGE_SIZE);
+    }
+    if (modelYear != null) {
+      minModelYear = modelYear;
+      maxModelYear = modelYear;
+    }
+    CarFilter filter = new CarFilter(make, model, color, toYear(minModelYear), toYear(maxModelYear),
+        parseSort(sort), limit);
+    dbBulkhead.execute(asyncResponse, () -> carRepository.filterCars(filter));
+  }
+
+  /**
+   * <p>
+   *     Full-text search over the car descriptions, answered from the in-memory
+   *     {@link CarSearchIndex}. {@code q} is split into words; with {@code op=and} (the default) a
+   *     car must contain every word, with {@code op=or} any of them. Cars are returned best match
+   *     first, ranked by TF-IDF. While the index is still loading the search is answered from the
+   *     database, unranked, see {@link CarSearchIndex#searchDatabase(String, boolean, int)}.
+   * </p>
+   */
+  @GET
+  @Path("/search")
+  public void searchCars(@QueryParam("q") String query,
+                         @QueryParam("op") @DefaultValue("and") String op,
+                         @QueryParam("limit") @DefaultValue("20") int limit,
+                         @Suspended AsyncResponse asyncResponse) {
+    if (query == null || query.isBlank()) {
+      throw new BadRequestException("q is required");
+    }
+    if (!"and".equalsIgnoreCase(op) && !"or".equalsIgnoreCase(op)) {
+      throw new BadRequestException("op must be and or or");
+    }
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      throw new BadRequestException("limit must be between 1 and " + MAX_PAGE_SIZE);
+    }
+    boolean matchAll = "and".equalsIgnoreCase(op);
+    if (!carSearchIndex.isReady()) {
+      dbBulkhead.execute(asyncResponse, () -> carSearchIndex.searchDatabase(query, matchAll, limit));
+      return;
+    }
+    List<InvertedIndex.Hit> hits = carSearchIndex.search(query, matchAll, limit);
+    if (hits.isEmpty()) {
+      asyncResponse.resume(List.of());
+      return;
+    }
+    dbBulkhead.execute(asyncResponse, () -> loadHits(hits));
+  }
+
+  /**
+   * <p>
+   *     Creates a car from a body without an id. The id is allocated by the server; the response
+   *     is {@code 201 Created} with the car, its {@code Location} and its {@code ETag}.
+   * </p>
+   */
+  @POST
+  public void createCar(Car car, @Context UriInfo uriInfo, @Context HttpHeaders headers,
+                        @Suspended AsyncResponse asyncResponse) {
+    validate(car, null);
+    boolean smile = SmileProvider.prefersSmile(headers.getAcceptableMediaTypes());
+    dbBulkhead.execute(asyncResponse, () -> {
+      Car created = carRepository.createCar(car);
+      carChangeMonitor.carsWritten();
+      URI location = uriInfo.getAbsolutePathBuilder().path(created.getId().toString()).build();
+      return Response.created(location)
+          .entity(created)
+          .tag(variantTag(carTag(created.getId(), created.getVersion()), smile))
+          .build();
+    });
+  }
+
+  /**
+   * <p>
+   *     Creates many cars in one transaction, see {@link CarRepository#createCars(List)}. The body
+   *     is a JSON array of cars without ids; the response lists the allocated ids in the same order.
+   * </p>
+   */
+  @POST
+  @Path("/bulk")
+  public void createCars(List<Car> cars, @Suspended AsyncResponse asyncResponse) {
+    if (cars == null || cars.isEmpty()) {
+      throw new BadRequestException("at least one car is required");
+    }
+    if (cars.size() > MAX_BATCH_SIZE) {
+      throw new BadRequestException("at most " + MAX_BATCH_SIZE + " cars can be created at once");
+    }
+    cars.forEach(car -> validate(car, null));
+    dbBulkhead.execute(asyncResponse, () -> {
+      List<Integer> ids = carRepository.createCars(cars);
+      carChangeMonitor.carsWritten();
+      return Response.status(Response.Status.CREATED).entity(ids).build();
+    });
+  }
+
+  /**
+   * <p>
+   *     Imports cars from a CSV upload with the header
+   *     {@code id,make,model,model_year,color,description}. The body is streamed into a Postgres
+   *     {@code COPY}, see {@link CarImportRepository}, so the memory used does not depend on the
+   *     size of the upload. Rows with an empty id create a car, rows with the id of an existing car
+   *     update it. The response summarizes the import and lists the first rejected rows. A body
+   *     the server cannot parse is answered with {@code 400}, an import that violates a constraint
+   *     of the table with {@code 409}, each with the reason reported by the database.
+   * </p>
+   * <p>
+   *     Unlike the other methods an import does not run on the {@link DbBulkhead}: it takes as long
+   *     as the upload does, which the bulkhead deadline is not meant for. Only a few imports run at
+   *     a time, see {@link DbBulkhead#runImport}, and further ones are answered with {@code 503}.
+   * </p>
+   */
+  @POST
+  @Path("/import")
+  @Consumes(TEXT_CSV)
+  public CarImportResult importCsv(InputStream body) {
+    try {
+      return imported(dbBulkhead.runImport(() -> carImportRepository.importCsv(body)));
+    } catch (CarImportFormatException e) {
+      throw new BadRequestException("the body is not CSV with the header "
+          + String.join(",", CarCsv.COLUMNS) + ": " + e.getMessage(), e);
+    } catch (DataIntegrityViolationException e) {
+      throw importConflict(e);
+    }
+  }
+
+  /**
+   * <p>
+   *     Imports cars from newline delimited JSON, one car object per line, with the same semantics
+   *     as the CSV import.
+   * </p>
+   */
+  @POST
+  @Path("/import")
+  @Consumes(APPLICATION_NDJSON)
+  public CarImportResult importNdjson(InputStream body) {
+    try {
+      return imported(dbBulkhead.runImport(() -> carImportRepository.importNdjson(body)));
+    } catch (CarImportFormatException e) {
+      throw new BadRequestException("the body cannot be imported: " + e.getMessage(), e);
+    } catch (DataIntegrityViolationException e) {
+      throw importConflict(e);
+    } catch (UncheckedIOException e) {
+      if (e.getCause() instanceof JsonProcessingException) {
+        throw new BadRequestException("the body is not newline delimited JSON objects", e);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * <p>
+   *     Replaces the properties of a car. With an {@code If-Match} header carrying the
+   *     {@code ETag} of the car the update only succeeds if the car has not changed since, and is
+   *     answered with {@code 412 Precondition Failed} otherwise.
+   * </p>
+   */
+  @PUT
+  @Path("/{id}")
+  public void updateCar(@PathParam("id") Integer id,
+                        @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                        Car changes,
+                        @Context HttpHeaders headers,
+                        @Suspended AsyncResponse asyncResponse) {
+    validate(changes, id);
+    Long expectedVersion = expectedVersion(id, ifMatch);
+    boolean smile = SmileProvider.prefersSmile(headers.getAcceptableMediaTypes());
+    dbBulkhead.execute(asyncResponse, () -> {
+      Car car;
+      try {
+        car = carRepository.updateCar(id, expectedVersion, changes);
+      } catch (OptimisticLockingFailureException e) {
+        return Response.status(Response.Status.PRECONDITION_FAILED).build();
+      }
+      if (car == null) {
+        throw new NotFoundException();
+      }
+      carChangeMonitor.carsWritten();
+      return Response.ok(car)
+          .tag(variantTag(carTag(car.getId(), car.getVersion()), smile))
+          .build();
+    });
+  }
+
+  static EntityTag carTag(Integer id, Long version) {
+    return new EntityTag(id + "-" + version);
+  }
+
+  /**
+   * @return the tag of the Smile representation of an entity, which differs from the JSON one
+   */
+  static EntityTag variantTag(EntityTag tag, boolean smile) {
+    return smile ? new EntityTag(tag.getValue() + SMILE_TAG_SUFFIX) : tag;
+  }
+
+  static EntityTag listTag(String fingerprint, List<CarField> projection) {
+    return new EntityTag("cars-" + fingerprint + (projection == null ? "" : "-"
+        + projection.stream().map(CarField::getAttribute).collect(Collectors.joining("."))));
+  }
+
+  /**
+   * @return whether the {@code Accept-Encoding} header allows a gzip response
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parameters = coding.split(";");
+      String name = parameters[0].trim();
+      if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+        continue;
+      }
+      boolean refused = false;
+      for (int i = 1; i < parameters.length; i++) {
+        String parameter = parameters[i].trim().replace(" ", "");
+        refused |= parameter.matches("(?i)q=0(\\.0*)?");
+      }
+      return !refused;
+    }
+    return false;
+  }
+
+  /**
+   * @return the fields to select in declaration order, always including the id, or {@code null}
+   *         if the whole car was requested
+   */
+  static List<CarField> parseFields(String fields) {
+    if (fields == null || fields.isBlank()) {
+      return null;
+    }
+    Set<CarField> selected = EnumSet.of(CarField.ID);
+    for (String name : fields.split(",")) {
+      try {
+        selected.add(CarField.fromAttribute(name.trim()));
+      } catch (IllegalArgumentException e) {
+        throw new BadRequestException(e.getMessage());
+      }
+    }
+    return List.copyOf(selected);
+  }
+
+  static List<CarFilter.Order> parseSort(String sort) {
+    List<CarFilter.Order> orders = new ArrayList<>();
+    if (sort == null || sort.isBlank()) {
+      return orders;
+    }
+    for (String name : sort.split(",")) {
+      String attribute = name.trim();
+      boolean ascending = !attribute.startsWith("-");
+      CarField field;
+      try {
+        field = CarField.fromAttribute(ascending ? attribute : attribute.substring(1));
+      } catch (IllegalArgumentException e) {
+        throw new BadRequestException(e.getMessage());
+      }
+      if (field == CarField.DESCRIPTION) {
+        throw new BadRequestException("cars cannot be sorted by description");
+      }
+      orders.add(new CarFilter.Order(field, ascending));
+    }
+    return orders;
+  }
+
+  /**
+   * @return the row version named by the {@code If-Match} header, or {@code null} if the update is
+   *         unconditional
+   */
+  static Long expectedVersion(Integer id, String ifMatch) {
+    if (ifMatch == null || ifMatch.trim().equals("*")) {
+      return null;
+    }
+    try {
+      String value = RuntimeDelegate.getInstance().createHeaderDelegate(EntityTag.class)
+          .fromString(ifMatch.trim()).getValue();
+      if (value.endsWith(SMILE_TAG_SUFFIX)) {
+        // the Smile and the JSON representation of a car have the same row version
+        value = value.substring(0, value.length() - SMILE_TAG_SUFFIX.length());
+      }
+      String prefix = id + "-";
+      if (value.startsWith(prefix)) {
+        return Long.valueOf(value.substring(prefix.length()));
+      }
+    } catch (IllegalArgumentException e) {
+      // not a tag this resource issued, which can never match
+    }
+    throw new WebApplicationException(Response.Status.PRECONDITION_FAILED);
+  }
+
+  private static void validate(Car car, Integer id) {
+    if (car == null) {
+      throw new BadRequestException("a car is required");
+    }
+    if (car.getId() != null && !car.getId().equals(id)) {
+      throw new BadRequestException(id == null ? "the id of a new car is assigned by the server"
+          : "the id of the car cannot be changed");
+    }
+    requireText("make", car.getMake(), 100);
+    requireText("model", car.getModel(), 100);
+    requireText("color", car.getColor(), 40);
+    requireText("description", car.getDescription(), Integer.MAX_VALUE);
+    if (car.getModelYear() == null) {
+      throw new BadRequestException("modelYear is required");
+    }
+    toYear(car.getModelYear().getValue());
+  }
+
+  private static void requireText(String field, String value, int maxLength) {
+    if (value == null || value.isBlank()) {
+      throw new BadRequestException(field + " is required");
+    }
+    if (value.length() > maxLength) {
+      throw new BadRequestException(field + " must be at most " + maxLength + " characters");
+    }
+  }
+
+  private static Year toYear(Integer year) {
+    if (year == null) {
+      return null;
+    }
+    // model_year is a four digit column that the YearConverter maps to a Short
+    if (year < 0 || year > 9999) {
+      throw new BadRequestException("invalid model year: " + year);
+    }
+    return Year.of(year);
+  }
+
+  private static ClientErrorException importConflict(DataIntegrityViolationException e) {
+    // The records were valid, but applying them clashed with the cars table
+    return new ClientErrorException("the import violates a constraint of the cars table: "
+        + e.getMostSpecificCause().getMessage(), Response.Status.CONFLICT, e);
+  }
+
+  private CarImportResult imported(CarImportResult result) {
+    if (result.inserted() > 0 || result.updated() > 0) {
+      carChangeMonitor.carsWritten();
+    }
+    return result;
+  }
+
+  private Response fromSnapshot(CarListSnapshot.Snapshot snapshot, String acceptEncoding,
+                                Request request) {
+    // The gzipped body is a different representation and so gets a tag of its own
+    boolean gzip = acceptsGzip(acceptEncoding);
+    EntityTag tag = gzip ? new EntityTag(snapshot.tag().getValue() + "-gzip") : snapshot.tag();
+    ResponseBuilder response = request.evaluatePreconditions(tag);
+    if (response == null) {
+      response = gzip ? Response.ok(snapshot.gzip()).encoding("gzip") : Response.ok(snapshot.json());
+    }
+    return response.tag(tag)
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING)
+        .build();
+  }
+
+  private Response streamAll(List<CarField> projection, boolean smile, Request request) {
+    // The fingerprint is read before the cars are streamed so the tag can only ever be older than
+    // the body, which at worst costs a client one extra full response.
+    EntityTag tag = variantTag(listTag(carRepository.listFingerprint(), projection), smile);
+    ResponseBuilder notModified = request.evaluatePreconditions(tag);
+    if (notModified != null) {
+      return notModified.build();
+    }
+    StreamingOutput body = output -> {
+      ObjectMapper mapper = smile ? smileProvider.mapper() : objectMapper;
+      try (JsonGenerator generator = mapper.createGenerator(output)) {
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartArray();
+        if (projection == null) {
+          carRepository.streamAllCars(car -> writeValue(generator, car));
+        } else {
+          carRepository.streamCarFields(projection, row -> writeValue(generator, row));
+        }
+        generator.writeEndArray();
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    };
+    return Response.ok(body, smile ? SmileProvider.APPLICATION_SMILE_TYPE
+        : MediaType.APPLICATION_JSON_TYPE).tag(tag).build();
+  }
+
+  private Response findCar(Integer id, String ifNoneMatch, boolean smile, Request request) {
+    if (ifNoneMatch != null) {
+      Long version = carRepository.findCarVersion(id).orElseThrow(NotFoundException::new);
+      ResponseBuilder notModified =
+          request.evaluatePreconditions(variantTag(carTag(id, version), smile));
+      if (notModified != null) {
+        return notModified.build();
+      }
+    }
     Car car = carRepository.findCarById(id);
-    return Response.ok(car).build();
+    if (car == null) {
+      throw new NotFoundException();
+    }
+    return Response.ok(car)
+        .tag(variantTag(carTag(car.getId(), car.getVersion()), smile))
+        .build();
+  }
+
+  private CarBatch findBatch(Set<Integer> requested) {
+    Map<Integer, Car> found = carRepository.findCarsByIds(requested).stream()
+        .collect(Collectors.toMap(Car::getId, Function.identity()));
+    List<Car> cars = new ArrayList<>(found.size());
+    List<Integer> missing = new ArrayList<>();
+    for (Integer id : requested) {
+      Car car = found.get(id);
+      if (car != null) {
+        cars.add(car);
+      } else {
+        missing.add(id);
+      }
+    }
+    return new CarBatch(cars, missing);
+  }
+
+  private List<Car> loadHits(List<InvertedIndex.Hit> hits) {
+    Map<Integer, Car> found = carRepository.findCarsByIds(
+            hits.stream().map(InvertedIndex.Hit::carId).collect(Collectors.toList())).stream()
+        .collect(Collectors.toMap(Car::getId, Function.identity()));
+    // A car deleted since the last refresh of the index is simply left out
+    return hits.stream()
+        .map(hit -> found.get(hit.carId()))
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  private static void validatePage(int limit, int after) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      throw new BadRequestException("limit must be between 1 and " + MAX_PAGE_SIZE);
+    }
+    if (after < 0) {
+      throw new BadRequestException("after must not be negative");
+    }
+  }
+
+  private Response findPage(int limit, int after, List<CarField> projection, UriInfo uriInfo) {
+    // Read one extra row to find out whether there is a next page without a count query
+    if (projection == null) {
+      return page(carRepository.listCarsAfter(after, limit + 1), limit, CarView::id, uriInfo);
+    }
+    return page(carRepository.listCarFieldsAfter(projection, after, limit + 1), limit,
+        row -> (Integer) row.get(CarField.ID.getAttribute()), uriInfo);
+  }
+
+  private <T> Response page(List<T> rows, int limit, Function<T, Integer> idOf, UriInfo uriInfo) {
+    if (rows.size() <= limit) {
+      return Response.ok(rows).build();
+    }
+    List<T> page = rows.subList(0, limit);
+    Link next = Link.fromUriBuilder(uriInfo.getRequestUriBuilder()
+            .replaceQueryParam("limit", limit)
+            .replaceQueryParam("after", idOf.apply(page.get(limit - 1))))
+        .rel("next")
+        .build();
+    return Response.ok(page).links(next).build();
+  }
+
+  private void writeValue(JsonGenerator generator, Object value) {
+    try {
+      generator.writeObject(value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 }
@@ -0,0 +1,110 @@
+package com.example.awscloud.resources;
+
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.ext.MessageBodyReader;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ *     Reads and writes entities as Jackson Smile, a binary encoding of the JSON data model, for
+ *     clients that send {@code Accept: application/x-jackson-smile}. Smile refers back to a
+ *     property name, and to a short string value, that was already written instead of repeating
+ *     it, so a listing of cars carries every property name only once. Numbers are written in binary
+ *     and strings need no escaping, which makes it cheaper to parse than JSON as well.
+ * </p>
+ * <p>
+ *     The mapper is a copy of the application {@link ObjectMapper} and serializes exactly the same
+ *     properties, so Smile and JSON responses decode to the same values.
+ * </p>
+ */
+@Component
+@Provider
+@Produces(SmileProvider.APPLICATION_SMILE)
+@Consumes(SmileProvider.APPLICATION_SMILE)
+public class SmileProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+  public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+
+  public static final MediaType APPLICATION_SMILE_TYPE = MediaType.valueOf(APPLICATION_SMILE);
+
+  private final ObjectMapper smileMapper;
+
+  public SmileProvider(ObjectMapper objectMapper) {
+    SmileFactory factory = SmileFactory.builder()
+        // the container owns the entity streams
+        .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+        .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+        // property names are shared by default; values such as makes and colors repeat as often
+        .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+        .build();
+    this.smileMapper = objectMapper.copyWith(factory);
+  }
+
+  /**
+   * @return the mapper used for Smile, for resources that stream a body through a generator
+   */
+  public ObjectMapper mapper() {
+    return smileMapper;
+  }
+
+  /**
+   * @return whether Smile is the most preferred of the media types the client accepts that this
+   *         application can produce
+   */
+  static boolean prefersSmile(List<MediaType> acceptable) {
+    for (MediaType type : acceptable) {
+      if (type.isCompatible(APPLICATION_SMILE_TYPE) && !type.isWildcardSubtype()) {
+        return true;
+      }
+      if (type.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations,
+                            MediaType mediaType) {
+    return smileMapper.canDeserialize(smileMapper.constructType(genericType));
+  }
+
+  @Override
+  public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations,
+                         MediaType mediaType, MultivaluedMap<String, String> httpHeaders,
+                         InputStream entityStream) throws IOException {
+    return smileMapper.readValue(entityStream, smileMapper.constructType(genericType));
+  }
+
+  @Override
+  public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations,
+                             MediaType mediaType) {
+    // byte arrays and streamed bodies are already encoded and left to the built-in writers
+    return !byte[].class.equals(type) && !StreamingOutput.class.isAssignableFrom(type)
+        && smileMapper.canSerialize(type);
+  }
+
+  @Override
+  public void writeTo(Object value, Class<?> type, Type genericType, Annotation[] annotations,
+                      MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+                      OutputStream entityStream) throws IOException {
+    smileMapper.writerFor(smileMapper.constructType(genericType)).writeValue(entityStream, value);
+  }
+}
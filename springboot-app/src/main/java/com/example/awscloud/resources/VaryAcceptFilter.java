@@ -0,0 +1,56 @@
+package com.example.awscloud.resources;
+
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * <p>
+ *     Adds {@code Accept} to the {@code Vary} header of every response of a resource method that
+ *     produces more than one media type, such as JSON or Smile, so that a shared cache does not
+ *     answer a Smile client with a cached JSON body or the other way round. A {@code Vary} header
+ *     set by the method itself, like the {@code Accept-Encoding} of a gzipped listing, is kept.
+ * </p>
+ */
+@Provider
+public class VaryAcceptFilter implements ContainerResponseFilter {
+
+  @Context
+  private ResourceInfo resourceInfo;
+
+  @Override
+  public void filter(ContainerRequestContext requestContext,
+                     ContainerResponseContext responseContext) {
+    if (!negotiated(resourceInfo.getResourceMethod(), resourceInfo.getResourceClass())) {
+      return;
+    }
+    List<Object> vary = responseContext.getHeaders().get(HttpHeaders.VARY);
+    if (vary != null) {
+      for (Object value : vary) {
+        for (String field : String.valueOf(value).split(",")) {
+          if (field.trim().equalsIgnoreCase(HttpHeaders.ACCEPT) || field.trim().equals("*")) {
+            return;
+          }
+        }
+      }
+    }
+    responseContext.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+  }
+
+  private static boolean negotiated(Method method, Class<?> resourceClass) {
+    if (method == null) {
+      // not matched to a resource method, like a 404 for an unknown path
+      return false;
+    }
+    Produces produces = method.isAnnotationPresent(Produces.class)
+        ? method.getAnnotation(Produces.class) : resourceClass.getAnnotation(Produces.class);
+    return produces != null && produces.value().length > 1;
+  }
+}
@@ -0,0 +1,184 @@
+package com.example.awscloud.search;
+
+import com.example.awscloud.config.SchedulingConfig;
+import com.example.awscloud.model.Car;
+import com.example.awscloud.repository.CarRepository;
+import com.example.awscloud.repository.CarsChangedEvent;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ *     Full-text search over car descriptions, answered from an in-memory {@link InvertedIndex}
+ *     instead of an {@code ILIKE} scan in the database.
+ * </p>
+ * <p>
+ *     The index is bulk loaded in the background once the application is ready, so a slow or
+ *     failing database neither delays nor aborts startup; a load that fails is logged and retried
+ *     on the next {@link CarsChangedEvent}, which the first successful poll of the
+ *     {@link com.example.awscloud.repository.CarChangeMonitor} always publishes. Until the index is
+ *     loaded, {@link #isReady()} is {@code false} and searches are answered from the database
+ *     with {@link #searchDatabase(String, boolean, int)} instead.
+ * </p>
+ * <p>
+ *     The index is refreshed on every {@link CarsChangedEvent}. A refresh
+ *     only reads the id and row version of every car, loads the cars that are new or changed and
+ *     swaps in a new immutable index. Searches read the current index through a volatile field, so
+ *     they never wait for a refresh and always see a consistent snapshot.
+ * </p>
+ */
+@Component
+public class CarSearchIndex {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CarSearchIndex.class);
+
+  private final CarRepository carRepository;
+
+  private final TaskScheduler taskScheduler;
+
+  private final ReentrantLock refreshLock = new ReentrantLock();
+
+  private volatile InvertedIndex index = InvertedIndex.empty();
+
+  private volatile boolean ready;
+
+  public CarSearchIndex(CarRepository carRepository,
+                        @Qualifier(SchedulingConfig.CARS_CHANGE_SCHEDULER)
+                        TaskScheduler taskScheduler) {
+    this.carRepository = carRepository;
+    this.taskScheduler = taskScheduler;
+  }
+
+  /**
+   * @param query free text
+   * @param matchAll whether every term has to match (AND) or any term (OR)
+   * @param limit the maximum number of hits
+   * @return the best matching cars, best first
+   */
+  public List<InvertedIndex.Hit> search(String query, boolean matchAll, int limit) {
+    return index.search(query, matchAll, limit);
+  }
+
+  /**
+   * <p>
+   *     Answers a search from the database while the index is not loaded. The descriptions are
+   *     prefiltered with {@code LIKE} on every term and then matched word by word, so the hits are
+   *     the ones the index would find, but in primary key order instead of ranked, and at the cost
+   *     of a scan of the table.
+   * </p>
+   * @param query free text
+   * @param matchAll whether every term has to match (AND) or any term (OR)
+   * @param limit the maximum number of hits
+   * @return the matching cars, in primary key order
+   */
+  public List<Car> searchDatabase(String query, boolean matchAll, int limit) {
+    Set<String> terms = new LinkedHashSet<>();
+    InvertedIndex.tokenize(query, terms::add);
+    if (terms.isEmpty()) {
+      return List.of();
+    }
+    return carRepository.searchDescriptions(terms, matchAll, limit, car -> {
+      Set<String> words = new LinkedHashSet<>();
+      InvertedIndex.tokenize(car.getDescription(), words::add);
+      return matchAll ? words.containsAll(terms) : terms.stream().anyMatch(words::contains);
+    });
+  }
+
+  /**
+   * @return whether the index has been loaded and can answer searches
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * @return the number of cars in the index
+   */
+  public int size() {
+    return index.size();
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    taskScheduler.schedule(() -> {
+      refreshLock.lock();
+      try {
+        if (!ready) {
+          rebuild();
+        }
+      } catch (RuntimeException e) {
+        LOGGER.warn("search index could not be loaded, searching the database until it is", e);
+      } finally {
+        refreshLock.unlock();
+      }
+    }, Instant.now());
+  }
+
+  @EventListener(CarsChangedEvent.class)
+  public void refresh() {
+    refreshLock.lock();
+    try {
+      InvertedIndex current = index;
+      if (!ready) {
+        rebuild();
+        return;
+      }
+      List<Integer> changed = new ArrayList<>();
+      BitSet present = new BitSet();
+      carRepository.streamCarVersions((id, version) -> {
+        present.set(id);
+        if (!current.contains(id, version)) {
+          changed.add(id);
+        }
+      });
+      List<Integer> removed = new ArrayList<>();
+      for (int id : current.carIds()) {
+        if (!present.get(id)) {
+          removed.add(id);
+        }
+      }
+      if (changed.isEmpty() && removed.isEmpty()) {
+        return;
+      }
+      if (changed.size() > current.size() / 2) {
+        // Cheaper to stream the table once than to load most of it by id
+        rebuild();
+        return;
+      }
+      List<InvertedIndex.Document> upserts = new ArrayList<>(changed.size());
+      for (Car car : carRepository.findCarsByIds(changed)) {
+        upserts.add(new InvertedIndex.Document(car.getId(), car.getVersion(), car.getDescription()));
+      }
+      index = current.apply(upserts, removed);
+      LOGGER.debug("search index refreshed, {} cars changed, {} removed", upserts.size(),
+          removed.size());
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private void rebuild() {
+    long start = System.nanoTime();
+    InvertedIndex.Builder builder = InvertedIndex.builder();
+    carRepository.streamCarDescriptions(car ->
+        builder.add(car.id(), car.version(), car.description()));
+    InvertedIndex built = builder.build();
+    index = built;
+    ready = true;
+    LOGGER.info("search index loaded {} cars and {} terms in {} ms, about {} KiB", built.size(),
+        built.termCount(), (System.nanoTime() - start) / 1_000_000,
+        built.memoryFootprintBytes() / 1024);
+  }
+}
@@ -0,0 +1,124 @@
+package com.example.awscloud.search;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     A minimal open addressing hash map from {@code int} to {@code int}, used by the
+ *     {@link InvertedIndex} to find the document of a car without boxing a million keys. Keys must
+ *     not be negative. Not thread safe; the index only mutates private copies.
+ * </p>
+ */
+final class IntIntMap {
+
+  private static final int FREE = -1;
+
+  private int[] keys;
+
+  private int[] values;
+
+  private int size;
+
+  IntIntMap(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+    keys = new int[capacity];
+    values = new int[capacity];
+    Arrays.fill(keys, FREE);
+  }
+
+  private IntIntMap(IntIntMap other) {
+    keys = other.keys.clone();
+    values = other.values.clone();
+    size = other.size;
+  }
+
+  IntIntMap copy() {
+    return new IntIntMap(this);
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return the value of the key, or {@code missing} if the key is not present
+   */
+  int get(int key, int missing) {
+    int mask = keys.length - 1;
+    for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+      int current = keys[slot];
+      if (current == key) {
+        return values[slot];
+      }
+      if (current == FREE) {
+        return missing;
+      }
+    }
+  }
+
+  void put(int key, int value) {
+    if ((size + 1) * 2 > keys.length) {
+      grow();
+    }
+    int mask = keys.length - 1;
+    for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+      int current = keys[slot];
+      if (current == key) {
+        values[slot] = value;
+        return;
+      }
+      if (current == FREE) {
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return;
+      }
+    }
+  }
+
+  void remove(int key) {
+    int mask = keys.length - 1;
+    int slot = mix(key) & mask;
+    while (keys[slot] != key) {
+      if (keys[slot] == FREE) {
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    // Shift the following entries of the probe sequence back so no tombstones are needed
+    int gap = slot;
+    for (int next = (gap + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+      int home = mix(keys[next]) & mask;
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        keys[gap] = keys[next];
+        values[gap] = values[next];
+        gap = next;
+      }
+    }
+    keys[gap] = FREE;
+    size--;
+  }
+
+  long memoryFootprintBytes() {
+    return 2L * keys.length * Integer.BYTES;
+  }
+
+  private void grow() {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new int[oldKeys.length * 2];
+    values = new int[oldValues.length * 2];
+    Arrays.fill(keys, FREE);
+    size = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != FREE) {
+        put(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  private static int mix(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
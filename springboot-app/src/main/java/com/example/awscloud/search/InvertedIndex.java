@@ -0,0 +1,535 @@
+package com.example.awscloud.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ *     An immutable in-memory inverted index over car descriptions. Every car is a document with a
+ *     dense ordinal; each term maps to a posting list of the ordinals that contain it, kept as a
+ *     sorted {@code int[]} with a parallel {@code byte[]} of term frequencies. Because instances are
+ *     never modified, readers can search a snapshot without any locking while a refresh builds the
+ *     next one with {@link #apply(Collection, Collection)}.
+ * </p>
+ * <p>
+ *     Updates do not rewrite the existing posting lists: the previous document of a changed car is
+ *     marked as deleted and the new version is appended with a fresh ordinal, so only the lists of
+ *     the terms of the changed cars are copied. Once more than a quarter of the ordinals are deleted
+ *     the index is compacted.
+ * </p>
+ */
+public final class InvertedIndex {
+
+  private static final double COMPACTION_THRESHOLD = 0.25;
+
+  private static final int MIN_TOKEN_LENGTH = 2;
+
+  /** {@code 1 + ln tf} for every term frequency a posting can hold. */
+  private static final float[] WEIGHTS = new float[Byte.MAX_VALUE + 1];
+
+  static {
+    for (int frequency = 1; frequency < WEIGHTS.length; frequency++) {
+      WEIGHTS[frequency] = 1 + (float) Math.log(frequency);
+    }
+  }
+
+  private static final InvertedIndex EMPTY =
+      new InvertedIndex(Map.of(), new int[0], new long[0], new BitSet(), new IntIntMap(0), 0);
+
+  private final Map<String, Postings> terms;
+
+  private final int[] carIds;
+
+  private final long[] versions;
+
+  private final BitSet deleted;
+
+  private final IntIntMap ordinals;
+
+  private final int liveCount;
+
+  private InvertedIndex(Map<String, Postings> terms, int[] carIds, long[] versions, BitSet deleted,
+                        IntIntMap ordinals, int liveCount) {
+    this.terms = terms;
+    this.carIds = carIds;
+    this.versions = versions;
+    this.deleted = deleted;
+    this.ordinals = ordinals;
+    this.liveCount = liveCount;
+  }
+
+  public static InvertedIndex empty() {
+    return EMPTY;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return the number of cars in the index
+   */
+  public int size() {
+    return liveCount;
+  }
+
+  /**
+   * @return the number of distinct terms in the index
+   */
+  public int termCount() {
+    return terms.size();
+  }
+
+  /**
+   * @return whether the index holds the given version of the car
+   */
+  public boolean contains(int carId, long version) {
+    int ordinal = ordinals.get(carId, -1);
+    return ordinal >= 0 && versions[ordinal] == version;
+  }
+
+  /**
+   * @return the ids of the cars in the index
+   */
+  public int[] carIds() {
+    int[] ids = new int[liveCount];
+    int i = 0;
+    for (int ordinal = deleted.nextClearBit(0); ordinal < carIds.length;
+         ordinal = deleted.nextClearBit(ordinal + 1)) {
+      ids[i++] = carIds[ordinal];
+    }
+    return ids;
+  }
+
+  /**
+   * <p>
+   *     Searches the index and returns the best matching cars, best first. Documents are scored
+   *     with the sum over the matched query terms of {@code (1 + ln tf) * ln(1 + N / df)}.
+   * </p>
+   * @param query free text, tokenized the same way as the descriptions
+   * @param matchAll {@code true} to only return cars that contain every term (AND), {@code false}
+   *                 to return cars that contain any term (OR)
+   * @param limit the maximum number of hits
+   * @return up to {@code limit} hits, highest score first
+   */
+  public List<Hit> search(String query, boolean matchAll, int limit) {
+    Set<String> queryTerms = new LinkedHashSet<>();
+    tokenize(query, queryTerms::add);
+    List<Postings> lists = new ArrayList<>(queryTerms.size());
+    for (String term : queryTerms) {
+      Postings postings = terms.get(term);
+      if (postings != null) {
+        lists.add(postings);
+      } else if (matchAll) {
+        return List.of();
+      }
+    }
+    if (lists.isEmpty() || limit < 1) {
+      return List.of();
+    }
+    TopHits top = new TopHits(limit);
+    if (matchAll) {
+      searchAll(lists, top);
+    } else {
+      searchAny(lists, top);
+    }
+    return top.toHits(carIds);
+  }
+
+  private void searchAll(List<Postings> lists, TopHits top) {
+    lists.sort(Comparator.comparingInt(postings -> postings.docs.length));
+    Postings shortest = lists.get(0);
+    int[] cursors = new int[lists.size()];
+    float[] idfs = idfs(lists);
+    candidates:
+    for (int i = 0; i < shortest.docs.length; i++) {
+      int doc = shortest.docs[i];
+      if (deleted.get(doc)) {
+        continue;
+      }
+      float score = weight(shortest.freqs[i]) * idfs[0];
+      for (int l = 1; l < lists.size(); l++) {
+        Postings postings = lists.get(l);
+        int position = advance(postings.docs, cursors[l], doc);
+        cursors[l] = position;
+        if (position == postings.docs.length) {
+          break candidates;
+        }
+        if (postings.docs[position] != doc) {
+          continue candidates;
+        }
+        score += weight(postings.freqs[position]) * idfs[l];
+      }
+      top.offer(doc, score);
+    }
+  }
+
+  private void searchAny(List<Postings> lists, TopHits top) {
+    // Term at a time: every posting is visited once, in order, and its weight accumulated per
+    // document, which is much cheaper than merging the lists document by document.
+    float[] idfs = idfs(lists);
+    float[] scores = new float[carIds.length];
+    for (int l = 0; l < lists.size(); l++) {
+      Postings postings = lists.get(l);
+      for (int i = 0; i < postings.docs.length; i++) {
+        scores[postings.docs[i]] += weight(postings.freqs[i]) * idfs[l];
+      }
+    }
+    for (int doc = 0; doc < scores.length; doc++) {
+      if (scores[doc] > 0 && !deleted.get(doc)) {
+        top.offer(doc, scores[doc]);
+      }
+    }
+  }
+
+  private float[] idfs(List<Postings> lists) {
+    float[] idfs = new float[lists.size()];
+    for (int l = 0; l < idfs.length; l++) {
+      idfs[l] = (float) Math.log(1 + (double) Math.max(liveCount, 1) / lists.get(l).docs.length);
+    }
+    return idfs;
+  }
+
+  private static float weight(byte frequency) {
+    return WEIGHTS[frequency];
+  }
+
+  /**
+   * @return the position of the first element at or after {@code from} that is not less than
+   *         {@code target}, found by galloping and then binary search
+   */
+  private static int advance(int[] docs, int from, int target) {
+    int bound = 1;
+    while (from + bound < docs.length && docs[from + bound] < target) {
+      bound <<= 1;
+    }
+    int low = from + (bound >> 1);
+    int high = Math.min(from + bound, docs.length - 1);
+    if (low >= docs.length || docs[high] < target) {
+      return docs.length;
+    }
+    int position = Arrays.binarySearch(docs, low, high + 1, target);
+    return position >= 0 ? position : -position - 1;
+  }
+
+  /**
+   * <p>
+   *     Returns a new index in which the given cars have been added or replaced and the removed
+   *     cars are gone. This index is not modified and can still be searched.
+   * </p>
+   * @param upserts the new or changed cars
+   * @param removedCarIds the ids of the cars that no longer exist
+   * @return the updated index
+   */
+  public InvertedIndex apply(Collection<Document> upserts, Collection<Integer> removedCarIds) {
+    BitSet newDeleted = (BitSet) deleted.clone();
+    IntIntMap newOrdinals = ordinals.copy();
+    int newLiveCount = liveCount;
+    for (int carId : removedCarIds) {
+      int ordinal = newOrdinals.get(carId, -1);
+      if (ordinal >= 0) {
+        newDeleted.set(ordinal);
+        newOrdinals.remove(carId);
+        newLiveCount--;
+      }
+    }
+    int[] newCarIds = Arrays.copyOf(carIds, carIds.length + upserts.size());
+    long[] newVersions = Arrays.copyOf(versions, versions.length + upserts.size());
+    Map<String, PostingsBuilder> additions = new HashMap<>();
+    int ordinal = carIds.length;
+    for (Document document : upserts) {
+      int previous = newOrdinals.get(document.carId(), -1);
+      if (previous >= 0) {
+        newDeleted.set(previous);
+      } else {
+        newLiveCount++;
+      }
+      newOrdinals.put(document.carId(), ordinal);
+      newCarIds[ordinal] = document.carId();
+      newVersions[ordinal] = document.version();
+      addDocument(additions, ordinal, document.text());
+      ordinal++;
+    }
+    Map<String, Postings> newTerms = new HashMap<>(terms);
+    additions.forEach((term, added) -> newTerms.merge(term, added.build(), Postings::concat));
+    InvertedIndex updated =
+        new InvertedIndex(newTerms, newCarIds, newVersions, newDeleted, newOrdinals, newLiveCount);
+    if (newDeleted.cardinality() > COMPACTION_THRESHOLD * newCarIds.length) {
+      return updated.compact();
+    }
+    return updated;
+  }
+
+  /**
+   * @return a copy of this index without deleted documents, with ordinals renumbered densely
+   */
+  InvertedIndex compact() {
+    int[] remap = new int[carIds.length];
+    int[] newCarIds = new int[liveCount];
+    long[] newVersions = new long[liveCount];
+    IntIntMap newOrdinals = new IntIntMap(liveCount);
+    int next = 0;
+    for (int ordinal = 0; ordinal < carIds.length; ordinal++) {
+      if (deleted.get(ordinal)) {
+        remap[ordinal] = -1;
+      } else {
+        remap[ordinal] = next;
+        newCarIds[next] = carIds[ordinal];
+        newVersions[next] = versions[ordinal];
+        newOrdinals.put(carIds[ordinal], next);
+        next++;
+      }
+    }
+    Map<String, Postings> newTerms = new HashMap<>(terms.size() * 4 / 3 + 1);
+    terms.forEach((term, postings) -> {
+      Postings remapped = postings.remap(remap);
+      if (remapped.docs.length > 0) {
+        newTerms.put(term, remapped);
+      }
+    });
+    return new InvertedIndex(newTerms, newCarIds, newVersions, new BitSet(), newOrdinals, liveCount);
+  }
+
+  /**
+   * @return an estimate of the heap retained by the index, in bytes
+   */
+  public long memoryFootprintBytes() {
+    long bytes = (long) carIds.length * Integer.BYTES + (long) versions.length * Long.BYTES
+        + deleted.size() / 8 + ordinals.memoryFootprintBytes();
+    for (Map.Entry<String, Postings> entry : terms.entrySet()) {
+      // hash map node, term string and the two arrays with their headers
+      bytes += 32 + 40 + entry.getKey().length() + 2 * 16
+          + (long) entry.getValue().docs.length * (Integer.BYTES + 1);
+    }
+    return bytes;
+  }
+
+  /**
+   * <p>
+   *     Splits text into lower case runs of letters and digits. Single character tokens are
+   *     dropped.
+   * </p>
+   */
+  static void tokenize(String text, TokenSink sink) {
+    if (text == null) {
+      return;
+    }
+    StringBuilder token = new StringBuilder();
+    for (int i = 0; i <= text.length(); i++) {
+      char c = i < text.length() ? text.charAt(i) : ' ';
+      if (Character.isLetterOrDigit(c)) {
+        token.append(Character.toLowerCase(c));
+      } else if (token.length() > 0) {
+        if (token.length() >= MIN_TOKEN_LENGTH) {
+          sink.accept(token.toString());
+        }
+        token.setLength(0);
+      }
+    }
+  }
+
+  private static void addDocument(Map<String, PostingsBuilder> postings, int ordinal, String text) {
+    Map<String, int[]> frequencies = new HashMap<>();
+    tokenize(text, term -> frequencies.computeIfAbsent(term, t -> new int[1])[0]++);
+    frequencies.forEach((term, frequency) ->
+        postings.computeIfAbsent(term, t -> new PostingsBuilder()).add(ordinal, frequency[0]));
+  }
+
+  @FunctionalInterface
+  interface TokenSink {
+    void accept(String token);
+  }
+
+  /**
+   * @param carId the id of the car
+   * @param version the row version of the car that was indexed
+   * @param text the text to index
+   */
+  public record Document(int carId, long version, String text) {
+  }
+
+  /**
+   * @param carId the id of the matching car
+   * @param score the relevance of the car, higher is better
+   */
+  public record Hit(int carId, float score) {
+  }
+
+  /**
+   * Collects the documents of a full load, see {@link InvertedIndex#builder()}.
+   */
+  public static final class Builder {
+
+    private final Map<String, PostingsBuilder> postings = new HashMap<>();
+
+    private int[] carIds = new int[1024];
+
+    private long[] versions = new long[1024];
+
+    private int size;
+
+    private Builder() {
+    }
+
+    public Builder add(int carId, long version, String text) {
+      if (size == carIds.length) {
+        carIds = Arrays.copyOf(carIds, size * 2);
+        versions = Arrays.copyOf(versions, size * 2);
+      }
+      carIds[size] = carId;
+      versions[size] = version;
+      addDocument(postings, size, text);
+      size++;
+      return this;
+    }
+
+    public InvertedIndex build() {
+      Map<String, Postings> terms = new HashMap<>(postings.size() * 4 / 3 + 1);
+      postings.forEach((term, builder) -> terms.put(term, builder.build()));
+      postings.clear();
+      IntIntMap ordinals = new IntIntMap(size);
+      for (int ordinal = 0; ordinal < size; ordinal++) {
+        ordinals.put(carIds[ordinal], ordinal);
+      }
+      return new InvertedIndex(terms, Arrays.copyOf(carIds, size), Arrays.copyOf(versions, size),
+          new BitSet(), ordinals, size);
+    }
+  }
+
+  /**
+   * A posting list: ascending document ordinals and their term frequencies, capped at 127.
+   */
+  private record Postings(int[] docs, byte[] freqs) {
+
+    Postings concat(Postings other) {
+      int[] newDocs = Arrays.copyOf(docs, docs.length + other.docs.length);
+      byte[] newFreqs = Arrays.copyOf(freqs, freqs.length + other.freqs.length);
+      System.arraycopy(other.docs, 0, newDocs, docs.length, other.docs.length);
+      System.arraycopy(other.freqs, 0, newFreqs, freqs.length, other.freqs.length);
+      return new Postings(newDocs, newFreqs);
+    }
+
+    Postings remap(int[] remap) {
+      int[] newDocs = new int[docs.length];
+      byte[] newFreqs = new byte[docs.length];
+      int size = 0;
+      for (int i = 0; i < docs.length; i++) {
+        int doc = remap[docs[i]];
+        if (doc >= 0) {
+          newDocs[size] = doc;
+          newFreqs[size] = freqs[i];
+          size++;
+        }
+      }
+      return new Postings(Arrays.copyOf(newDocs, size), Arrays.copyOf(newFreqs, size));
+    }
+  }
+
+  private static final class PostingsBuilder {
+
+    private int[] docs = new int[4];
+
+    private byte[] freqs = new byte[4];
+
+    private int size;
+
+    void add(int doc, int frequency) {
+      if (size == docs.length) {
+        docs = Arrays.copyOf(docs, size * 2);
+        freqs = Arrays.copyOf(freqs, size * 2);
+      }
+      docs[size] = doc;
+      freqs[size] = (byte) Math.min(frequency, Byte.MAX_VALUE);
+      size++;
+    }
+
+    Postings build() {
+      return new Postings(Arrays.copyOf(docs, size), Arrays.copyOf(freqs, size));
+    }
+  }
+
+  /**
+   * A bounded min-heap of the best scoring documents, kept in primitive arrays.
+   */
+  private static final class TopHits {
+
+    private final int[] docs;
+
+    private final float[] scores;
+
+    private int size;
+
+    TopHits(int limit) {
+      docs = new int[limit];
+      scores = new float[limit];
+    }
+
+    void offer(int doc, float score) {
+      if (size < docs.length) {
+        docs[size] = doc;
+        scores[size] = score;
+        siftUp(size++);
+      } else if (score > scores[0]) {
+        docs[0] = doc;
+        scores[0] = score;
+        siftDown(0);
+      }
+    }
+
+    List<Hit> toHits(int[] carIds) {
+      List<Hit> hits = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        hits.add(new Hit(carIds[docs[i]], scores[i]));
+      }
+      hits.sort(Comparator.comparingDouble(Hit::score).reversed().thenComparingInt(Hit::carId));
+      return hits;
+    }
+
+    private void siftUp(int i) {
+      while (i > 0) {
+        int parent = (i - 1) / 2;
+        if (scores[parent] <= scores[i]) {
+          return;
+        }
+        swap(i, parent);
+        i = parent;
+      }
+    }
+
+    private void siftDown(int i) {
+      while (true) {
+        int smallest = i;
+        int left = 2 * i + 1;
+        int right = left + 1;
+        if (left < size && scores[left] < scores[smallest]) {
+          smallest = left;
+        }
+        if (right < size && scores[right] < scores[smallest]) {
+          smallest = right;
+        }
+        if (smallest == i) {
+          return;
+        }
+        swap(i, smallest);
+        i = smallest;
+      }
+    }
+
+    private void swap(int a, int b) {
+      int doc = docs[a];
+      docs[a] = docs[b];
+      docs[b] = doc;
+      float score = scores[a];
+      scores[a] = scores[b];
+      scores[b] = score;
+    }
+  }
+}
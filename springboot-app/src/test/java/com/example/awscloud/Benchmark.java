@@ -0,0 +1,119 @@
+package com.example.awscloud;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ *     The harness of the tests tagged {@code benchmark}: runs a task a number of times to warm up,
+ *     then measures each of a number of runs, and reports the results through the logger of the
+ *     benchmark. Run them with {@code ./gradlew benchmark}.
+ * </p>
+ */
+public final class Benchmark {
+
+  private final Logger logger;
+
+  /**
+   * @param benchmark the test class, which names the logger the results are reported to
+   */
+  public Benchmark(Class<?> benchmark) {
+    this.logger = LoggerFactory.getLogger(benchmark);
+  }
+
+  /**
+   * @param warmup the number of runs that are not measured
+   * @param iterations the number of runs that are measured
+   * @return the time each measured run took
+   */
+  public Timings time(int warmup, int iterations, Task task) throws Exception {
+    for (int i = 0; i < warmup; i++) {
+      task.run();
+    }
+    long[] nanos = new long[iterations];
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      task.run();
+      nanos[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(nanos);
+    return new Timings(nanos);
+  }
+
+  /**
+   * @param warmup the number of runs that are not measured
+   * @param iterations the number of runs that are measured
+   * @return the median of the bytes the current thread allocated per measured run
+   */
+  public long allocatedBytes(int warmup, int iterations, Task task) throws Exception {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    for (int i = 0; i < warmup; i++) {
+      task.run();
+    }
+    long thread = Thread.currentThread().getId();
+    long[] allocated = new long[iterations];
+    for (int i = 0; i < iterations; i++) {
+      long before = threads.getThreadAllocatedBytes(thread);
+      task.run();
+      allocated[i] = threads.getThreadAllocatedBytes(thread) - before;
+    }
+    Arrays.sort(allocated);
+    return allocated[iterations / 2];
+  }
+
+  /**
+   * Reports one line of results, formatted with {@link String#format(String, Object...)}.
+   */
+  public void report(String format, Object... args) {
+    logger.info(String.format(format, args));
+  }
+
+  /**
+   * A run of the benchmark.
+   */
+  @FunctionalInterface
+  public interface Task {
+
+    void run() throws Exception;
+  }
+
+  /**
+   * The times of the measured runs, in ascending order.
+   */
+  public static final class Timings {
+
+    private final long[] nanos;
+
+    private Timings(long[] nanos) {
+      this.nanos = nanos;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     */
+    public double millis(double percentile) {
+      return nanos(percentile) / 1_000_000.0;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     */
+    public double micros(double percentile) {
+      return nanos(percentile) / 1_000.0;
+    }
+
+    /**
+     * @return the measured runs per second
+     */
+    public double perSecond() {
+      return nanos.length / (Arrays.stream(nanos).sum() / 1e9);
+    }
+
+    private long nanos(double percentile) {
+      return nanos[(int) Math.min(nanos.length - 1, nanos.length * percentile / 100)];
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package com.example.awscloud.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.ws.rs.ServiceUnavailableException;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.TimeoutHandler;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+public class DbBulkheadTests {
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private DbBulkhead bulkhead;
+
+  private CountDownLatch release;
+
+  @BeforeEach
+  public void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    bulkhead = bulkhead(meterRegistry);
+    release = new CountDownLatch(1);
+  }
+
+  /**
+   * @return a bulkhead of one thread, one queued task, one stream and one import
+   */
+  protected DbBulkhead bulkhead(SimpleMeterRegistry meterRegistry) {
+    return bulkhead(Duration.ofSeconds(5), meterRegistry);
+  }
+
+  /**
+   * @return a bulkhead of one thread, one queued task, one stream and one import with the given
+   *         deadline
+   */
+  protected DbBulkhead bulkhead(Duration deadline, SimpleMeterRegistry meterRegistry) {
+    return new DbBulkhead(1, 1, deadline, Duration.ofSeconds(2), 1, 1, null, meterRegistry);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    release.countDown();
+    bulkhead.shutdown();
+  }
+
+  @Test
+  public void testResumesWithResult() {
+    AsyncResponse response = mock(AsyncResponse.class);
+    bulkhead.execute(response, () -> "result");
+    verify(response, timeout(1000)).resume("result");
+  }
+
+  @Test
+  public void testShedsWhenQueueIsFull() throws Exception {
+    CountDownLatch running = new CountDownLatch(1);
+    bulkhead.execute(mock(AsyncResponse.class), () -> {
+      running.countDown();
+      return release.await(5, TimeUnit.SECONDS);
+    });
+    assertTrue(running.await(1, TimeUnit.SECONDS));
+    bulkhead.execute(mock(AsyncResponse.class), () -> "queued");
+
+    AsyncResponse shed = mock(AsyncResponse.class);
+    bulkhead.execute(shed, () -> "shed");
+    ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+    verify(shed).resume(captor.capture());
+    assertEquals(503, captor.getValue().getStatus());
+    assertEquals("2", captor.getValue().getHeaderString(HttpHeaders.RETRY_AFTER));
+    assertEquals(1, meterRegistry.counter("db.bulkhead.rejected").count());
+  }
+
+  @Test
+  public void testDeadlineCancelsQueuedWork() throws Exception {
+    bulkhead.execute(mock(AsyncResponse.class), () -> release.await(5, TimeUnit.SECONDS));
+    AsyncResponse queued = mock(AsyncResponse.class);
+    AtomicBoolean ran = new AtomicBoolean();
+    bulkhead.execute(queued, () -> ran.getAndSet(true));
+
+    ArgumentCaptor<TimeoutHandler> handler = ArgumentCaptor.forClass(TimeoutHandler.class);
+    verify(queued).setTimeoutHandler(handler.capture());
+    handler.getValue().handleTimeout(queued);
+    ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+    verify(queued).resume(captor.capture());
+    assertEquals(503, captor.getValue().getStatus());
+
+    // the freed slot can be used again and the cancelled work never runs
+    AsyncResponse next = mock(AsyncResponse.class);
+    bulkhead.execute(next, () -> "next");
+    release.countDown();
+    verify(next, timeout(1000)).resume("next");
+    assertFalse(ran.get());
+    verify(queued).resume(any(Response.class));
+  }
+
+  @Test
+  public void testStreamsDoNotHoldTheBulkhead() throws Exception {
+    AsyncResponse streamed = mock(AsyncResponse.class);
+    CountDownLatch writing = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      writing.countDown();
+      return release.await(5, TimeUnit.SECONDS);
+    }).when(streamed).resume(any(Response.class));
+    StreamingOutput body = output -> { };
+    bulkhead.execute(streamed, () -> Response.ok(body).build());
+    assertTrue(writing.await(1, TimeUnit.SECONDS));
+
+    // the only bulkhead thread is free while the body is written, the only stream writer is not
+    AsyncResponse next = mock(AsyncResponse.class);
+    bulkhead.execute(next, () -> "next");
+    verify(next, timeout(1000)).resume("next");
+    AsyncResponse secondStream = mock(AsyncResponse.class);
+    bulkhead.execute(secondStream, () -> Response.ok(body).build());
+    verify(secondStream, after(200).never()).resume(any(Response.class));
+
+    // it waits for the writer instead of being shed
+    release.countDown();
+    ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+    verify(secondStream, timeout(1000)).resume(captor.capture());
+    assertEquals(200, captor.getValue().getStatus());
+  }
+
+  @Test
+  public void testStreamWaitsUntilDeadline() throws Exception {
+    bulkhead.shutdown();
+    bulkhead = bulkhead(Duration.ofMillis(300), meterRegistry);
+    AsyncResponse streamed = mock(AsyncResponse.class);
+    CountDownLatch writing = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      writing.countDown();
+      return release.await(5, TimeUnit.SECONDS);
+    }).when(streamed).resume(any(Response.class));
+    StreamingOutput body = output -> { };
+    bulkhead.execute(streamed, () -> Response.ok(body).build());
+    assertTrue(writing.await(1, TimeUnit.SECONDS));
+
+    AsyncResponse secondStream = mock(AsyncResponse.class);
+    when(secondStream.resume(any(Response.class))).thenReturn(true);
+    bulkhead.execute(secondStream, () -> Response.ok(body).build());
+    ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+    verify(secondStream, timeout(1000)).resume(captor.capture());
+    assertEquals(503, captor.getValue().getStatus());
+    // The timeout is counted once the resume has been accepted, after the call verified above
+    Counter timedOut = meterRegistry.counter("db.bulkhead.timed.out");
+    for (int i = 0; i < 100 && timedOut.count() == 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, timedOut.count());
+  }
+
+  @Test
+  public void testShedsImportsBeyondTheLimit() throws Exception {
+    CountDownLatch importing = new CountDownLatch(1);
+    Thread running = new Thread(() -> bulkhead.runImport(() -> {
+      importing.countDown();
+      try {
+        return release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    }));
+    running.start();
+    assertTrue(importing.await(1, TimeUnit.SECONDS));
+
+    ServiceUnavailableException e = assertThrows(ServiceUnavailableException.class,
+        () -> bulkhead.runImport(() -> "shed"));
+    assertEquals("2", e.getResponse().getHeaderString(HttpHeaders.RETRY_AFTER));
+    assertEquals(1, meterRegistry.counter("db.bulkhead.rejected").count());
+
+    release.countDown();
+    running.join(1000);
+    assertEquals("next", bulkhead.runImport(() -> "next"));
+  }
+}
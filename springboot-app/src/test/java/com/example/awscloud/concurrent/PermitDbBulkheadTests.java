@@ -0,0 +1,21 @@
+package com.example.awscloud.concurrent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>
+ *     Runs the {@link DbBulkheadTests} against the semaphore based bulkhead of the
+ *     {@code virtual-threads} profile. The build runs on Java 17, so a thread per task stands in
+ *     for the virtual threads.
+ * </p>
+ */
+public class PermitDbBulkheadTests extends DbBulkheadTests {
+
+  @Override
+  protected DbBulkhead bulkhead(Duration deadline, SimpleMeterRegistry meterRegistry) {
+    return new DbBulkhead(1, 1, deadline, Duration.ofSeconds(2), 1, 1,
+        Executors.newCachedThreadPool(), meterRegistry);
+  }
+}
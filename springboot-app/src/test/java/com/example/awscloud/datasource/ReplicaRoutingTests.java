@@ -0,0 +1,112 @@
+package com.example.awscloud.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.awscloud.repository.CarRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * <p>
+ *     Runs the application against two H2 databases: the primary holds the 1000 cars of
+ *     {@code data_h2.sql}, the replica a single car from {@code replica_h2.sql}. The primary is a
+ *     database of its own, so that cars written by other test classes do not show up here.
+ * </p>
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:routing;MODE=MYSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+    "demoapp.datasource.replica.url=jdbc:h2:mem:replica;MODE=MYSQL;DATABASE_TO_LOWER=TRUE;"
+        + "DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:replica_h2.sql'",
+    "demoapp.datasource.replica.lag-query=SELECT 0",
+    "demoapp.datasource.replica.hikari.maximum-pool-size=2"
+})
+public class ReplicaRoutingTests {
+
+  @Autowired
+  CarRepository repository;
+
+  @Autowired
+  EntityManager entityManager;
+
+  @Autowired
+  PlatformTransactionManager transactionManager;
+
+  @Autowired
+  ReplicaLagMonitor replicaLagMonitor;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @AfterEach
+  public void restoreReplica() {
+    replicaLagMonitor.check();
+  }
+
+  @Test
+  public void testReadOnlyTransactionsUseReplica() {
+    assertTrue(replicaLagMonitor.isAvailable());
+    assertEquals(1, repository.listAllCars().size());
+    assertEquals("replica", repository.listCarsAfter(0, 10).get(0).description());
+  }
+
+  @Test
+  public void testWritesUsePrimary() {
+    Long cars = new TransactionTemplate(transactionManager).execute(status ->
+        entityManager.createQuery("SELECT COUNT(c) FROM Car c", Long.class).getSingleResult());
+    assertEquals(1000L, cars);
+  }
+
+  @Test
+  public void testCacheIsFilledFromPrimary() {
+    assertTrue(replicaLagMonitor.isAvailable());
+    assertEquals("replica", repository.listCarsAfter(0, 1).get(0).description());
+    assertNotEquals("replica", repository.findCarById(1).getDescription());
+  }
+
+  @Test
+  public void testFallbackToPrimary() {
+    replicaLagMonitor.markUnavailable(new SQLException("replica down"));
+    assertFalse(replicaLagMonitor.isAvailable());
+    assertEquals(1000, repository.listAllCars().size());
+
+    replicaLagMonitor.check();
+    assertEquals(1, repository.listAllCars().size());
+  }
+
+  @Test
+  public void testLagTolerance() {
+    ReplicaLagMonitor lagging = new ReplicaLagMonitor(replicaLagMonitor.getReplica(), "SELECT 30",
+        Duration.ofSeconds(5), meterRegistry);
+    lagging.check();
+    assertFalse(lagging.isAvailable());
+    ReplicaLagMonitor tolerant = new ReplicaLagMonitor(replicaLagMonitor.getReplica(), "SELECT 30",
+        Duration.ofMinutes(1), meterRegistry);
+    tolerant.check();
+    assertTrue(tolerant.isAvailable());
+  }
+
+  @Test
+  public void testPoolMetersAreTaggedByRole() {
+    repository.listAllCars();
+    new TransactionTemplate(transactionManager).execute(status ->
+        entityManager.createQuery("SELECT COUNT(c) FROM Car c", Long.class).getSingleResult());
+    for (String role : new String[] { "primary", "replica" }) {
+      assertNotNull(meterRegistry.find("hikaricp.connections").tag("role", role).gauge(), role);
+    }
+    assertEquals(1.0, meterRegistry.get("db.replica.available").gauge().value());
+  }
+}
@@ -0,0 +1,99 @@
+package com.example.awscloud.resources;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.awscloud.model.Car;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "demoapp.cars.snapshot.enabled=true")
+public class CarListSnapshotTests {
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private CarListSnapshot carListSnapshot;
+
+  @BeforeEach
+  public void awaitSnapshot() throws InterruptedException {
+    // The first snapshot is built in the background once the application is ready
+    for (int i = 0; i < 100 && carListSnapshot.current().isEmpty(); i++) {
+      Thread.sleep(50);
+    }
+    assertTrue(carListSnapshot.current().isPresent());
+  }
+
+  @Test
+  public void testPlainSnapshot() throws Exception {
+    ResponseEntity<byte[]> entity = get(null, null);
+    assertEquals(HttpStatus.OK, entity.getStatusCode());
+    assertEquals(List.of(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING),
+        entity.getHeaders().getVary());
+    Car[] cars = objectMapper.readValue(entity.getBody(), Car[].class);
+    assertEquals(1000, cars.length);
+    assertEquals("Oldsmobile", cars[3].getMake());
+
+    ResponseEntity<byte[]> notModified = get(null, entity.getHeaders().getETag());
+    assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+  }
+
+  @Test
+  public void testGzipSnapshot() throws Exception {
+    ResponseEntity<byte[]> plain = get(null, null);
+    ResponseEntity<byte[]> entity = get("gzip, deflate", null);
+    assertEquals(HttpStatus.OK, entity.getStatusCode());
+    assertEquals("gzip", entity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    assertNotEquals(plain.getHeaders().getETag(), entity.getHeaders().getETag());
+    assertTrue(entity.getBody().length < plain.getBody().length / 2);
+    try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(entity.getBody()))) {
+      assertArrayEquals(plain.getBody(), input.readAllBytes());
+    }
+
+    ResponseEntity<byte[]> notModified = get("gzip", entity.getHeaders().getETag());
+    assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+  }
+
+  @Test
+  public void testAcceptsGzip() {
+    assertTrue(CarResource.acceptsGzip("gzip"));
+    assertTrue(CarResource.acceptsGzip("deflate, GZIP;q=0.5"));
+    assertTrue(CarResource.acceptsGzip("*"));
+    assertFalse(CarResource.acceptsGzip("gzip;q=0"));
+    assertFalse(CarResource.acceptsGzip("identity"));
+    assertFalse(CarResource.acceptsGzip(null));
+  }
+
+  private ResponseEntity<byte[]> get(String acceptEncoding, String etag) {
+    HttpHeaders headers = new HttpHeaders();
+    if (acceptEncoding != null) {
+      headers.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+    }
+    if (etag != null) {
+      headers.setIfNoneMatch(etag);
+    }
+    return restTemplate.exchange("/cars", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+  }
+}
@@ -0,0 +1,82 @@
+package com.example.awscloud.resources;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.awscloud.metrics.EndpointContext;
+import com.example.awscloud.metrics.EndpointContextFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+
+// metrics export, and with it the Prometheus endpoint, is off in tests unless asked for
+@AutoConfigureObservability
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class CarMetricsTests {
+
+  // A batch lookup loads Car entities, unlike the listings and the filter, which read CarViews
+  private static final String ENDPOINT = "POST /cars/batch";
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private EndpointContextFilter endpointContextFilter;
+
+  @LocalManagementPort
+  private int managementPort;
+
+  @Test
+  public void testRequestIsBrokenDown() {
+    ResponseEntity<String> entity =
+        restTemplate.postForEntity("/cars/batch", List.of(4, 5, 6), String.class);
+    assertEquals(HttpStatus.OK, entity.getStatusCode());
+
+    Timer repository = meterRegistry.get("cars.repository")
+        .tag("method", "findCarsByIds")
+        .tag("endpoint", ENDPOINT)
+        .timer();
+    assertTrue(repository.count() > 0);
+    assertTrue(meterRegistry.get("cars.hibernate.statements").tag("endpoint", ENDPOINT)
+        .counter().count() > 0);
+    assertTrue(meterRegistry.get("cars.hibernate.entity.loads").tag("endpoint", ENDPOINT)
+        .tag("entity", "Car").counter().count() >= 3);
+    assertTrue(meterRegistry.get("cars.serialization").tag("endpoint", ENDPOINT)
+        .timer().count() > 0);
+    assertEquals(entity.getBody().length(), meterRegistry.get("cars.response.size")
+        .tag("endpoint", ENDPOINT).summary().max());
+    assertTrue(meterRegistry.get("hikaricp.connections.acquire").timer().count() > 0);
+  }
+
+  @Test
+  public void testPrometheusScrape() {
+    restTemplate.getForEntity("/cars/filter?make=Oldsmobile&limit=5", String.class);
+    String scrape = restTemplate.getForObject(
+        "http://localhost:" + managementPort + "/actuator/prometheus", String.class);
+    assertTrue(scrape.contains("cars_repository_seconds_bucket"));
+    assertTrue(scrape.contains("cars_serialization_seconds_bucket"));
+    assertTrue(scrape.contains("hikaricp_connections_acquire_seconds_bucket"));
+  }
+
+  @Test
+  public void testEndpointIsClearedAfterRequest() throws Exception {
+    endpointContextFilter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(),
+        (request, response) -> EndpointContext.set(ENDPOINT));
+    assertEquals(EndpointContext.NONE, EndpointContext.get());
+  }
+}
@@ -0,0 +1,51 @@
+package com.example.awscloud.resources;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.awscloud.Benchmark;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * <p>
+ *     Compares payload size and latency of the full /cars listing with a make, model and year
+ *     projection. Run with {@code ./gradlew benchmark}.
+ * </p>
+ */
+@Tag("benchmark")
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class CarProjectionBenchmarkTests {
+
+  private static final int WARMUP = 50;
+
+  private static final int ITERATIONS = 500;
+
+  private final Benchmark benchmark = new Benchmark(CarProjectionBenchmarkTests.class);
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Test
+  public void compareFullListingWithProjection() throws Exception {
+    int full = measure("full listing:     ", "/cars");
+    int projected = measure("fields projection:", "/cars?fields=make,model,modelYear");
+    assertTrue(projected < full);
+  }
+
+  /**
+   * @return the size of the response body
+   */
+  private int measure(String name, String url) throws Exception {
+    int bytes = restTemplate.getForObject(url, byte[].class).length;
+    Benchmark.Timings timings = benchmark.time(WARMUP, ITERATIONS,
+        () -> restTemplate.getForObject(url, byte[].class));
+    benchmark.report("%s %,9d bytes, p50 %6.2f ms, p99 %6.2f ms", name, bytes, timings.millis(50),
+        timings.millis(99));
+    return bytes;
+  }
+}
@@ -1,22 +1,42 @@
 package com.example.awscloud.resources;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.example.awscloud.model.Car;
+import com.example.awscloud.model.CarBatch;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import java.io.IOException;
 import java.time.Year;
+import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
 
+@ActiveProfiles("test")
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 public class CarResourceTests {
 
   @Autowired
   private TestRestTemplate restTemplate;
 
+  @Autowired
+  private SmileProvider smileProvider;
+
   @Test
   public void testFindCarById() {
     ResponseEntity<Car> entity = this.restTemplate.getForEntity("/cars/4", Car.class);
@@ -26,4 +46,243 @@ public class CarResourceTests {
     assertEquals("Bravada", car.getModel());
     assertEquals(Year.parse("2003"), car.getModelYear());
   }
+
+  @Test
+  public void testFindAll() {
+    ResponseEntity<Car[]> entity = this.restTemplate.getForEntity("/cars", Car[].class);
+    assertEquals(HttpStatus.OK, entity.getStatusCode());
+    assertEquals(1000, entity.getBody().length);
+    assertEquals("Oldsmobile", entity.getBody()[3].getMake());
+  }
+
+  @Test
+  public void testFindAllPaged() {
+    ResponseEntity<Car[]> entity = this.restTemplate.getForEntity("/cars?limit=50&after=100", Car[].class);
+    assertEquals(HttpStatus.OK, entity.getStatusCode());
+    assertEquals(50, entity.getBody().length);
+    assertEquals(101, entity.getBody()[0].getId());
+    String link = entity.getHeaders().getFirst(HttpHeaders.LINK);
+    assertTrue(link.contains("after=150"));
+    assertTrue(link.contains("rel=\"next\""));
+
+    ResponseEntity<Car[]> last = this.restTemplate.getForEntity("/cars?limit=50&after=990", Car[].class);
+    assertEquals(10, last.getBody().length);
+    assertNull(last.getHeaders().getFirst(HttpHeaders.LINK));
+  }
+
+  @Test
+  public void testFindAllPagedRejectsOversizedLimit() {
+    ResponseEntity<String> entity = this.restTemplate.getForEntity("/cars?limit=5000", String.class);
+    assertEquals(HttpStatus.BAD_REQUEST, entity.getStatusCode());
+  }
+
+  @Test
+  public void testFindUnknownCar() {
+    ResponseEntity<String> entity = this.restTemplate.getForEntity("/cars/100000", String.class);
+    assertEquals(HttpStatus.NOT_FOUND, entity.getStatusCode());
+  }
+
+  @Test
+  public void testConditionalGetCar() {
+    ResponseEntity<Car> entity = this.restTemplate.getForEntity("/cars/4", Car.class);
+    String etag = entity.getHeaders().getETag();
+    assertEquals("\"4-0\"", etag);
+
+    ResponseEntity<String> notModified = getIfNoneMatch("/cars/4", etag);
+    assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+    assertNull(notModified.getBody());
+
+    ResponseEntity<String> modified = getIfNoneMatch("/cars/4", "\"4-1\"");
+    assertEquals(HttpStatus.OK, modified.getStatusCode());
+  }
+
+  @Test
+  public void testConditionalGetAll() {
+    ResponseEntity<String> entity = this.restTemplate.getForEntity("/cars", String.class);
+    String etag = entity.getHeaders().getETag();
+    assertNotNull(etag);
+    assertEquals(HttpStatus.NOT_MODIFIED, getIfNoneMatch("/cars", etag).getStatusCode());
+  }
+
+  @Test
+  public void testFindCarsByIds() {
+    ResponseEntity<CarBatch> entity =
+        this.restTemplate.postForEntity("/cars/batch", List.of(9, 5, 1, 100000, 5), CarBatch.class);
+    assertEquals(HttpStatus.OK, entity.getStatusCode());
+    CarBatch batch = entity.getBody();
+    assertEquals(List.of(9, 5, 1), batch.cars().stream().map(Car::getId).toList());
+    assertEquals(List.of(100000), batch.missing());
+  }
+
+  @Test
+  public void testFindAllWithFields() {
+    ResponseEntity<List<Map<String, Object>>> entity = this.restTemplate.exchange(
+        "/cars?fields=make,model,modelYear&limit=10", HttpMethod.GET, null,
+        new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+    assertEquals(HttpStatus.OK, entity.getStatusCode());
+    Map<String, Object> car = entity.getBody().get(3);
+    assertEquals(List.of("id", "make", "model", "modelYear"), List.copyOf(car.keySet()));
+    assertEquals("Oldsmobile", car.get("make"));
+    assertFalse(car.containsKey("description"));
+
+    String full = this.restTemplate.getForObject("/cars", String.class);
+    String projected = this.restTemplate.getForObject("/cars?fields=make,model,modelYear", String.class);
+    assertTrue(projected.length() < full.length() / 2);
+  }
+
+  @Test
+  public void testFindAllWithUnknownField() {
+    ResponseEntity<String> entity = this.restTemplate.getForEntity("/cars?fields=price", String.class);
+    assertEquals(HttpStatus.BAD_REQUEST, entity.getStatusCode());
+  }
+
+  @Test
+  public void testFilterCars() {
+    ResponseEntity<Car[]> entity = this.restTemplate.getForEntity(
+        "/cars/filter?make=Oldsmobile&modelYear=2003&sort=-id&limit=5", Car[].class);
+    assertEquals(HttpStatus.OK, entity.getStatusCode());
+    for (Car car : entity.getBody()) {
+      assertEquals("Oldsmobile", car.getMake());
+      assertEquals(Year.of(2003), car.getModelYear());
+    }
+    ResponseEntity<String> invalid =
+        this.restTemplate.getForEntity("/cars/filter?sort=description", String.class);
+    assertEquals(HttpStatus.BAD_REQUEST, invalid.getStatusCode());
+  }
+
+  @Test
+  public void testSearchCars() {
+    ResponseEntity<Car[]> entity =
+        this.restTemplate.getForEntity("/cars/search?q=Pharetra Sollicitudin&limit=10", Car[].class);
+    assertEquals(HttpStatus.OK, entity.getStatusCode());
+    assertTrue(entity.getBody().length > 0);
+    for (Car car : entity.getBody()) {
+      assertTrue(car.getDescription().contains("pharetra"));
+      assertTrue(car.getDescription().contains("sollicitudin"));
+    }
+    Car[] any = this.restTemplate.getForObject("/cars/search?q=pharetra sollicitudin&op=or&limit=1000",
+        Car[].class);
+    assertTrue(any.length >= entity.getBody().length);
+
+    assertEquals(0, this.restTemplate.getForObject("/cars/search?q=zzzz", Car[].class).length);
+    ResponseEntity<String> missing = this.restTemplate.getForEntity("/cars/search", String.class);
+    assertEquals(HttpStatus.BAD_REQUEST, missing.getStatusCode());
+  }
+
+  @Test
+  public void testUpdateCarWithIfMatch() {
+    ResponseEntity<Car> current = this.restTemplate.getForEntity("/cars/17", Car.class);
+    Car car = current.getBody();
+    car.setColor("Green");
+    String etag = current.getHeaders().getETag();
+
+    ResponseEntity<Car> updated = put("/cars/17", car, etag, Car.class);
+    assertEquals(HttpStatus.OK, updated.getStatusCode());
+    assertEquals("Green", updated.getBody().getColor());
+    assertFalse(etag.equals(updated.getHeaders().getETag()));
+
+    ResponseEntity<String> stale = put("/cars/17", car, etag, String.class);
+    assertEquals(HttpStatus.PRECONDITION_FAILED, stale.getStatusCode());
+    car.setId(null);
+    assertEquals(HttpStatus.NOT_FOUND, put("/cars/100000", car, null, String.class).getStatusCode());
+  }
+
+  @Test
+  public void testExpectedVersion() {
+    assertNull(CarResource.expectedVersion(17, null));
+    assertNull(CarResource.expectedVersion(17, "*"));
+    assertEquals(3L, CarResource.expectedVersion(17, "\"17-3\""));
+    assertEquals(3L, CarResource.expectedVersion(17, "W/\"17-3\""));
+    assertEquals(3L, CarResource.expectedVersion(17, "\"17-3-smile\""));
+    for (String other : List.of("\"18-3\"", "\"17-x\"", "17-3\"")) {
+      WebApplicationException e = assertThrows(WebApplicationException.class,
+          () -> CarResource.expectedVersion(17, other), other);
+      assertEquals(412, e.getResponse().getStatus());
+    }
+  }
+
+  @Test
+  public void testCreateCarValidation() {
+    Car withId = new Car(5000, "Volvo", "240", Year.of(1988), "Red", "brick");
+    assertEquals(HttpStatus.BAD_REQUEST,
+        this.restTemplate.postForEntity("/cars", withId, String.class).getStatusCode());
+    Car withoutMake = new Car(null, null, "240", Year.of(1988), "Red", "brick");
+    assertEquals(HttpStatus.BAD_REQUEST,
+        this.restTemplate.postForEntity("/cars/bulk", List.of(withoutMake), String.class)
+            .getStatusCode());
+  }
+
+  @Test
+  public void testFindAsSmile() throws IOException {
+    ResponseEntity<byte[]> car = getAsSmile("/cars/4");
+    assertEquals(HttpStatus.OK, car.getStatusCode());
+    assertEquals(SmileProvider.APPLICATION_SMILE, car.getHeaders().getContentType().toString());
+    assertEquals("\"4-0-smile\"", car.getHeaders().getETag());
+    assertEquals("Bravada", smileProvider.mapper().readValue(car.getBody(), Car.class).getModel());
+
+    ResponseEntity<byte[]> all = getAsSmile("/cars");
+    assertEquals(SmileProvider.APPLICATION_SMILE, all.getHeaders().getContentType().toString());
+    Car[] cars = smileProvider.mapper().readValue(all.getBody(), Car[].class);
+    assertEquals(1000, cars.length);
+    assertEquals(Year.parse("2003"), cars[3].getModelYear());
+    byte[] json = this.restTemplate.getForObject("/cars", byte[].class);
+    assertTrue(all.getBody().length < json.length);
+
+    ResponseEntity<byte[]> page = getAsSmile("/cars?limit=10");
+    assertEquals(10, smileProvider.mapper().readValue(page.getBody(), Car[].class).length);
+  }
+
+  @Test
+  public void testResponsesVaryByAccept() {
+    List<String> accept = List.of(HttpHeaders.ACCEPT);
+    assertEquals(accept, this.restTemplate.getForEntity("/cars/4", Car.class).getHeaders().getVary());
+    assertEquals(accept, getIfNoneMatch("/cars/4", "\"4-0\"").getHeaders().getVary());
+    assertEquals(accept, this.restTemplate.getForEntity("/cars", String.class).getHeaders().getVary());
+    assertEquals(accept,
+        this.restTemplate.getForEntity("/cars?limit=10", String.class).getHeaders().getVary());
+    assertEquals(accept, this.restTemplate.postForEntity("/cars/batch", List.of(4), String.class)
+        .getHeaders().getVary());
+    assertEquals(accept, this.restTemplate.getForEntity("/cars/filter?make=Oldsmobile", String.class)
+        .getHeaders().getVary());
+    assertEquals(accept, this.restTemplate.getForEntity("/cars/search?q=pharetra", String.class)
+        .getHeaders().getVary());
+    assertEquals(accept, getAsSmile("/cars/4").getHeaders().getVary());
+
+    // Car 17 is the one testUpdateCarWithIfMatch changes as well; no car is created, as the other
+    // tests count the cars
+    Car car = this.restTemplate.getForObject("/cars/17", Car.class);
+    ResponseEntity<Car> updated = put("/cars/17", car, null, Car.class);
+    assertEquals(HttpStatus.OK, updated.getStatusCode());
+    assertEquals(accept, updated.getHeaders().getVary());
+  }
+
+  @Test
+  public void testPrefersSmile() {
+    MediaType smile = SmileProvider.APPLICATION_SMILE_TYPE;
+    assertTrue(SmileProvider.prefersSmile(List.of(smile)));
+    assertTrue(SmileProvider.prefersSmile(List.of(smile, MediaType.APPLICATION_JSON_TYPE)));
+    assertFalse(SmileProvider.prefersSmile(List.of(MediaType.APPLICATION_JSON_TYPE, smile)));
+    assertFalse(SmileProvider.prefersSmile(List.of(MediaType.WILDCARD_TYPE)));
+    assertFalse(SmileProvider.prefersSmile(List.of()));
+  }
+
+  private <T> ResponseEntity<T> put(String url, Car car, String ifMatch, Class<T> type) {
+    HttpHeaders headers = new HttpHeaders();
+    if (ifMatch != null) {
+      headers.setIfMatch(ifMatch);
+    }
+    return this.restTemplate.exchange(url, HttpMethod.PUT, new HttpEntity<>(car, headers), type);
+  }
+
+  private ResponseEntity<byte[]> getAsSmile(String url) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.ACCEPT, SmileProvider.APPLICATION_SMILE);
+    return this.restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+  }
+
+  private ResponseEntity<String> getIfNoneMatch(String url, String etag) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setIfNoneMatch(etag);
+    return this.restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+  }
 }
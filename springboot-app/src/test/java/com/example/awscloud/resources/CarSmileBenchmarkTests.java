@@ -0,0 +1,100 @@
+package com.example.awscloud.resources;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.awscloud.Benchmark;
+import com.example.awscloud.model.Car;
+import com.example.awscloud.model.CarView;
+import com.example.awscloud.repository.CarRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * <p>
+ *     Compares JSON with Smile for the full /cars listing and a single car: bytes on the wire,
+ *     and the time the application mappers take to encode and decode them. Run with
+ *     {@code ./gradlew benchmark}.
+ * </p>
+ */
+@Tag("benchmark")
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class CarSmileBenchmarkTests {
+
+  private static final int WARMUP = 200;
+
+  private static final int ITERATIONS = 2000;
+
+  private final Benchmark benchmark = new Benchmark(CarSmileBenchmarkTests.class);
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Autowired
+  private CarRepository carRepository;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private SmileProvider smileProvider;
+
+  @Test
+  public void compareJsonWithSmile() throws Exception {
+    List<CarView> cars = carRepository.listAllCars();
+    Car car = carRepository.findCarById(4);
+
+    benchmark.report("/cars   on the wire: json %,9d bytes, smile %,9d bytes",
+        wireBytes("/cars", "application/json"), wireBytes("/cars", SmileProvider.APPLICATION_SMILE));
+    benchmark.report("/cars/4 on the wire: json %,9d bytes, smile %,9d bytes",
+        wireBytes("/cars/4", "application/json"),
+        wireBytes("/cars/4", SmileProvider.APPLICATION_SMILE));
+
+    Result json = measure(objectMapper, cars);
+    Result smile = measure(smileProvider.mapper(), cars);
+    report("1000 cars", json, smile);
+    report("one car", measure(objectMapper, car), measure(smileProvider.mapper(), car));
+    assertTrue(smile.bytes < json.bytes);
+  }
+
+  private int wireBytes(String url, String accept) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.ACCEPT, accept);
+    return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), byte[].class)
+        .getBody().length;
+  }
+
+  private Result measure(ObjectMapper mapper, Object value) throws Exception {
+    ObjectWriter writer = mapper.writerFor(mapper.constructType(value.getClass()));
+    ObjectReader reader = value instanceof List
+        ? mapper.readerFor(new TypeReference<List<Car>>() {})
+        : mapper.readerFor(Car.class);
+    byte[] encoded = writer.writeValueAsBytes(value);
+    Benchmark.Timings encode = benchmark.time(WARMUP, ITERATIONS,
+        () -> writer.writeValueAsBytes(value));
+    Benchmark.Timings decode = benchmark.time(WARMUP, ITERATIONS, () -> reader.readValue(encoded));
+    return new Result(encoded.length, encode.micros(50), decode.micros(50));
+  }
+
+  private void report(String name, Result json, Result smile) {
+    benchmark.report("%-9s json:  %,9d bytes, encode p50 %8.1f us, decode p50 %8.1f us",
+        name, json.bytes, json.encodeMicros, json.decodeMicros);
+    benchmark.report("%-9s smile: %,9d bytes, encode p50 %8.1f us, decode p50 %8.1f us",
+        name, smile.bytes, smile.encodeMicros, smile.decodeMicros);
+  }
+
+  private record Result(int bytes, double encodeMicros, double decodeMicros) {
+  }
+}
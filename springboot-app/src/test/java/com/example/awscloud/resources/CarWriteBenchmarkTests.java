@@ -0,0 +1,66 @@
+package com.example.awscloud.resources;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.example.awscloud.Benchmark;
+import com.example.awscloud.model.Car;
+import java.time.Year;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * <p>
+ *     Compares creating 10,000 cars one request at a time with a single bulk request, which is
+ *     written with JDBC batching and pooled id allocation. Run with {@code ./gradlew benchmark}.
+ * </p>
+ */
+@Tag("benchmark")
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class CarWriteBenchmarkTests {
+
+  private static final int ROWS = 10_000;
+
+  private final Benchmark benchmark = new Benchmark(CarWriteBenchmarkTests.class);
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Test
+  public void compareSingleWithBulkCreate() throws Exception {
+    int[] next = new int[1];
+    double single = benchmark.time(200, ROWS, () -> {
+      ResponseEntity<Car> created = restTemplate.postForEntity("/cars", car(next[0]++), Car.class);
+      assertEquals(HttpStatus.CREATED, created.getStatusCode());
+    }).perSecond();
+
+    List<Car> cars = cars(ROWS);
+    double bulk = benchmark.time(1, 1, () -> {
+      ResponseEntity<Integer[]> created =
+          restTemplate.postForEntity("/cars/bulk", cars, Integer[].class);
+      assertEquals(HttpStatus.CREATED, created.getStatusCode());
+      assertEquals(ROWS, created.getBody().length);
+    }).perSecond() * ROWS;
+
+    benchmark.report("single inserts: %,10.0f rows/s", single);
+    benchmark.report("bulk insert:    %,10.0f rows/s (%.1fx)", bulk, bulk / single);
+  }
+
+  private static List<Car> cars(int count) {
+    return IntStream.range(0, count).mapToObj(CarWriteBenchmarkTests::car).collect(Collectors.toList());
+  }
+
+  private static Car car(int i) {
+    return new Car(null, "Volvo", "24" + (i % 10), Year.of(1980 + i % 40), "Red",
+        "benchmark car " + i + " with a short description");
+  }
+}
@@ -0,0 +1,100 @@
+package com.example.awscloud.respository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.example.awscloud.repository.CarCsv;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class CarCsvTests {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  public void testNdjsonToCsv() throws IOException {
+    StringWriter csv = new StringWriter();
+    long rows = CarCsv.ndjsonToCsv(objectMapper, input("""
+        {"make":"Volvo","model":"240","modelYear":1988,"color":"Red","description":"a \\"brick\\", really"}
+        {"id":4,"make":"Oldsmobile","model":"Bravada","modelYear":"2003","color":"","description":null}
+
+        {"id":"x1","make":"Saab","extra":true,"description":"two\\nlines"}
+        """), csv);
+    assertEquals(3, rows);
+    assertEquals("""
+        ,"Volvo","240","1988","Red","a ""brick"", really"
+        "4","Oldsmobile","Bravada","2003","",
+        "x1","Saab",,,,"two
+        lines"
+        """, csv.toString());
+  }
+
+  @Test
+  public void testReadHeader() throws IOException {
+    InputStream csv = input("\uFEFFid,\"make\",model,model_year,color,description\r\n4,Volvo\n");
+    assertEquals(CarCsv.COLUMNS, CarCsv.readHeader(csv));
+    // the stream is left at the first record
+    assertEquals("4,Volvo\n", new String(csv.readAllBytes(), StandardCharsets.UTF_8));
+    assertEquals(List.of("id", "make", ""), CarCsv.readHeader(input("id,make,")));
+    assertEquals(List.of(), CarCsv.readHeader(input("")));
+    assertThrows(IllegalArgumentException.class,
+        () -> CarCsv.readHeader(input("x".repeat(2000))));
+  }
+
+  @Test
+  public void testNdjsonToCsvRejectsMalformedInput() {
+    assertThrows(JsonProcessingException.class,
+        () -> CarCsv.ndjsonToCsv(objectMapper, input("{\"make\":\"Volvo\"}\n[1, 2]\n"),
+            new StringWriter()));
+    assertThrows(JsonProcessingException.class,
+        () -> CarCsv.ndjsonToCsv(objectMapper, input("{\"make\":\"Volvo\"\n"), new StringWriter()));
+  }
+
+  @Test
+  public void testNdjsonToCsvStreams() throws IOException {
+    // A body far larger than any buffer is converted with constant memory
+    int cars = 200_000;
+    InputStream body = new InputStream() {
+      private final byte[] line = ("{\"make\":\"Volvo\",\"model\":\"240\",\"modelYear\":1988,"
+          + "\"color\":\"Red\",\"description\":\"brick\"}\n").getBytes(StandardCharsets.UTF_8);
+      private long position;
+
+      @Override
+      public int read() {
+        if (position >= (long) cars * line.length) {
+          return -1;
+        }
+        return line[(int) (position++ % line.length)];
+      }
+    };
+    long[] length = new long[1];
+    long rows = CarCsv.ndjsonToCsv(objectMapper, body, new Writer() {
+      @Override
+      public void write(char[] buffer, int offset, int count) {
+        length[0] += count;
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+    assertEquals(cars, rows);
+    assertEquals((long) cars * ",\"Volvo\",\"240\",\"1988\",\"Red\",\"brick\"\n".length(), length[0]);
+  }
+
+  private static InputStream input(String text) {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+  }
+}
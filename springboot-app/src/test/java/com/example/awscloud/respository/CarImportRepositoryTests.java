@@ -0,0 +1,93 @@
+package com.example.awscloud.respository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.awscloud.model.CarImportResult;
+import com.example.awscloud.repository.CarImportFormatException;
+import com.example.awscloud.repository.CarImportRepository;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * <p>
+ *     Runs the {@code COPY} imports against a Postgres database migrated with
+ *     {@code data-migration/sql}, such as the one of {@code docker-compose.yml}, given by
+ *     {@code DEMOAPP_TEST_POSTGRES_URL}, {@code DEMOAPP_TEST_POSTGRES_USER} and
+ *     {@code DEMOAPP_TEST_POSTGRES_PASSWORD}. Every test is rolled back. They are left out of
+ *     {@code ./gradlew test} and run with {@code ./gradlew postgresTest}, which fails without the
+ *     database instead of skipping them.
+ * </p>
+ */
+@Tag("postgres")
+@SpringBootTest(properties = {
+    "spring.datasource.url=${DEMOAPP_TEST_POSTGRES_URL}",
+    "spring.datasource.username=${DEMOAPP_TEST_POSTGRES_USER:appuser}",
+    "spring.datasource.password=${DEMOAPP_TEST_POSTGRES_PASSWORD:}"
+})
+@Transactional
+public class CarImportRepositoryTests {
+
+  private static final String HEADER = "id,make,model,model_year,color,description\n";
+
+  @Autowired
+  CarImportRepository carImportRepository;
+
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+
+  @Test
+  public void testImportCsv() {
+    StringBuilder csv = new StringBuilder(HEADER);
+    for (int i = 0; i < 120; i++) {
+      csv.append(",Volvo,240,1988,Red,imported by test\n");
+    }
+    csv.append("4,Oldsmobile,Bravada,2003,Black,repainted by test\n");
+    csv.append(",Saab,900,not a year,Red,imported by test\n");
+    long before = nextId();
+
+    CarImportResult result = carImportRepository.importCsv(input(csv.toString()));
+
+    assertEquals(new CarImportResult(122, 120, 1, 0, 1, List.of(122L)), result);
+    // three blocks of ids for 120 cars, the first car of the import starts the first block
+    assertEquals(before + 4 * 50, nextId());
+    Map<String, Object> ids = jdbcTemplate.queryForMap("SELECT MIN(id) AS min, MAX(id) AS max"
+        + " FROM demoapp.cars WHERE description = 'imported by test'");
+    assertEquals(before + 50, ((Number) ids.get("min")).longValue());
+    assertEquals(before + 50 + 119, ((Number) ids.get("max")).longValue());
+  }
+
+  @Test
+  public void testImportCsvWithWrongHeader() {
+    CarImportFormatException e = assertThrows(CarImportFormatException.class,
+        () -> carImportRepository.importCsv(input("id,make,model\n,Volvo,240\n")));
+    assertTrue(e.getMessage().contains("header"), e.getMessage());
+  }
+
+  @Test
+  public void testImportNdjson() {
+    CarImportResult result = carImportRepository.importNdjson(input("""
+        {"make":"Volvo","model":"240","modelYear":1988,"color":"Red","description":"imported by test"}
+        {"make":"Saab","model":"900","modelYear":1990,"color":"","description":"imported by test"}
+        """));
+    assertEquals(new CarImportResult(2, 1, 0, 0, 1, List.of(2L)), result);
+  }
+
+  private long nextId() {
+    return jdbcTemplate.queryForObject("SELECT nextval('demoapp.cars_id_seq')", Long.class);
+  }
+
+  private static InputStream input(String body) {
+    return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+  }
+}
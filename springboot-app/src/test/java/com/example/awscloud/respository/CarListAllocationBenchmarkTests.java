@@ -0,0 +1,92 @@
+package com.example.awscloud.respository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.awscloud.Benchmark;
+import com.example.awscloud.model.Car;
+import com.example.awscloud.repository.CarRepository;
+import jakarta.persistence.EntityManager;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * <p>
+ *     Measures the bytes allocated by one listing of every car on the path of an unpaged
+ *     {@code GET /cars}, {@link CarRepository#streamAllCars}: as managed entities streamed from a
+ *     cursor and detached one by one, the way it used to read them, as read-only entities, and as
+ *     the {@link com.example.awscloud.model.CarView}s it streams now. Run with
+ *     {@code ./gradlew benchmark}.
+ * </p>
+ */
+@Tag("benchmark")
+@ActiveProfiles("test")
+// A database of its own, so that the 1000 cars are not joined by those CarWriteBenchmarkTests adds
+@SpringBootTest(properties =
+    "spring.datasource.url=jdbc:h2:mem:allocation;MODE=MYSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+public class CarListAllocationBenchmarkTests {
+
+  private static final int WARMUP = 200;
+
+  private static final int ITERATIONS = 500;
+
+  private final Benchmark benchmark = new Benchmark(CarListAllocationBenchmarkTests.class);
+
+  @Autowired
+  CarRepository repository;
+
+  @Autowired
+  EntityManager entityManager;
+
+  @Autowired
+  PlatformTransactionManager transactionManager;
+
+  @Test
+  public void compareAllocationPerListing() throws Exception {
+    TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+    readOnly.setReadOnly(true);
+
+    long managed = allocatedPerCall(consumer -> readOnly.executeWithoutResult(status ->
+        streamEntities(false).forEach(car -> {
+          entityManager.detach(car);
+          consumer.accept(car);
+        })));
+    long readOnlyEntities = allocatedPerCall(consumer -> readOnly.executeWithoutResult(status ->
+        streamEntities(true).forEach(car -> {
+          entityManager.detach(car);
+          consumer.accept(car);
+        })));
+    long views = allocatedPerCall(consumer -> repository.streamAllCars(consumer::accept));
+
+    benchmark.report("managed entities:   %,12d bytes per listing", managed);
+    benchmark.report("read-only entities: %,12d bytes per listing", readOnlyEntities);
+    benchmark.report("CarView records:    %,12d bytes per listing", views);
+    assertTrue(views < managed);
+  }
+
+  private Stream<Car> streamEntities(boolean readOnly) {
+    return entityManager.createQuery("SELECT c FROM Car c ORDER BY c.id", Car.class)
+        .setHint(HibernateHints.HINT_FETCH_SIZE, 500)
+        .setHint(HibernateHints.HINT_READ_ONLY, readOnly)
+        .getResultStream();
+  }
+
+  private long allocatedPerCall(Consumer<Consumer<Object>> listing) throws Exception {
+    int[] count = new int[1];
+    Consumer<Object> counter = car -> count[0]++;
+    long allocated = benchmark.allocatedBytes(WARMUP, ITERATIONS, () -> {
+      count[0] = 0;
+      listing.accept(counter);
+    });
+    assertEquals(1000, count[0]);
+    return allocated;
+  }
+}
@@ -0,0 +1,96 @@
+package com.example.awscloud.respository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.awscloud.model.Car;
+import com.example.awscloud.repository.CarRepository;
+import com.example.awscloud.search.CarSearchIndex;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class CarRepositoryCacheTests {
+
+  @Autowired
+  CarRepository repository;
+
+  @Autowired
+  CacheManager cacheManager;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @Autowired
+  EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  CarSearchIndex carSearchIndex;
+
+  Statistics statistics;
+
+  @BeforeEach
+  public void setUp() throws InterruptedException {
+    // The search index loads in the background once the application is ready, and its query
+    // would be counted by the statistics below
+    for (int i = 0; i < 100 && !carSearchIndex.isReady(); i++) {
+      Thread.sleep(50);
+    }
+    assertTrue(carSearchIndex.isReady());
+    cacheManager.getCache(CarRepository.CARS_CACHE).clear();
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+  }
+
+  @Test
+  public void testConcurrentMissesRunOneQuery() throws Exception {
+    int threads = 16;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Car>> results = new ArrayList<>();
+    try {
+      for (int i = 0; i < threads * 10; i++) {
+        results.add(executor.submit(() -> {
+          start.await();
+          return repository.findCarById(4);
+        }));
+      }
+      start.countDown();
+      for (Future<Car> result : results) {
+        assertEquals("Oldsmobile", result.get().getMake());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(1, statistics.getPrepareStatementCount());
+    double hits = meterRegistry.get("cache.gets")
+        .tag("cache", CarRepository.CARS_CACHE)
+        .tag("result", "hit")
+        .functionCounter()
+        .count();
+    assertTrue(hits > 0);
+  }
+
+  @Test
+  public void testUnknownIdIsCached() {
+    assertNull(repository.findCarById(100_000));
+    assertNull(repository.findCarById(100_000));
+    assertEquals(1, statistics.getPrepareStatementCount());
+  }
+}
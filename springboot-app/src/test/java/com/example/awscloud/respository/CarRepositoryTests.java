@@ -1,30 +1,58 @@
 package com.example.awscloud.respository;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.example.awscloud.model.Car;
+import com.example.awscloud.model.CarDescription;
+import com.example.awscloud.model.CarField;
+import com.example.awscloud.model.CarFilter;
+import com.example.awscloud.model.CarView;
 import com.example.awscloud.repository.CarRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
 import java.time.Year;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.hibernate.Session;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureTestEntityManager;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 
 @DataJpaTest
 @AutoConfigureTestEntityManager
+@Import({CarRepository.class, CarRepositoryTests.StatementRecording.class})
 @ActiveProfiles("test")
 public class CarRepositoryTests {
 
   @Autowired
   CarRepository repository;
 
+  @Autowired
+  EntityManager entityManager;
+
   @Test
   public void testFindCarById() {
     Car car = repository.findCarById(4);
@@ -36,8 +64,203 @@ public class CarRepositoryTests {
 
   @Test
   public void testFindAll() {
-    List<Car> cars = repository.listAllCars();
+    List<CarView> cars = repository.listAllCars();
     assertNotNull(cars);
     assertEquals(1000, cars.size());
+    CarView car = cars.stream().filter(view -> view.id() == 4).findFirst().orElseThrow();
+    assertEquals(new CarView(4, "Oldsmobile", "Bravada", Year.of(2003), car.color(),
+        car.description()), car);
+  }
+
+  @Test
+  public void testStreamAllCars() {
+    List<Integer> ids = new ArrayList<>();
+    repository.streamAllCars(car -> ids.add(car.id()));
+    assertEquals(1000, ids.size());
+    for (int i = 1; i < ids.size(); i++) {
+      assertTrue(ids.get(i - 1) < ids.get(i));
+    }
+    assertEquals(0, entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+  }
+
+  @Test
+  public void testStreamCarDescriptions() {
+    List<CarDescription> descriptions = new ArrayList<>();
+    repository.streamCarDescriptions(descriptions::add);
+    assertEquals(1000, descriptions.size());
+    CarDescription car = descriptions.get(3);
+    assertEquals(4, car.id());
+    assertEquals(0L, car.version());
+    assertEquals(repository.findCarById(4).getDescription(), car.description());
+  }
+
+  @Test
+  public void testListCarsAfter() {
+    List<CarView> first = repository.listCarsAfter(0, 50);
+    assertEquals(50, first.size());
+    assertEquals(1, first.get(0).id());
+    List<CarView> next = repository.listCarsAfter(first.get(49).id(), 50);
+    assertEquals(51, next.get(0).id());
+    assertEquals(10, repository.listCarsAfter(990, 50).size());
+  }
+
+  @Test
+  public void testFindCarVersion() {
+    assertEquals(0L, repository.findCarVersion(4).orElseThrow());
+    assertTrue(repository.findCarVersion(100_000).isEmpty());
+  }
+
+  @Test
+  public void testListFingerprint() {
+    String initial = repository.listFingerprint();
+    assertEquals(initial, repository.listFingerprint());
+    Car car = repository.createCar(new Car(null, "Volvo", "240", Year.of(1988), "Red", "brick"));
+    String created = repository.listFingerprint();
+    assertNotEquals(initial, created);
+    repository.updateCar(car.getId(), null,
+        new Car(null, "Volvo", "240", Year.of(1988), "Blue", "brick"));
+    assertNotEquals(created, repository.listFingerprint());
+  }
+
+  @Test
+  public void testFindCarsByIds() {
+    // more ids than fit in one IN list chunk, a third of which do not exist
+    List<Integer> ids = IntStream.rangeClosed(1, 1500).boxed().collect(Collectors.toList());
+    List<Car> cars = repository.findCarsByIds(ids);
+    assertEquals(1000, cars.size());
+  }
+
+  @Test
+  public void testListCarFieldsAfter() {
+    List<Map<String, Object>> cars =
+        repository.listCarFieldsAfter(List.of(CarField.ID, CarField.MAKE, CarField.MODEL_YEAR), 3, 1);
+    assertEquals(1, cars.size());
+    assertEquals(Map.of("id", 4, "make", "Oldsmobile", "modelYear", Year.parse("2003")), cars.get(0));
+  }
+
+  @Test
+  public void testStreamCarFields() {
+    List<Map<String, Object>> cars = new ArrayList<>();
+    repository.streamCarFields(List.of(CarField.ID, CarField.COLOR), cars::add);
+    assertEquals(1000, cars.size());
+    assertEquals(List.of("id", "color"), List.copyOf(cars.get(0).keySet()));
+  }
+
+  @Test
+  public void testFilterCars() {
+    CarFilter filter = new CarFilter("Oldsmobile", null, null, Year.of(2000), Year.of(2005),
+        List.of(new CarFilter.Order(CarField.MODEL_YEAR, false)), 100);
+    List<CarView> cars = repository.filterCars(filter);
+    assertFalse(cars.isEmpty());
+    assertTrue(cars.stream().map(CarView::id).toList().contains(4));
+    for (int i = 0; i < cars.size(); i++) {
+      CarView car = cars.get(i);
+      assertEquals("Oldsmobile", car.make());
+      assertTrue(car.modelYear().getValue() >= 2000 && car.modelYear().getValue() <= 2005);
+      if (i > 0) {
+        assertTrue(cars.get(i - 1).modelYear().compareTo(car.modelYear()) >= 0);
+      }
+    }
+  }
+
+  @Test
+  public void testSearchDescriptions() {
+    List<Car> cars = repository.searchDescriptions(List.of("pharetra", "sollicitudin"), true, 5,
+        car -> true);
+    assertEquals(5, cars.size());
+    for (Car car : cars) {
+      assertTrue(car.getDescription().toLowerCase().contains("pharetra"));
+      assertTrue(car.getDescription().toLowerCase().contains("sollicitudin"));
+    }
+    assertTrue(cars.get(0).getId() < cars.get(4).getId());
+    assertTrue(repository.searchDescriptions(List.of("pharetra"), false, 5, car -> false).isEmpty());
+  }
+
+  @Test
+  public void testFilterPredicatesUseIndexes() {
+    assertUsesIndex(new CarFilter("Oldsmobile", "Bravada", null, null, null, List.of(), 10),
+        "idx_cars_make_model", "Oldsmobile", "Bravada", 10);
+    assertUsesIndex(new CarFilter(null, "Bravada", null, null, null, List.of(), 10),
+        "idx_cars_model", "Bravada", 10);
+    assertUsesIndex(new CarFilter(null, null, "Teal", null, null, List.of(), 10),
+        "idx_cars_color", "Teal", 10);
+    assertUsesIndex(new CarFilter(null, null, null, Year.of(2003), Year.of(2004), List.of(), 10),
+        "idx_cars_model_year", (short) 2003, (short) 2004, 10);
+  }
+
+  @Test
+  public void testCreateCar() {
+    Car car = repository.createCar(new Car(null, "Volvo", "240", Year.of(1988), "Red", "brick"));
+    assertNotNull(car.getId());
+    assertTrue(car.getId() > 1000);
+    assertEquals(0L, car.getVersion());
+  }
+
+  @Test
+  public void testCreateCars() {
+    List<Car> cars = IntStream.range(0, 120)
+        .mapToObj(i -> new Car(null, "Volvo", "24" + (i % 10), Year.of(1988), "Red", "car " + i))
+        .collect(Collectors.toList());
+    List<Integer> ids = repository.createCars(cars);
+    assertEquals(120, ids.size());
+    assertEquals(120, ids.stream().distinct().count());
+    assertEquals("car 119", repository.findCarById(ids.get(119)).getDescription());
+    assertEquals(1120, repository.listAllCars().size());
+  }
+
+  @Test
+  public void testUpdateCar() {
+    Car changes = new Car(null, "Oldsmobile", "Bravada", Year.of(2003), "Black", "repainted");
+    Car updated = repository.updateCar(4, 0L, changes);
+    assertEquals("Black", updated.getColor());
+    assertEquals(1L, updated.getVersion());
+    assertThrows(OptimisticLockingFailureException.class,
+        () -> repository.updateCar(4, 0L, changes));
+    assertNull(repository.updateCar(100_000, null, changes));
+  }
+
+  /**
+   * Runs the filter, then explains the statement Hibernate generated for it with the same
+   * parameters in the order they appear in it.
+   */
+  private void assertUsesIndex(CarFilter filter, String index, Object... parameters) {
+    RecordingStatementInspector.STATEMENTS.clear();
+    repository.filterCars(filter);
+    assertEquals(1, RecordingStatementInspector.STATEMENTS.size(),
+        RecordingStatementInspector.STATEMENTS::toString);
+    String sql = RecordingStatementInspector.STATEMENTS.get(0);
+    Query explain = entityManager.createNativeQuery("EXPLAIN " + sql);
+    for (int i = 0; i < parameters.length; i++) {
+      explain.setParameter(i + 1, parameters[i]);
+    }
+    String plan = String.valueOf(explain.getSingleResult()).toLowerCase();
+    assertTrue(plan.contains(index), plan);
+    assertFalse(plan.contains("tablescan"), plan);
+  }
+
+  /**
+   * Records the SQL Hibernate prepares, the way {@code HibernateMetrics} sees it.
+   */
+  public static class RecordingStatementInspector implements StatementInspector {
+
+    private static final long serialVersionUID = 1L;
+
+    static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+      STATEMENTS.add(sql);
+      return sql;
+    }
+  }
+
+  @TestConfiguration
+  static class StatementRecording {
+
+    @Bean
+    HibernatePropertiesCustomizer recordingStatementInspector() {
+      return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR,
+          new RecordingStatementInspector());
+    }
   }
 }
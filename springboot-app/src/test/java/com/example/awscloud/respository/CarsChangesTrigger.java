@@ -0,0 +1,28 @@
+package com.example.awscloud.respository;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicLong;
+import org.h2.api.Trigger;
+
+/**
+ * <p>
+ *     Stands in for the {@code cars_changes} counter of {@code V7__car_change_counter.sql} in the H2
+ *     test database, see {@code data_h2.sql}. H2 does not allow a trigger to write a table while the
+ *     session is in auto-commit mode, so the counter is kept here and {@code cars_changes} is a view
+ *     over {@link #changes()}. Unlike the Postgres counter it is not rolled back with a failed
+ *     write, which only causes a spurious change.
+ * </p>
+ */
+public class CarsChangesTrigger implements Trigger {
+
+  private static final AtomicLong CHANGES = new AtomicLong();
+
+  public static long changes() {
+    return CHANGES.get();
+  }
+
+  @Override
+  public void fire(Connection connection, Object[] oldRow, Object[] newRow) {
+    CHANGES.incrementAndGet();
+  }
+}
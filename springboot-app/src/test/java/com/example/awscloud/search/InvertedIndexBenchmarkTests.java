@@ -0,0 +1,89 @@
+package com.example.awscloud.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.example.awscloud.Benchmark;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * <p>
+ *     Builds an index over one million generated descriptions and reports its memory footprint and
+ *     query latencies. Run with {@code ./gradlew benchmark}.
+ * </p>
+ */
+@Tag("benchmark")
+public class InvertedIndexBenchmarkTests {
+
+  private static final int CARS = 1_000_000;
+
+  private static final int VOCABULARY = 5_000;
+
+  private static final int WORDS_PER_DESCRIPTION = 30;
+
+  private static final int QUERIES = 2_000;
+
+  private final Benchmark benchmark = new Benchmark(InvertedIndexBenchmarkTests.class);
+
+  @Test
+  public void searchOneMillionCars() throws Exception {
+    SplittableRandom random = new SplittableRandom(42);
+    String[] words = new String[VOCABULARY];
+    for (int i = 0; i < VOCABULARY; i++) {
+      words[i] = "w" + Integer.toString(i, 36);
+    }
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+    long start = System.nanoTime();
+    InvertedIndex.Builder builder = InvertedIndex.builder();
+    StringBuilder description = new StringBuilder();
+    for (int id = 1; id <= CARS; id++) {
+      description.setLength(0);
+      for (int w = 0; w < WORDS_PER_DESCRIPTION; w++) {
+        description.append(words[zipf(random)]).append(' ');
+      }
+      builder.add(id, 0, description.toString());
+    }
+    InvertedIndex index = builder.build();
+    long buildMillis = (System.nanoTime() - start) / 1_000_000;
+    System.gc();
+    long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+    assertEquals(CARS, index.size());
+    benchmark.report("%,d cars, %,d terms, built in %,d ms", index.size(), index.termCount(),
+        buildMillis);
+    benchmark.report("estimated footprint %,d MiB, retained heap %,d MiB",
+        index.memoryFootprintBytes() >> 20, (heapAfter - heapBefore) >> 20);
+
+    report("AND, 2 terms", index, words, random, 2, true);
+    report("AND, 3 terms", index, words, random, 3, true);
+    report("OR, 2 terms ", index, words, random, 2, false);
+    report("OR, 3 terms ", index, words, random, 3, false);
+  }
+
+  private void report(String name, InvertedIndex index, String[] words, SplittableRandom random,
+                      int terms, boolean matchAll) throws Exception {
+    String[] queries = new String[QUERIES];
+    for (int q = 0; q < QUERIES; q++) {
+      StringBuilder query = new StringBuilder();
+      for (int t = 0; t < terms; t++) {
+        query.append(words[zipf(random)]).append(' ');
+      }
+      queries[q] = query.toString();
+    }
+    // every query is run once to warm up and once measured
+    int[] next = new int[1];
+    Benchmark.Timings timings = benchmark.time(QUERIES, QUERIES,
+        () -> index.search(queries[next[0]++ % QUERIES], matchAll, 20));
+    benchmark.report("%s p50 %,8.1f us, p99 %,8.1f us", name, timings.micros(50),
+        timings.micros(99));
+  }
+
+  /**
+   * @return a word index with a roughly Zipfian distribution, like words in natural text
+   */
+  private static int zipf(SplittableRandom random) {
+    return (int) Math.min(VOCABULARY - 1, Math.exp(random.nextDouble() * Math.log(VOCABULARY)) - 1);
+  }
+}
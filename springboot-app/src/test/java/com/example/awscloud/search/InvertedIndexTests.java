@@ -0,0 +1,84 @@
+package com.example.awscloud.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class InvertedIndexTests {
+
+  private static InvertedIndex index() {
+    return InvertedIndex.builder()
+        .add(1, 0, "Red sports car, fast and red")
+        .add(2, 0, "Blue family car")
+        .add(3, 0, "A fast blue truck")
+        .add(4, 0, "Green truck")
+        .build();
+  }
+
+  private static List<Integer> ids(List<InvertedIndex.Hit> hits) {
+    return hits.stream().map(InvertedIndex.Hit::carId).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testTokenize() {
+    List<String> tokens = new ArrayList<>();
+    InvertedIndex.tokenize("A 4x4, Off-Road CAR!", tokens::add);
+    assertEquals(List.of("4x4", "off", "road", "car"), tokens);
+  }
+
+  @Test
+  public void testMatchAll() {
+    InvertedIndex index = index();
+    assertEquals(List.of(3), ids(index.search("fast blue", true, 10)));
+    assertEquals(List.of(), ids(index.search("fast green", true, 10)));
+    assertEquals(List.of(), ids(index.search("purple", true, 10)));
+  }
+
+  @Test
+  public void testMatchAnyIsRanked() {
+    InvertedIndex index = index();
+    List<InvertedIndex.Hit> hits = index.search("red truck", false, 10);
+    // "red" is rarer than "truck" and occurs twice in car 1
+    assertEquals(1, hits.get(0).carId());
+    assertEquals(Set.of(1, 3, 4), Set.copyOf(ids(hits)));
+    assertEquals(2, index.search("red truck", false, 2).size());
+  }
+
+  @Test
+  public void testApply() {
+    InvertedIndex index = index();
+    InvertedIndex updated = index.apply(
+        List.of(new InvertedIndex.Document(2, 1, "Yellow family car"),
+            new InvertedIndex.Document(5, 0, "Yellow truck")),
+        List.of(4));
+    assertEquals(4, updated.size());
+    assertEquals(Set.of(2, 5), Set.copyOf(ids(updated.search("yellow", true, 10))));
+    assertEquals(List.of(), ids(updated.search("blue family", true, 10)));
+    assertEquals(List.of(3, 5), ids(updated.search("truck", true, 10)).stream().sorted().toList());
+    assertTrue(updated.contains(2, 1));
+    assertFalse(updated.contains(2, 0));
+    assertFalse(updated.contains(4, 0));
+    // the previous snapshot is unchanged
+    assertEquals(List.of(2), ids(index.search("blue family", true, 10)));
+  }
+
+  @Test
+  public void testCompactionKeepsResults() {
+    InvertedIndex index = index();
+    for (int version = 1; version <= 10; version++) {
+      index = index.apply(List.of(new InvertedIndex.Document(1, version, "red car " + version)),
+          List.of());
+    }
+    InvertedIndex compacted = index.compact();
+    assertEquals(4, compacted.size());
+    assertEquals(ids(index.search("red car", true, 10)), ids(compacted.search("red car", true, 10)));
+    assertTrue(compacted.contains(1, 10));
+    assertTrue(compacted.memoryFootprintBytes() <= index.memoryFootprintBytes());
+  }
+}
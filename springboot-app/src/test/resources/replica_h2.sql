@@ -0,0 +1,20 @@
+-- Stands in for a read replica in ReplicaRoutingTests. It runs on every new connection through
+-- the INIT parameter of the H2 url, so it has to be idempotent. The replica deliberately holds a
+-- single car, so a test can tell which database a query ran on.
+CREATE SCHEMA IF NOT EXISTS demoapp;
+CREATE TABLE IF NOT EXISTS demoapp.cars (
+    id          INT NOT NULL,
+    make        VARCHAR(100) NOT NULL,
+    model       VARCHAR(100) NOT NULL,
+    model_year  NUMERIC(4) NOT NULL,
+    color       VARCHAR(40) NOT NULL,
+    description TEXT NOT NULL,
+    row_version BIGINT DEFAULT 0 NOT NULL,
+    CONSTRAINT pk_id PRIMARY KEY  (id)
+);
+MERGE INTO demoapp.cars KEY (id) VALUES (1, 'Hyundai', 'Genesis Coupe', 2010, 'Orange', 'replica', 0);
+CREATE TABLE IF NOT EXISTS demoapp.cars_changes (
+    stripe  SMALLINT PRIMARY KEY CHECK (stripe BETWEEN 0 AND 15),
+    changes BIGINT NOT NULL
+);
+MERGE INTO demoapp.cars_changes KEY (stripe) VALUES (0, 0);